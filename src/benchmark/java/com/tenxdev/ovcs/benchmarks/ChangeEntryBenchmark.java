@@ -0,0 +1,98 @@
+/*
+ * Copyright 2015 Abed Tony BenBrahim <tony.benbrahim@10xdev.com> This file is
+ * part of OVCS.
+ *
+ * OVCS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OVCS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OVCS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tenxdev.ovcs.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.tenxdev.ovcs.Layout;
+import com.tenxdev.ovcs.model.ChangeEntry;
+import com.tenxdev.ovcs.tests.synthetic.SyntheticSchema;
+
+/**
+ * Measures turning the changes captured in the database into the paths to
+ * stage, as done by the commit command, for each object file layout
+ *
+ * @author Tony BenBrahim <tony.benbrahim@10xdev.com>
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ChangeEntryBenchmark {
+
+	/**
+	 * the number of captured changes, one in ten being a drop
+	 */
+	@Param({ "1000", "10000", "50000" })
+	public int changes;
+
+	/**
+	 * the object file layout, as given to the layout command
+	 */
+	@Param({ "flat", "prefix 2", "hash 256" })
+	public String layoutName;
+
+	private Layout layout;
+
+	private List<ChangeEntry> entries;
+
+	@Setup
+	public void setUp() {
+		final String[] parts = layoutName.split(" ");
+		layout = new Layout(parts[0], parts.length > 1 ? Integer.parseInt(parts[1]) : 0);
+		entries = new ArrayList<>(changes);
+		int index = 0;
+		for (final String objectName : new SyntheticSchema(changes, 2048, 0, 0).getObjectNames()) {
+			entries.add(new ChangeEntry(objectName.toLowerCase(Locale.ENGLISH), index++ % 10 == 0));
+		}
+	}
+
+	@Benchmark
+	public void resolvePaths(final Blackhole blackhole) {
+		final List<String> updatedPaths = new ArrayList<>();
+		final List<String> removedPaths = new ArrayList<>();
+		for (final ChangeEntry changeEntry : entries) {
+			final String path = layout.getPath(changeEntry.getName().toUpperCase(Locale.getDefault()));
+			if (changeEntry.isRemoved()) {
+				removedPaths.add(path);
+			} else {
+				updatedPaths.add(path);
+			}
+		}
+		blackhole.consume(updatedPaths);
+		blackhole.consume(removedPaths);
+	}
+}
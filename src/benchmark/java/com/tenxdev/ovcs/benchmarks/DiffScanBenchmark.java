@@ -0,0 +1,124 @@
+/*
+ * Copyright 2015 Abed Tony BenBrahim <tony.benbrahim@10xdev.com> This file is
+ * part of OVCS.
+ *
+ * OVCS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OVCS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OVCS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tenxdev.ovcs.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.DiffFormatter;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.treewalk.FileTreeIterator;
+import org.eclipse.jgit.util.io.DisabledOutputStream;
+import org.junit.rules.TemporaryFolder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.tenxdev.ovcs.GitUtils;
+import com.tenxdev.ovcs.tests.synthetic.SyntheticSchema;
+
+/**
+ * Measures scanning the working directory for differences with the HEAD
+ * commit, and formatting them, as done by the diff command, in repositories of
+ * increasing size with a fixed number of changed files
+ *
+ * @author Tony BenBrahim <tony.benbrahim@10xdev.com>
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class DiffScanBenchmark {
+
+	/**
+	 * the number of object files in the repository
+	 */
+	@Param({ "1000", "10000", "50000" })
+	public int files;
+
+	/**
+	 * the number of object files differing from the HEAD commit
+	 */
+	@Param({ "100" })
+	public int changedFiles;
+
+	private final TemporaryFolder folder = new TemporaryFolder();
+
+	private Repository repository;
+
+	@Setup
+	public void setUp() throws IOException, GitAPIException {
+		folder.create();
+		final SyntheticSchema schema = new SyntheticSchema(files, 2048, 0, 0);
+		repository = SyntheticRepository.create(folder.getRoot(), schema);
+		final List<String> objectNames = schema.getObjectNames();
+		final int step = files / changedFiles;
+		for (int i = 0; i < changedFiles; i++) {
+			final String objectName = objectNames.get(i * step);
+			schema.alterObject(objectName);
+			SyntheticRepository.write(repository, schema, objectName);
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		repository.close();
+		folder.delete();
+	}
+
+	@Benchmark
+	public List<DiffEntry> scan() throws IOException {
+		final DiffFormatter formatter = new DiffFormatter(DisabledOutputStream.INSTANCE);
+		try {
+			formatter.setRepository(repository);
+			return formatter.scan(GitUtils.prepareHeadTreeParser(repository), new FileTreeIterator(repository));
+		} finally {
+			formatter.release();
+		}
+	}
+
+	@Benchmark
+	public int scanAndFormat() throws IOException {
+		final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		final DiffFormatter formatter = new DiffFormatter(outputStream);
+		try {
+			formatter.setRepository(repository);
+			formatter.format(formatter.scan(GitUtils.prepareHeadTreeParser(repository),
+					new FileTreeIterator(repository)));
+			formatter.flush();
+		} finally {
+			formatter.release();
+		}
+		return outputStream.size();
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2015 Abed Tony BenBrahim <tony.benbrahim@10xdev.com> This file is
+ * part of OVCS.
+ *
+ * OVCS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OVCS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OVCS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tenxdev.ovcs.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.treewalk.AbstractTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.junit.rules.TemporaryFolder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.tenxdev.ovcs.GitUtils;
+import com.tenxdev.ovcs.tests.synthetic.SyntheticSchema;
+
+/**
+ * Measures resolving the tree of the HEAD commit, and walking all of its
+ * entries, in repositories of increasing size
+ *
+ * @author Tony BenBrahim <tony.benbrahim@10xdev.com>
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class HeadTreeBenchmark {
+
+	/**
+	 * the number of object files in the repository
+	 */
+	@Param({ "1000", "10000", "50000" })
+	public int files;
+
+	private final TemporaryFolder folder = new TemporaryFolder();
+
+	private Repository repository;
+
+	@Setup
+	public void setUp() throws IOException, GitAPIException {
+		folder.create();
+		repository = SyntheticRepository.create(folder.getRoot(), new SyntheticSchema(files, 2048, 0, 0));
+	}
+
+	@TearDown
+	public void tearDown() {
+		repository.close();
+		folder.delete();
+	}
+
+	@Benchmark
+	public AbstractTreeIterator prepareHeadTreeParser() throws IOException {
+		return GitUtils.prepareHeadTreeParser(repository);
+	}
+
+	@Benchmark
+	public int walkHeadTree() throws IOException {
+		final TreeWalk walk = new TreeWalk(repository);
+		try {
+			walk.addTree(GitUtils.prepareHeadTreeParser(repository));
+			walk.setRecursive(true);
+			int count = 0;
+			while (walk.next()) {
+				count++;
+			}
+			return count;
+		} finally {
+			walk.release();
+		}
+	}
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2015 Abed Tony BenBrahim <tony.benbrahim@10xdev.com> This file is
+ * part of OVCS.
+ *
+ * OVCS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OVCS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OVCS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tenxdev.ovcs.benchmarks;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jgit.api.AddCommand;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.rules.TemporaryFolder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.tenxdev.ovcs.GitUtils;
+import com.tenxdev.ovcs.Layout;
+import com.tenxdev.ovcs.tests.synthetic.SyntheticSchema;
+
+/**
+ * Measures staging and committing changed object files, in a single update of
+ * the index as done by ovcs, and with one add per file, in repositories of
+ * increasing size
+ *
+ * @author Tony BenBrahim <tony.benbrahim@10xdev.com>
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class StageAndCommitBenchmark {
+
+	/**
+	 * the number of object files in the repository
+	 */
+	@Param({ "1000", "10000", "50000" })
+	public int files;
+
+	/**
+	 * the number of object files changed before each commit
+	 */
+	@Param({ "100" })
+	public int changedFiles;
+
+	private final TemporaryFolder folder = new TemporaryFolder();
+
+	private SyntheticSchema schema;
+
+	private List<String> objectNames;
+
+	private Repository repository;
+
+	private Git git;
+
+	private final Random random = new Random(0);
+
+	private final Set<String> changedPaths = new LinkedHashSet<>();
+
+	@Setup
+	public void setUp() throws IOException, GitAPIException {
+		folder.create();
+		schema = new SyntheticSchema(files, 2048, 0, 0);
+		objectNames = schema.getObjectNames();
+		repository = SyntheticRepository.create(folder.getRoot(), schema);
+		git = new Git(repository);
+	}
+
+	@TearDown
+	public void tearDown() {
+		repository.close();
+		folder.delete();
+	}
+
+	/**
+	 * changes the content of random object files before each commit
+	 *
+	 * @throws IOException
+	 *             if the files could not be written
+	 */
+	@Setup(Level.Invocation)
+	public void changeFiles() throws IOException {
+		final Layout layout = new Layout(Layout.FLAT, 0);
+		changedPaths.clear();
+		while (changedPaths.size() < changedFiles) {
+			final String objectName = objectNames.get(random.nextInt(objectNames.size()));
+			if (changedPaths.add(layout.getPath(objectName))) {
+				schema.alterObject(objectName);
+				SyntheticRepository.write(repository, schema, objectName);
+			}
+		}
+	}
+
+	@Benchmark
+	public RevCommit batched() throws IOException, GitAPIException {
+		GitUtils.updateIndex(repository, changedPaths, Collections.<String> emptyList());
+		return git.commit().setMessage("batched").call();
+	}
+
+	@Benchmark
+	public RevCommit perFile() throws GitAPIException {
+		for (final String path : changedPaths) {
+			git.add().addFilepattern(path).call();
+		}
+		return git.commit().setMessage("per file").call();
+	}
+
+	@Benchmark
+	public RevCommit singleAdd() throws GitAPIException {
+		final AddCommand add = git.add();
+		for (final String path : changedPaths) {
+			add.addFilepattern(path);
+		}
+		add.call();
+		return git.commit().setMessage("single add").call();
+	}
+}
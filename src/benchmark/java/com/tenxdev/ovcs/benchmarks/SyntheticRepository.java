@@ -0,0 +1,99 @@
+/*
+ * Copyright 2015 Abed Tony BenBrahim <tony.benbrahim@10xdev.com> This file is
+ * part of OVCS.
+ *
+ * OVCS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OVCS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OVCS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tenxdev.ovcs.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.Repository;
+
+import com.tenxdev.ovcs.GitUtils;
+import com.tenxdev.ovcs.Layout;
+import com.tenxdev.ovcs.tests.synthetic.SyntheticSchema;
+
+/**
+ * Writes the objects of a synthetic schema to local repositories, so that the
+ * benchmarks run without a database
+ *
+ * @author Tony BenBrahim <tony.benbrahim@10xdev.com>
+ *
+ */
+final class SyntheticRepository {
+
+	/**
+	 * the layout of the object files
+	 */
+	private static final Layout LAYOUT = new Layout(Layout.FLAT, 0);
+
+	/**
+	 * creates a local git repository holding one committed file per object of
+	 * a schema, in the flat layout
+	 *
+	 * @param directory
+	 *            the working directory of the repository
+	 * @param schema
+	 *            the schema
+	 * @return the repository
+	 * @throws IOException
+	 *             if the files could not be written
+	 * @throws GitAPIException
+	 *             if the files could not be committed
+	 */
+	static Repository create(final File directory, final SyntheticSchema schema) throws IOException,
+			GitAPIException {
+		final Git git = Git.init().setDirectory(directory).call();
+		final Repository repository = git.getRepository();
+		final List<String> paths = new ArrayList<>();
+		for (final String objectName : schema.getObjectNames()) {
+			paths.add(write(repository, schema, objectName));
+		}
+		GitUtils.updateIndex(repository, paths, Collections.<String> emptyList());
+		git.commit().setMessage("initial synchronization").call();
+		return repository;
+	}
+
+	/**
+	 * writes the current DDL of an object to its file, in UTF-8
+	 *
+	 * @param repository
+	 *            the repository
+	 * @param schema
+	 *            the schema
+	 * @param objectName
+	 *            the name of the object
+	 * @return the path of the file, relative to the working tree
+	 * @throws IOException
+	 *             if the file could not be written
+	 */
+	static String write(final Repository repository, final SyntheticSchema schema, final String objectName)
+			throws IOException {
+		final String path = LAYOUT.getPath(objectName);
+		Files.write(new File(repository.getWorkTree(), path).toPath(),
+				schema.getDdl(objectName).getBytes(StandardCharsets.UTF_8));
+		return path;
+	}
+
+	private SyntheticRepository() {
+	}
+}
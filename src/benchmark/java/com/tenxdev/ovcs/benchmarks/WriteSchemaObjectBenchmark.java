@@ -0,0 +1,117 @@
+/*
+ * Copyright 2015 Abed Tony BenBrahim <tony.benbrahim@10xdev.com> This file is
+ * part of OVCS.
+ *
+ * OVCS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OVCS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OVCS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tenxdev.ovcs.benchmarks;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.rules.TemporaryFolder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.tenxdev.ovcs.OvcsException;
+import com.tenxdev.ovcs.command.AbstractOvcsCommand;
+import com.tenxdev.ovcs.tests.synthetic.SyntheticSchema;
+
+/**
+ * Measures writing the source of a schema object to the working directory,
+ * when the source changed and when it is unchanged
+ *
+ * @author Tony BenBrahim <tony.benbrahim@10xdev.com>
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class WriteSchemaObjectBenchmark {
+
+	/**
+	 * Exposes the object writer of ovcs commands
+	 */
+	private static final class ObjectWriter extends AbstractOvcsCommand {
+
+		@Override
+		public void execute(final String... args) {
+		}
+
+		boolean write(final Path workingDirectory, final String objectName, final String source)
+				throws OvcsException {
+			return writeSchemaObject(workingDirectory, objectName, new StringReader(source), -1, false);
+		}
+	}
+
+	/**
+	 * the approximate size of the DDL, in characters
+	 */
+	@Param({ "2048", "32768", "524288" })
+	public int ddlSize;
+
+	/**
+	 * true to alternate between two revisions of the source, false to write
+	 * the same source every time
+	 */
+	@Param({ "true", "false" })
+	public boolean changed;
+
+	private final TemporaryFolder folder = new TemporaryFolder();
+
+	private ObjectWriter writer;
+
+	private String objectName;
+
+	private String[] revisions;
+
+	private int invocation;
+
+	@Setup
+	public void setUp() throws IOException {
+		folder.create();
+		writer = new ObjectWriter();
+		final SyntheticSchema schema = new SyntheticSchema(1, ddlSize, 0, 0);
+		objectName = schema.getObjectNames().get(0);
+		final String source = schema.getDdl(objectName);
+		if (changed) {
+			schema.alterObject(objectName);
+		}
+		revisions = new String[] { source, schema.getDdl(objectName) };
+	}
+
+	@TearDown
+	public void tearDown() {
+		folder.delete();
+	}
+
+	@Benchmark
+	public boolean writeSchemaObject() throws OvcsException {
+		return writer.write(folder.getRoot().toPath(), objectName, revisions[invocation++ & 1]);
+	}
+}
@@ -16,7 +16,9 @@
  */
 package com.tenxdev.ovcs;
 
+import com.tenxdev.ovcs.command.AbstractOvcsCommand;
 import com.tenxdev.ovcs.command.CommandFactory;
+import com.tenxdev.ovcs.daemon.DaemonClient;
 
 /**
  * Application main class
@@ -27,18 +29,31 @@ import com.tenxdev.ovcs.command.CommandFactory;
 public final class Application {
 
 	/**
-	 * main method
+	 * main method. The command is forwarded to the ovcs daemon if one is
+	 * running, and run in this process otherwise.
 	 *
 	 * @param args
 	 *            command line arguments
 	 */
 	public static void main(final String... args) {
+		final Integer exitCode = DaemonClient.forward(AbstractOvcsCommand.CONFIG_FOLDER_NAME, args);
+		System.exit(exitCode == null ? run(args) : exitCode);
+	}
+
+	/**
+	 * runs a command in this process
+	 *
+	 * @param args
+	 *            command line arguments
+	 * @return the exit code
+	 */
+	public static int run(final String... args) {
 		try {
 			CommandFactory.getCommandForArguments(args).execute(args);
-			System.exit(0);
+			return 0;
 		} catch (final OvcsException e) {
 			System.err.println(e.getMessage());
-			System.exit(-1);
+			return -1;
 		}
 	}
 
@@ -0,0 +1,339 @@
+/*
+ * Copyright 2015 Abed Tony BenBrahim <tony.benbrahim@10xdev.com> This file is
+ * part of OVCS.
+ *
+ * OVCS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OVCS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OVCS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tenxdev.ovcs;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+
+/**
+ * Output stream that only rewrites a file if the content written differs from
+ * the file's current content. The content is compared with the existing file
+ * as it is written; at the first difference, the matching prefix and the rest
+ * of the content are written to a temporary file, which replaces the existing
+ * file when the stream is closed. If writing fails, the stream is aborted
+ * instead, and the existing file is left untouched. An unchanged file keeps
+ * its modification time, so git does not need to hash it again. The git blob
+ * id of the content is computed as it is written.
+ *
+ * @author Tony BenBrahim <tony.benbrahim@10xdev.com>
+ *
+ */
+public class ChangedFileOutputStream extends OutputStream {
+
+	/**
+	 * the size of the buffers used to compare and copy content
+	 */
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * the suffix of temporary files
+	 */
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	/**
+	 * the file being written
+	 */
+	private final File file;
+
+	/**
+	 * the existing content, while the content written matches it, null
+	 * otherwise
+	 */
+	private InputStream existing;
+
+	/**
+	 * the number of bytes written that matched the existing content
+	 */
+	private long matched;
+
+	/**
+	 * buffer holding existing content being compared
+	 */
+	private final byte[] compareBuffer = new byte[BUFFER_SIZE];
+
+	/**
+	 * the temporary file, once the content is known to differ
+	 */
+	private File tempFile;
+
+	/**
+	 * the stream writing to the temporary file, once the content is known to
+	 * differ
+	 */
+	private OutputStream tempStream;
+
+	/**
+	 * true once the stream is closed
+	 */
+	private boolean closed;
+
+	/**
+	 * digest of the blob header and the content written, when the length of
+	 * the content is known in advance
+	 */
+	private MessageDigest digest;
+
+	/**
+	 * the content length declared in the blob header of the digest
+	 */
+	private long digestLength;
+
+	/**
+	 * the number of bytes written
+	 */
+	private long written;
+
+	/**
+	 * the blob id of the content, once the stream is closed
+	 */
+	private ObjectId objectId;
+
+	/**
+	 * constructor
+	 *
+	 * @param file
+	 *            the file to write
+	 * @param expectedLength
+	 *            the length of the content that will be written, in bytes, or
+	 *            -1 if unknown. If known and different from the length of the
+	 *            existing file, the content is not compared.
+	 * @throws IOException
+	 *             if the existing file cannot be read, or the temporary file
+	 *             cannot be created
+	 */
+	public ChangedFileOutputStream(final File file, final long expectedLength) throws IOException {
+		this.file = file;
+		final boolean exists = file.isFile();
+		if (exists && (expectedLength < 0 || expectedLength == file.length())) {
+			existing = new BufferedInputStream(new FileInputStream(file));
+		} else {
+			startWriting();
+		}
+		if (expectedLength >= 0) {
+			startDigest(expectedLength);
+		} else if (exists) {
+			startDigest(file.length());
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		if (existing != null && existing.read() != -1) {
+			startWriting();
+		}
+		if (existing != null) {
+			existing.close();
+			existing = null;
+		}
+		if (tempStream != null) {
+			try {
+				tempStream.close();
+				Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			} catch (final IOException e) {
+				deleteTempFile();
+				throw e;
+			}
+		}
+		if (digest != null && written == digestLength) {
+			objectId = ObjectId.fromRaw(digest.digest());
+		} else {
+			try (InputStream inputStream = new FileInputStream(file)) {
+				objectId = new ObjectInserter.Formatter().idFor(Constants.OBJ_BLOB, file.length(), inputStream);
+			}
+		}
+	}
+
+	/**
+	 * determines if a file is a temporary file of this stream, left behind by
+	 * a process that stopped while writing
+	 *
+	 * @param path
+	 *            the path of the file
+	 * @return true if the file name is the name of a temporary file
+	 */
+	public static boolean isTempFile(final String path) {
+		final String name = path.substring(path.lastIndexOf('/') + 1);
+		return name.startsWith(".") && name.endsWith(TEMP_SUFFIX);
+	}
+
+	/**
+	 * abandons the content written so far, deleting the temporary file and
+	 * leaving the existing file untouched. Does nothing if the stream is
+	 * already closed, so that it can be called once writing is over, whether
+	 * it succeeded or not.
+	 */
+	public void abort() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			if (existing != null) {
+				existing.close();
+				existing = null;
+			}
+			if (tempStream != null) {
+				tempStream.close();
+			}
+		} catch (final IOException e) {
+			// the content is discarded
+		}
+		deleteTempFile();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void flush() throws IOException {
+		if (tempStream != null) {
+			tempStream.flush();
+		}
+	}
+
+	/**
+	 * gets the git blob id of the content. Only available once the stream is
+	 * closed.
+	 *
+	 * @return the blob id, or null if the stream is not closed
+	 */
+	public ObjectId getObjectId() {
+		return objectId;
+	}
+
+	/**
+	 * determines if the file was written. Only meaningful once the stream is
+	 * closed.
+	 *
+	 * @return true if the content differed and the file was written, false if
+	 *         the existing file was left unchanged
+	 */
+	public boolean isChanged() {
+		return tempStream != null;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void write(final byte[] bytes, final int off, final int len) throws IOException {
+		if (digest != null) {
+			digest.update(bytes, off, len);
+		}
+		written += len;
+		int offset = off;
+		int remaining = len;
+		while (existing != null && remaining > 0) {
+			final int count = existing.read(compareBuffer, 0, Math.min(remaining, compareBuffer.length));
+			if (count == -1) {
+				startWriting();
+				break;
+			}
+			final int mismatch = mismatch(bytes, offset, count);
+			if (mismatch < count) {
+				matched += mismatch;
+				offset += mismatch;
+				remaining -= mismatch;
+				startWriting();
+				break;
+			}
+			matched += count;
+			offset += count;
+			remaining -= count;
+		}
+		if (remaining > 0) {
+			tempStream.write(bytes, offset, remaining);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void write(final int value) throws IOException {
+		write(new byte[] { (byte) value }, 0, 1);
+	}
+
+	private void deleteTempFile() {
+		if (tempFile != null && tempFile.exists() && !tempFile.delete()) {
+			tempFile.deleteOnExit();
+		}
+	}
+
+	private int mismatch(final byte[] bytes, final int offset, final int count) {
+		for (int i = 0; i < count; ++i) {
+			if (bytes[offset + i] != compareBuffer[i]) {
+				return i;
+			}
+		}
+		return count;
+	}
+
+	private void startDigest(final long length) {
+		digest = Constants.newMessageDigest();
+		digest.update(Constants.encodedTypeString(Constants.OBJ_BLOB));
+		digest.update((byte) ' ');
+		digest.update(Constants.encodeASCII(length));
+		digest.update((byte) 0);
+		digestLength = length;
+	}
+
+	private void startWriting() throws IOException {
+		if (existing != null) {
+			existing.close();
+			existing = null;
+		}
+		final File directory = file.getAbsoluteFile().getParentFile();
+		tempFile = File.createTempFile("." + file.getName(), TEMP_SUFFIX, directory);
+		tempStream = new BufferedOutputStream(new FileOutputStream(tempFile));
+		if (matched > 0) {
+			final byte[] buffer = new byte[BUFFER_SIZE];
+			try (InputStream prefix = new FileInputStream(file)) {
+				long toCopy = matched;
+				while (toCopy > 0) {
+					final int count = prefix.read(buffer, 0, (int) Math.min(buffer.length, toCopy));
+					if (count == -1) {
+						throw new IOException("File changed while being written: " + file.getPath());
+					}
+					tempStream.write(buffer, 0, count);
+					toCopy -= count;
+				}
+			}
+		}
+	}
+
+}
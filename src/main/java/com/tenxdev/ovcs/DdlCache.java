@@ -0,0 +1,246 @@
+/*
+ * Copyright 2015 Abed Tony BenBrahim <tony.benbrahim@10xdev.com> This file is
+ * part of OVCS.
+ *
+ * OVCS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OVCS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OVCS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tenxdev.ovcs;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Local cache of the DDL of database objects, keyed by object name and last
+ * DDL time, so that commands run back to back do not extract the same DDL
+ * again. Entries expire after a time to live, and the least recently stored
+ * entries are evicted when the cache exceeds its maximum size.
+ *
+ * @author Tony BenBrahim <tony.benbrahim@10xdev.com>
+ *
+ */
+public class DdlCache {
+
+	/**
+	 * extension of cache entry files
+	 */
+	private static final String ENTRY_EXTENSION = ".ddl";
+
+	/**
+	 * the size of the buffer used to copy sources to cache entries
+	 */
+	private static final int COPY_BUFFER_SIZE = 8192;
+
+	/**
+	 * selects cache entry files
+	 */
+	private static final FileFilter ENTRY_FILTER = new FileFilter() {
+
+		@Override
+		public boolean accept(final File file) {
+			return file.isFile() && file.getName().endsWith(ENTRY_EXTENSION);
+		}
+	};
+
+	/**
+	 * the cache directory
+	 */
+	private transient final File directory;
+	/**
+	 * the time to live of entries, in milliseconds
+	 */
+	private transient final long timeToLive;
+	/**
+	 * the maximum total size of entries, in bytes
+	 */
+	private transient final long maxSize;
+
+	/**
+	 * constructor
+	 *
+	 * @param directory
+	 *            the cache directory
+	 * @param timeToLive
+	 *            the time to live of entries, in milliseconds, 0 to disable the
+	 *            cache
+	 * @param maxSize
+	 *            the maximum total size of entries, in bytes
+	 */
+	public DdlCache(final File directory, final long timeToLive, final long maxSize) {
+		this.directory = directory;
+		this.timeToLive = timeToLive;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * determines if the cache is enabled
+	 *
+	 * @return true if entries are stored and retrieved, false otherwise
+	 */
+	public boolean isEnabled() {
+		return timeToLive > 0;
+	}
+
+	/**
+	 * gets the cached DDL of an object
+	 *
+	 * @param objectName
+	 *            the name of the database object
+	 * @param lastDdlTime
+	 *            the last DDL time of the object, in milliseconds
+	 * @return the DDL of the object, or null if it is not cached, was cached
+	 *         for a different DDL time, or has expired
+	 */
+	public String get(final String objectName, final long lastDdlTime) {
+		if (!isEnabled()) {
+			return null;
+		}
+		final File file = getEntryFile(objectName);
+		if (!file.isFile()) {
+			return null;
+		}
+		if (System.currentTimeMillis() - file.lastModified() > timeToLive) {
+			delete(file);
+			return null;
+		}
+		final byte[] content;
+		try {
+			content = Files.readAllBytes(file.toPath());
+		} catch (final IOException e) {
+			return null;
+		}
+		int headerEnd = 0;
+		while (headerEnd < content.length && content[headerEnd] != '\n') {
+			headerEnd++;
+		}
+		if (headerEnd == content.length) {
+			return null;
+		}
+		try {
+			if (Long.parseLong(new String(content, 0, headerEnd, StandardCharsets.US_ASCII)) != lastDdlTime) {
+				return null;
+			}
+		} catch (final NumberFormatException e) {
+			return null;
+		}
+		return new String(content, headerEnd + 1, content.length - headerEnd - 1, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * stores the DDL of an object
+	 *
+	 * @param objectName
+	 *            the name of the database object
+	 * @param lastDdlTime
+	 *            the last DDL time of the object, in milliseconds
+	 * @param source
+	 *            the DDL of the object
+	 * @throws IOException
+	 *             if the entry cannot be written
+	 */
+	public void put(final String objectName, final long lastDdlTime, final String source) throws IOException {
+		put(objectName, lastDdlTime, new ByteArrayInputStream(source.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * stores the DDL of an object, copied from a stream so that large DDL is
+	 * not held in memory
+	 *
+	 * @param objectName
+	 *            the name of the database object
+	 * @param lastDdlTime
+	 *            the last DDL time of the object, in milliseconds
+	 * @param source
+	 *            the DDL of the object, encoded in UTF-8
+	 * @throws IOException
+	 *             if the DDL cannot be read, or the entry cannot be written
+	 */
+	public void put(final String objectName, final long lastDdlTime, final InputStream source) throws IOException {
+		if (!isEnabled()) {
+			return;
+		}
+		if (!directory.exists() && !directory.mkdirs()) {
+			throw new IOException("Unable to create directory " + directory);
+		}
+		final File file = getEntryFile(objectName);
+		final File tempFile = new File(directory, file.getName() + ".tmp");
+		try (OutputStream outputStream = new FileOutputStream(tempFile)) {
+			outputStream.write((Long.toString(lastDdlTime) + '\n').getBytes(StandardCharsets.US_ASCII));
+			final byte[] buffer = new byte[COPY_BUFFER_SIZE];
+			int count = source.read(buffer);
+			while (count != -1) {
+				outputStream.write(buffer, 0, count);
+				count = source.read(buffer);
+			}
+		}
+		Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * removes expired entries, then the least recently stored entries until
+	 * the cache fits in its maximum size
+	 */
+	public void trim() {
+		final File[] entries = directory.listFiles(ENTRY_FILTER);
+		if (entries == null) {
+			return;
+		}
+		Arrays.sort(entries, new Comparator<File>() {
+
+			@Override
+			public int compare(final File file1, final File file2) {
+				return Long.compare(file2.lastModified(), file1.lastModified());
+			}
+		});
+		final long now = System.currentTimeMillis();
+		long size = 0;
+		for (final File entry : entries) {
+			size += entry.length();
+			if (size > maxSize || now - entry.lastModified() > timeToLive) {
+				delete(entry);
+			}
+		}
+	}
+
+	/**
+	 * removes all entries
+	 */
+	public void clear() {
+		final File[] entries = directory.listFiles(ENTRY_FILTER);
+		if (entries != null) {
+			for (final File entry : entries) {
+				delete(entry);
+			}
+		}
+	}
+
+	private void delete(final File file) {
+		if (!file.delete() && file.exists()) {
+			System.err.println("Unable to delete cached DDL " + file);
+		}
+	}
+
+	private File getEntryFile(final String objectName) {
+		return new File(directory, objectName + ENTRY_EXTENSION);
+	}
+
+}
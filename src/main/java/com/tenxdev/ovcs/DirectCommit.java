@@ -0,0 +1,289 @@
+/*
+ * Copyright 2015 Abed Tony BenBrahim <tony.benbrahim@10xdev.com> This file is
+ * part of OVCS.
+ *
+ * OVCS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OVCS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OVCS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tenxdev.ovcs;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheBuilder;
+import org.eclipse.jgit.dircache.DirCacheEditor;
+import org.eclipse.jgit.dircache.DirCacheEditor.DeletePath;
+import org.eclipse.jgit.dircache.DirCacheEditor.PathEdit;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+/**
+ * Commits schema object sources straight into the git object database. Each
+ * source is inserted as a blob as soon as it is fetched, the new tree is built
+ * in memory from the HEAD tree, and once committed, only the files whose
+ * content changed are written to the working tree and the index.
+ *
+ * @author Tony BenBrahim <tony.benbrahim@10xdev.com>
+ *
+ */
+public class DirectCommit implements Closeable {
+
+	/**
+	 * the size of the buffer used to copy blobs to the working tree
+	 */
+	private static final int COPY_BUFFER_SIZE = 8192;
+
+	/**
+	 * the git repository
+	 */
+	private final Repository repository;
+
+	/**
+	 * inserts blobs, trees and the commit into the object database
+	 */
+	private final ObjectInserter inserter;
+
+	/**
+	 * the HEAD commit, or null if the branch has no commit yet
+	 */
+	private final ObjectId headId;
+
+	/**
+	 * the HEAD tree, as an in-memory index
+	 */
+	private final DirCache headTree;
+
+	/**
+	 * the blobs inserted whose content differs from HEAD, by path
+	 */
+	private final Map<String, ObjectId> changed = new TreeMap<>();
+
+	/**
+	 * the paths in HEAD of removed objects
+	 */
+	private final Set<String> removed = new TreeSet<>();
+
+	/**
+	 * constructor
+	 *
+	 * @param repository
+	 *            the git repository
+	 * @throws IOException
+	 *             if HEAD cannot be read
+	 */
+	public DirectCommit(final Repository repository) throws IOException {
+		this.repository = repository;
+		inserter = repository.newObjectInserter();
+		headId = repository.resolve(Constants.HEAD);
+		headTree = DirCache.newInCore();
+		if (headId != null) {
+			final RevWalk walk = new RevWalk(repository);
+			final ObjectReader reader = repository.newObjectReader();
+			try {
+				final RevCommit headCommit = walk.parseCommit(headId);
+				final DirCacheBuilder builder = headTree.builder();
+				builder.addTree(new byte[0], DirCacheEntry.STAGE_0, reader, headCommit.getTree());
+				builder.finish();
+			} finally {
+				reader.release();
+				walk.dispose();
+			}
+		}
+	}
+
+	/**
+	 * release the object inserter
+	 */
+	@Override
+	public void close() {
+		inserter.release();
+	}
+
+	/**
+	 * commit all inserted blobs whose content differs from HEAD and the
+	 * removed objects, then write them to, or delete them from, the working
+	 * tree and the index
+	 *
+	 * @param message
+	 *            the commit message
+	 * @return true if a commit was created, false if nothing changed
+	 * @throws IOException
+	 *             if the commit cannot be created, or the working tree cannot
+	 *             be updated
+	 */
+	public synchronized boolean commit(final String message) throws IOException {
+		if (changed.isEmpty() && removed.isEmpty()) {
+			return false;
+		}
+		final DirCacheEditor editor = headTree.editor();
+		for (final Map.Entry<String, ObjectId> entry : changed.entrySet()) {
+			editor.add(blobEdit(entry.getKey(), entry.getValue(), 0, 0));
+		}
+		for (final String path : removed) {
+			editor.add(new DeletePath(path));
+		}
+		editor.finish();
+		final CommitBuilder commitBuilder = new CommitBuilder();
+		commitBuilder.setTreeId(headTree.writeTree(inserter));
+		if (headId != null) {
+			commitBuilder.setParentId(headId);
+		}
+		final PersonIdent person = new PersonIdent(repository);
+		commitBuilder.setAuthor(person);
+		commitBuilder.setCommitter(person);
+		commitBuilder.setMessage(message);
+		final ObjectId commitId = inserter.insert(commitBuilder);
+		inserter.flush();
+		final RefUpdate refUpdate = repository.updateRef(Constants.HEAD);
+		refUpdate.setNewObjectId(commitId);
+		refUpdate.setExpectedOldObjectId(headId == null ? ObjectId.zeroId() : headId);
+		refUpdate.setRefLogMessage("commit: " + message, false);
+		final RefUpdate.Result result = refUpdate.update();
+		if (result != RefUpdate.Result.NEW && result != RefUpdate.Result.FAST_FORWARD) {
+			throw new IOException("Unable to update HEAD: " + result.name());
+		}
+		checkout();
+		return true;
+	}
+
+	/**
+	 * insert the source of a schema object into the object database
+	 *
+	 * @param path
+	 *            the path of the object file, relative to the working tree
+	 * @param source
+	 *            the source of the object. A null source is stored as an
+	 *            empty file.
+	 * @return true if the content differs from HEAD
+	 * @throws IOException
+	 *             if the source cannot be read or inserted
+	 */
+	public boolean insert(final String path, final Reader source) throws IOException {
+		try (SpillBuffer buffer = new SpillBuffer(SpillBuffer.DEFAULT_THRESHOLD)) {
+			buffer.write(source == null ? new StringReader("") : source);
+			return insert(path, buffer);
+		}
+	}
+
+	/**
+	 * insert the buffered source of a schema object into the object database
+	 *
+	 * @param path
+	 *            the path of the object file, relative to the working tree
+	 * @param source
+	 *            the source of the object
+	 * @return true if the content differs from HEAD
+	 * @throws IOException
+	 *             if the source cannot be read or inserted
+	 */
+	public synchronized boolean insert(final String path, final SpillBuffer source) throws IOException {
+		final ObjectId blobId;
+		try (InputStream inputStream = source.openInputStream()) {
+			blobId = inserter.insert(Constants.OBJ_BLOB, source.getLength(), inputStream);
+		}
+		removed.remove(path);
+		final DirCacheEntry headEntry = headTree.getEntry(path);
+		if (headEntry != null && headEntry.getObjectId().equals(blobId)) {
+			changed.remove(path);
+			return false;
+		}
+		changed.put(path, blobId);
+		return true;
+	}
+
+	/**
+	 * remove the file of a dropped schema object
+	 *
+	 * @param path
+	 *            the path of the object file, relative to the working tree
+	 * @return true if the file is in HEAD
+	 */
+	public synchronized boolean remove(final String path) {
+		changed.remove(path);
+		if (headTree.getEntry(path) == null) {
+			return false;
+		}
+		removed.add(path);
+		return true;
+	}
+
+	private PathEdit blobEdit(final String path, final ObjectId blobId, final long length, final long lastModified) {
+		return new PathEdit(path) {
+
+			@Override
+			public void apply(final DirCacheEntry entry) {
+				entry.setFileMode(FileMode.REGULAR_FILE);
+				entry.setObjectId(blobId);
+				entry.setLength(length);
+				entry.setLastModified(lastModified);
+			}
+		};
+	}
+
+	private void checkout() throws IOException {
+		final DirCache index = repository.lockDirCache();
+		try {
+			final DirCacheEditor editor = index.editor();
+			final ObjectReader reader = repository.newObjectReader();
+			try {
+				final byte[] buffer = new byte[COPY_BUFFER_SIZE];
+				for (final Map.Entry<String, ObjectId> entry : changed.entrySet()) {
+					final File file = new File(repository.getWorkTree(), entry.getKey());
+					file.getParentFile().mkdirs();
+					try (InputStream inputStream = reader.open(entry.getValue(), Constants.OBJ_BLOB).openStream();
+							OutputStream outputStream = new FileOutputStream(file)) {
+						int count = inputStream.read(buffer);
+						while (count != -1) {
+							outputStream.write(buffer, 0, count);
+							count = inputStream.read(buffer);
+						}
+					}
+					editor.add(blobEdit(entry.getKey(), entry.getValue(), file.length(), file.lastModified()));
+				}
+				for (final String path : removed) {
+					final File file = new File(repository.getWorkTree(), path);
+					if (file.exists() && !file.delete()) {
+						throw new IOException("Unable to delete " + file);
+					}
+					editor.add(new DeletePath(path));
+				}
+			} finally {
+				reader.release();
+			}
+			editor.commit();
+		} finally {
+			index.unlock();
+		}
+	}
+
+}
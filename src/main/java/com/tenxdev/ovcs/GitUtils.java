@@ -1,8 +1,24 @@
 package com.tenxdev.ovcs;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
 
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheEditor;
+import org.eclipse.jgit.dircache.DirCacheEditor.DeletePath;
+import org.eclipse.jgit.dircache.DirCacheEditor.PathEdit;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
 import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
@@ -10,6 +26,10 @@ import org.eclipse.jgit.revwalk.RevTree;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.treewalk.AbstractTreeIterator;
 import org.eclipse.jgit.treewalk.CanonicalTreeParser;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+
+import com.tenxdev.ovcs.WrittenBlobs.WrittenBlob;
 
 /**
  * Useful git routines
@@ -48,6 +68,145 @@ public final class GitUtils {
 		}
 	}
 
+	/**
+	 * Stage added, modified and removed files in a single update of the index,
+	 * instead of locking and rewriting the index for each file. A path listed
+	 * more than once, such as the file of a package and its body, is staged
+	 * once, and a path both updated and removed is removed.
+	 *
+	 * @param repository
+	 *            the git repository
+	 * @param updatedPaths
+	 *            the paths, relative to the working tree, of files to add or
+	 *            update
+	 * @param removedPaths
+	 *            the paths, relative to the working tree, of files to remove
+	 * @throws IOException
+	 *             if the files cannot be read, or the index cannot be updated
+	 */
+	public static void updateIndex(final Repository repository, final Collection<String> updatedPaths,
+			final Collection<String> removedPaths) throws IOException {
+		final DirCache dirCache = repository.lockDirCache();
+		try {
+			final Set<String> removed = new LinkedHashSet<>(removedPaths);
+			final Set<String> updated = new LinkedHashSet<>(updatedPaths);
+			updated.removeAll(removed);
+			final DirCacheEditor editor = dirCache.editor();
+			final ObjectInserter inserter = repository.newObjectInserter();
+			try {
+				for (final String path : removed) {
+					editor.add(new DeletePath(path));
+				}
+				for (final String path : updated) {
+					editor.add(insertBlob(repository, inserter, path));
+				}
+				inserter.flush();
+			} finally {
+				inserter.release();
+			}
+			editor.commit();
+		} finally {
+			dirCache.unlock();
+		}
+	}
+
+	/**
+	 * Refresh the stat information of index entries for files written by ovcs
+	 * whose content is the content recorded in the index, so that git does not
+	 * need to hash them again. Entries for files with different content are
+	 * left untouched.
+	 *
+	 * @param repository
+	 *            the git repository
+	 * @param writtenBlobs
+	 *            the blob ids of files written by ovcs, with paths relative to
+	 *            the working tree
+	 * @throws IOException
+	 *             if the index cannot be updated
+	 */
+	public static void refreshIndex(final Repository repository, final WrittenBlobs writtenBlobs)
+			throws IOException {
+		if (writtenBlobs.isEmpty()) {
+			return;
+		}
+		final DirCache dirCache = repository.lockDirCache();
+		try {
+			boolean refreshed = false;
+			for (final String path : writtenBlobs.getPaths()) {
+				final DirCacheEntry entry = dirCache.getEntry(path);
+				final WrittenBlob blob = writtenBlobs.get(repository.getWorkTree(), path);
+				if (entry == null || blob == null || !entry.getObjectId().equals(blob.getObjectId())) {
+					continue;
+				}
+				if (entry.getLength() != blob.getLength() || entry.getLastModified() != blob.getLastModified()) {
+					entry.setLength(blob.getLength());
+					entry.setLastModified(blob.getLastModified());
+					refreshed = true;
+				}
+			}
+			if (refreshed) {
+				dirCache.write();
+				dirCache.commit();
+			}
+		} finally {
+			dirCache.unlock();
+		}
+	}
+
+	/**
+	 * Find the blob ids of files in the HEAD revision. Only the given paths
+	 * are visited, the rest of the tree is skipped.
+	 *
+	 * @param repository
+	 *            the git repository
+	 * @param paths
+	 *            the paths of the files, relative to the working tree
+	 * @return the blob ids by path, without an entry for files not in HEAD
+	 * @throws IOException
+	 *             if the repository cannot be read
+	 */
+	public static Map<String, ObjectId> findHeadBlobs(final Repository repository, final Collection<String> paths)
+			throws IOException {
+		final Map<String, ObjectId> blobs = new HashMap<>();
+		final ObjectId headTree = repository.resolve(Constants.HEAD + "^{tree}");
+		if (headTree == null || paths.isEmpty()) {
+			return blobs;
+		}
+		final TreeWalk walk = new TreeWalk(repository);
+		try {
+			walk.addTree(headTree);
+			walk.setRecursive(true);
+			walk.setFilter(PathFilterGroup.createFromStrings(paths));
+			while (walk.next()) {
+				blobs.put(walk.getPathString(), walk.getObjectId(0));
+			}
+		} finally {
+			walk.release();
+		}
+		return blobs;
+	}
+
+	private static PathEdit insertBlob(final Repository repository, final ObjectInserter inserter, final String path)
+			throws IOException {
+		final File file = new File(repository.getWorkTree(), path);
+		final long length = file.length();
+		final long lastModified = file.lastModified();
+		final ObjectId blobId;
+		try (InputStream inputStream = new FileInputStream(file)) {
+			blobId = inserter.insert(Constants.OBJ_BLOB, length, inputStream);
+		}
+		return new PathEdit(path) {
+
+			@Override
+			public void apply(final DirCacheEntry entry) {
+				entry.setFileMode(FileMode.REGULAR_FILE);
+				entry.setObjectId(blobId);
+				entry.setLength(length);
+				entry.setLastModified(lastModified);
+			}
+		};
+	}
+
 	private GitUtils() {
 	}
 
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2015 Abed Tony BenBrahim <tony.benbrahim@10xdev.com> This file is
+ * part of OVCS.
+ *
+ * OVCS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OVCS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OVCS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tenxdev.ovcs;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.regex.Pattern;
+
+/**
+ * Stores the SHA-1 hash of the content of committed object files, by git blob
+ * id, so that it can be compared with the hash of the DDL computed by the
+ * database without reading the blobs again. Since blobs are immutable, entries
+ * never become stale.
+ *
+ * @author Tony BenBrahim <tony.benbrahim@10xdev.com>
+ *
+ */
+public class HashManifest {
+
+	/**
+	 * format of a blob id and of a content hash, in hexadecimal
+	 */
+	private static final Pattern HASH_PATTERN = Pattern.compile("[0-9a-f]{40}");
+
+	/**
+	 * the manifest file
+	 */
+	private transient final File file;
+
+	/**
+	 * constructor
+	 *
+	 * @param file
+	 *            the manifest file
+	 */
+	public HashManifest(final File file) {
+		this.file = file;
+	}
+
+	/**
+	 * load the manifest
+	 *
+	 * @return a map of blob ids to content hashes, in lower case hexadecimal.
+	 *         Empty if the file does not exist or is corrupt.
+	 */
+	public Map<String, String> load() {
+		final Map<String, String> hashes = new HashMap<>();
+		if (!file.exists()) {
+			return hashes;
+		}
+		final Properties properties = new Properties();
+		try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+			properties.load(reader);
+		} catch (final IOException | IllegalArgumentException e) {
+			return hashes;
+		}
+		for (final String blobId : properties.stringPropertyNames()) {
+			final String hash = properties.getProperty(blobId);
+			if (HASH_PATTERN.matcher(blobId).matches() && HASH_PATTERN.matcher(hash).matches()) {
+				hashes.put(blobId, hash);
+			}
+		}
+		return hashes;
+	}
+
+	/**
+	 * replace the stored manifest
+	 *
+	 * @param hashes
+	 *            a map of blob ids to content hashes
+	 * @throws IOException
+	 *             if the manifest cannot be written
+	 */
+	public void store(final Map<String, String> hashes) throws IOException {
+		final Properties properties = new Properties();
+		properties.putAll(hashes);
+		final File parent = file.getAbsoluteFile().getParentFile();
+		if (!parent.exists() && !parent.mkdirs()) {
+			throw new IOException("Unable to create directory " + parent);
+		}
+		final File tempFile = new File(parent, file.getName() + ".tmp");
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(tempFile), StandardCharsets.UTF_8)) {
+			properties.store(writer, "ovcs content hashes");
+		}
+		Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright 2015 Abed Tony BenBrahim <tony.benbrahim@10xdev.com> This file is
+ * part of OVCS.
+ *
+ * OVCS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OVCS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OVCS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tenxdev.ovcs;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.zip.CRC32;
+
+/**
+ * Maps database objects to the paths of their source files in the working
+ * directory. The flat layout writes all files in the root directory; the
+ * prefix layout shards files into subdirectories named after the first
+ * characters of the object name, and the hash layout into a fixed number of
+ * subdirectories chosen by a hash of the object name. The layout of a
+ * repository is stored in a file tracked with the object files, so that all
+ * clones use the same layout.
+ *
+ * @author Tony BenBrahim <tony.benbrahim@10xdev.com>
+ *
+ */
+public final class Layout {
+
+	/**
+	 * the name of the layout file, in the root of the working directory
+	 */
+	public static final String FILE_NAME = ".ovcs-layout";
+
+	/**
+	 * the flat layout type
+	 */
+	public static final String FLAT = "flat";
+
+	/**
+	 * the prefix layout type
+	 */
+	public static final String PREFIX = "prefix";
+
+	/**
+	 * the hash layout type
+	 */
+	public static final String HASH = "hash";
+
+	/**
+	 * the maximum length of the name prefix of the prefix layout
+	 */
+	public static final int MAX_PREFIX_LENGTH = 8;
+
+	/**
+	 * the maximum number of subdirectories of the hash layout
+	 */
+	public static final int MAX_BUCKETS = 4096;
+
+	/**
+	 * the extension of object files
+	 */
+	private static final String FILE_EXTENSION = ".sql";
+
+	/**
+	 * the layout file key holding the layout type
+	 */
+	private static final String TYPE_KEY = "layout";
+
+	/**
+	 * the layout file key holding the prefix length or number of buckets
+	 */
+	private static final String SIZE_KEY = "size";
+
+	/**
+	 * the layout type
+	 */
+	private final String type;
+
+	/**
+	 * the length of the name prefix, or the number of hash buckets, 0 for the
+	 * flat layout
+	 */
+	private final int size;
+
+	/**
+	 * constructor
+	 *
+	 * @param type
+	 *            the layout type, {@link #FLAT}, {@link #PREFIX} or
+	 *            {@link #HASH}
+	 * @param size
+	 *            the length of the name prefix, from 1 to
+	 *            {@link #MAX_PREFIX_LENGTH}, or the number of hash buckets,
+	 *            from 2 to {@link #MAX_BUCKETS}. Ignored for the flat layout.
+	 * @throws IllegalArgumentException
+	 *             if the type or size is not valid
+	 */
+	public Layout(final String type, final int size) {
+		this.type = type.toLowerCase(Locale.ENGLISH);
+		switch (this.type) {
+		case FLAT:
+			this.size = 0;
+			break;
+		case PREFIX:
+			if (size < 1 || size > MAX_PREFIX_LENGTH) {
+				throw new IllegalArgumentException(String.format("The prefix length must be between 1 and %d",
+						MAX_PREFIX_LENGTH));
+			}
+			this.size = size;
+			break;
+		case HASH:
+			if (size < 2 || size > MAX_BUCKETS) {
+				throw new IllegalArgumentException(String.format("The number of buckets must be between 2 and %d",
+						MAX_BUCKETS));
+			}
+			this.size = size;
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown layout " + type);
+		}
+	}
+
+	/**
+	 * load the layout of a working directory
+	 *
+	 * @param workTree
+	 *            the working directory
+	 * @return the stored layout, or the flat layout if no layout is stored
+	 * @throws IOException
+	 *             if the layout file cannot be read or is not valid
+	 */
+	public static Layout load(final File workTree) throws IOException {
+		final File file = new File(workTree, FILE_NAME);
+		if (!file.exists()) {
+			return new Layout(FLAT, 0);
+		}
+		final Properties properties = new Properties();
+		try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+			properties.load(reader);
+		}
+		try {
+			final String size = properties.getProperty(SIZE_KEY, "0");
+			return new Layout(properties.getProperty(TYPE_KEY, FLAT).trim(), Integer.parseInt(size.trim()));
+		} catch (final IllegalArgumentException e) {
+			throw new IOException(String.format("Invalid layout file %s: %s", file, e.getMessage()), e);
+		}
+	}
+
+	/**
+	 * store this layout as the layout of a working directory
+	 *
+	 * @param workTree
+	 *            the working directory
+	 * @throws IOException
+	 *             if the layout file cannot be written
+	 */
+	public void store(final File workTree) throws IOException {
+		final Properties properties = new Properties();
+		properties.setProperty(TYPE_KEY, type);
+		if (size > 0) {
+			properties.setProperty(SIZE_KEY, Integer.toString(size));
+		}
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(new File(workTree, FILE_NAME)),
+				StandardCharsets.UTF_8)) {
+			properties.store(writer, "ovcs object file layout");
+		}
+	}
+
+	/**
+	 * gets the path of the source file of an object
+	 *
+	 * @param objectName
+	 *            the name of the database object
+	 * @return the path of the file, relative to the working directory, with
+	 *         '/' separators
+	 */
+	public String getPath(final String objectName) {
+		switch (type) {
+		case PREFIX:
+			return objectName.substring(0, Math.min(size, objectName.length())) + "/" + objectName
+					+ FILE_EXTENSION;
+		case HASH:
+			final CRC32 crc = new CRC32();
+			crc.update(objectName.getBytes(StandardCharsets.UTF_8));
+			final int width = Integer.toHexString(size - 1).length();
+			return String.format("%0" + width + "x/%s%s", crc.getValue() % size, objectName, FILE_EXTENSION);
+		default:
+			return objectName + FILE_EXTENSION;
+		}
+	}
+
+	/**
+	 * gets the name of the object whose source is held in a file
+	 *
+	 * @param path
+	 *            the path of the file, relative to the working directory,
+	 *            with '/' separators
+	 * @return the name of the object, or null if the file is not an object
+	 *         file of this layout
+	 */
+	public String getObjectName(final String path) {
+		if (!path.endsWith(FILE_EXTENSION)) {
+			return null;
+		}
+		final String objectName = path.substring(path.lastIndexOf('/') + 1, path.length()
+				- FILE_EXTENSION.length());
+		return getPath(objectName).equals(path) ? objectName : null;
+	}
+
+	/**
+	 * determines if this layout writes all files in the root directory
+	 *
+	 * @return true for the flat layout, false otherwise
+	 */
+	public boolean isFlat() {
+		return size == 0;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean equals(final Object other) {
+		return other instanceof Layout && type.equals(((Layout) other).type) && size == ((Layout) other).size;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int hashCode() {
+		return type.hashCode() * 31 + size;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return size == 0 ? type : type + " " + size;
+	}
+
+}
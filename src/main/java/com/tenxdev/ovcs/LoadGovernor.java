@@ -0,0 +1,455 @@
+/*
+ * Copyright 2015 Abed Tony BenBrahim <tony.benbrahim@10xdev.com> This file is
+ * part of OVCS.
+ *
+ * OVCS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OVCS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OVCS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tenxdev.ovcs;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the load schema object extraction puts on the database. Every call
+ * extracting DDL holds a permit while it runs. The number of permits, the
+ * concurrency limit, adapts to the latency of the calls: it grows by one
+ * session each sampling interval while the latency per object stays within a
+ * tolerance of its baseline, and is halved when it rises above it (additive
+ * increase, multiplicative decrease). Below one session, calls are spaced out
+ * so that a single session is busy for that share of the time. The hard
+ * limits, the maximum number of sessions and of objects per second, are read
+ * from the .ovcs-limits file of the repository, so that they are shared by
+ * everyone synchronizing the schema.
+ *
+ * @author Tony BenBrahim <tony.benbrahim@10xdev.com>
+ *
+ */
+public final class LoadGovernor {
+
+	/**
+	 * Allows a call to the database to run. Closing the permit returns it to
+	 * the governor, along with the latency of the call.
+	 */
+	public final class Permit implements AutoCloseable {
+
+		/**
+		 * the time the call started, from System.nanoTime()
+		 */
+		private final long start = System.nanoTime();
+		/**
+		 * the number of objects extracted by the call
+		 */
+		private int objects;
+
+		/**
+		 * count objects extracted by the call
+		 *
+		 * @param count
+		 *            the number of objects
+		 */
+		public void add(final int count) {
+			objects += count;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void close() {
+			release(System.nanoTime() - start, objects);
+		}
+	}
+
+	/**
+	 * the name of the limits file, in the root of the working directory
+	 */
+	public static final String FILE_NAME = ".ovcs-limits";
+
+	/**
+	 * limits key of the maximum number of sessions extracting DDL at once
+	 */
+	private static final String MAX_SESSIONS_KEY = "max-sessions";
+
+	/**
+	 * limits key of the maximum number of objects extracted per second
+	 */
+	private static final String MAX_RATE_KEY = "max-objects-per-second";
+
+	/**
+	 * limits key of the factor by which the latency per object may exceed
+	 * its baseline before the concurrency limit is reduced
+	 */
+	private static final String LATENCY_TOLERANCE_KEY = "latency-tolerance";
+
+	/**
+	 * the default latency tolerance
+	 */
+	private static final double DEFAULT_LATENCY_TOLERANCE = 2.0;
+
+	/**
+	 * the lowest concurrency limit, keeping a single session busy a tenth of
+	 * the time
+	 */
+	private static final double MIN_LIMIT = 0.1;
+
+	/**
+	 * the time over which latencies are averaged before the concurrency limit
+	 * is adjusted, in nanoseconds
+	 */
+	private static final long SAMPLE_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+	/**
+	 * the weight of the last sampling interval in the smoothed latency
+	 */
+	private static final double SMOOTHING = 0.3;
+
+	/**
+	 * the rate at which the baseline latency rises towards the smoothed
+	 * latency each sampling interval, so that it follows changes in the mix of
+	 * objects extracted
+	 */
+	private static final double BASELINE_DRIFT = 0.05;
+
+	/**
+	 * the number of nanoseconds in a millisecond
+	 */
+	private static final long NANOS_PER_MILLI = 1000000L;
+
+	/**
+	 * a governor without limits, for commands run on repositories without a
+	 * limits file
+	 */
+	public static final LoadGovernor UNLIMITED = new LoadGovernor(0, 0, DEFAULT_LATENCY_TOLERANCE, null);
+
+	/**
+	 * the maximum number of sessions extracting DDL at once, 0 for a governor
+	 * without limits
+	 */
+	private final int maxSessions;
+
+	/**
+	 * the maximum number of objects extracted per second, 0 for no limit
+	 */
+	private final double maxRate;
+
+	/**
+	 * the factor by which the latency per object may exceed its baseline
+	 */
+	private final double latencyTolerance;
+
+	/**
+	 * the metrics receiving the time spent waiting for permits and the number
+	 * of back-offs, or null
+	 */
+	private final Metrics metrics;
+
+	/**
+	 * the current concurrency limit
+	 */
+	private double limit = 1;
+
+	/**
+	 * the lowest concurrency limit reached
+	 */
+	private double lowestLimit = 1;
+
+	/**
+	 * the number of permits held
+	 */
+	private int active;
+
+	/**
+	 * the earliest time the next permit may be granted, from
+	 * System.nanoTime(), to keep within the rate limit, or to space calls out
+	 * when the concurrency limit is below one session
+	 */
+	private long nextStart = System.nanoTime();
+
+	/**
+	 * the start of the current sampling interval, from System.nanoTime()
+	 */
+	private long intervalStart = System.nanoTime();
+
+	/**
+	 * the total latency of the calls of the current sampling interval, in
+	 * nanoseconds
+	 */
+	private long intervalNanos;
+
+	/**
+	 * the number of objects extracted during the current sampling interval
+	 */
+	private long intervalObjects;
+
+	/**
+	 * the smoothed latency per object, in nanoseconds, 0 until measured
+	 */
+	private double smoothedLatency;
+
+	/**
+	 * the baseline latency per object, in nanoseconds, 0 until measured
+	 */
+	private double baselineLatency;
+
+	/**
+	 * the number of times the concurrency limit was reduced
+	 */
+	private int backoffs;
+
+	/**
+	 * the number of objects extracted
+	 */
+	private long objects;
+
+	/**
+	 * the total time spent waiting for permits, in nanoseconds
+	 */
+	private long waitNanos;
+
+	/**
+	 * constructor
+	 *
+	 * @param maxSessions
+	 *            the maximum number of sessions extracting DDL at once, 0 for
+	 *            a governor without limits
+	 * @param maxRate
+	 *            the maximum number of objects extracted per second, 0 for no
+	 *            limit
+	 * @param latencyTolerance
+	 *            the factor by which the latency per object may exceed its
+	 *            baseline before the concurrency limit is reduced
+	 * @param metrics
+	 *            the metrics receiving the time spent waiting for permits and
+	 *            the number of back-offs, or null
+	 * @throws IllegalArgumentException
+	 *             if a limit is negative, or the tolerance is not greater than
+	 *             1
+	 */
+	public LoadGovernor(final int maxSessions, final double maxRate, final double latencyTolerance,
+			final Metrics metrics) {
+		if (maxSessions < 0) {
+			throw new IllegalArgumentException("the maximum number of sessions cannot be negative");
+		}
+		if (maxRate < 0) {
+			throw new IllegalArgumentException("the maximum number of objects per second cannot be negative");
+		}
+		if (!(latencyTolerance > 1)) {
+			throw new IllegalArgumentException("the latency tolerance must be greater than 1");
+		}
+		this.maxSessions = maxSessions;
+		this.maxRate = maxRate;
+		this.latencyTolerance = latencyTolerance;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * load the limits of a working directory
+	 *
+	 * @param workTree
+	 *            the working directory
+	 * @param parallelism
+	 *            the number of sessions the command would use without limits,
+	 *            also the maximum number of sessions when the limits file does
+	 *            not set it
+	 * @param metrics
+	 *            the metrics receiving the time spent waiting for permits and
+	 *            the number of back-offs, or null
+	 * @return a governor enforcing the stored limits, or {@link #UNLIMITED} if
+	 *         no limits are stored
+	 * @throws IOException
+	 *             if the limits file cannot be read or is not valid
+	 */
+	public static LoadGovernor load(final File workTree, final int parallelism, final Metrics metrics)
+			throws IOException {
+		final File file = new File(workTree, FILE_NAME);
+		if (!file.exists()) {
+			return UNLIMITED;
+		}
+		final Properties properties = new Properties();
+		try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+			properties.load(reader);
+		}
+		try {
+			final int maxSessions = Integer.parseInt(properties.getProperty(MAX_SESSIONS_KEY,
+					Integer.toString(parallelism)).trim());
+			if (maxSessions < 1) {
+				throw new IllegalArgumentException(MAX_SESSIONS_KEY + " must be at least 1");
+			}
+			return new LoadGovernor(Math.min(maxSessions, Math.max(1, parallelism)), Double.parseDouble(properties
+					.getProperty(MAX_RATE_KEY, "0").trim()), Double.parseDouble(properties.getProperty(
+					LATENCY_TOLERANCE_KEY, Double.toString(DEFAULT_LATENCY_TOLERANCE)).trim()), metrics);
+		} catch (final IllegalArgumentException e) {
+			throw new IOException(String.format("Invalid limits file %s: %s", file, e.getMessage()), e);
+		}
+	}
+
+	/**
+	 * wait for a permit to run a call extracting DDL
+	 *
+	 * @return the permit, to be closed when the call completes
+	 * @throws OvcsException
+	 *             if interrupted while waiting
+	 */
+	public Permit acquire() throws OvcsException {
+		if (maxSessions == 0) {
+			return new Permit();
+		}
+		synchronized (this) {
+			final long waitStart = System.nanoTime();
+			try {
+				while (true) {
+					final long now = System.nanoTime();
+					if (active < Math.max(1, (int) limit)) {
+						if (now - nextStart >= 0) {
+							break;
+						}
+						TimeUnit.NANOSECONDS.timedWait(this, nextStart - now);
+					} else {
+						wait();
+					}
+				}
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new OvcsException("Interrupted while waiting to extract objects", e);
+			}
+			final long waited = System.nanoTime() - waitStart;
+			waitNanos += waited;
+			if (metrics != null) {
+				metrics.addTime(Metrics.GOVERNOR_WAIT, waited);
+			}
+			active++;
+		}
+		return new Permit();
+	}
+
+	/**
+	 * return a permit
+	 *
+	 * @param nanos
+	 *            the latency of the call, in nanoseconds
+	 * @param count
+	 *            the number of objects extracted by the call
+	 */
+	private synchronized void release(final long nanos, final int count) {
+		if (maxSessions == 0) {
+			return;
+		}
+		active--;
+		objects += count;
+		final long now = System.nanoTime();
+		if (maxRate > 0) {
+			nextStart = Math.max(nextStart, now) + (long) (count * TimeUnit.SECONDS.toNanos(1) / maxRate);
+		}
+		if (limit < 1) {
+			nextStart = Math.max(nextStart, now + (long) (nanos * (1 / limit - 1)));
+		}
+		intervalNanos += nanos;
+		intervalObjects += count;
+		if (now - intervalStart >= SAMPLE_INTERVAL && intervalObjects > 0) {
+			adjust(intervalNanos, intervalObjects);
+			intervalStart = now;
+			intervalNanos = 0;
+			intervalObjects = 0;
+		}
+		notifyAll();
+	}
+
+	/**
+	 * adjust the concurrency limit for the latency measured over a sampling
+	 * interval. Called when a permit is returned at least one sampling
+	 * interval after the previous adjustment.
+	 *
+	 * @param nanos
+	 *            the total latency of the calls of the interval, in
+	 *            nanoseconds
+	 * @param count
+	 *            the number of objects extracted by the calls, at least 1
+	 */
+	public synchronized void adjust(final long nanos, final long count) {
+		if (maxSessions == 0) {
+			return;
+		}
+		final double latency = (double) nanos / count;
+		smoothedLatency = smoothedLatency == 0 ? latency : smoothedLatency + SMOOTHING * (latency - smoothedLatency);
+		baselineLatency = baselineLatency == 0 ? smoothedLatency : Math.min(smoothedLatency, baselineLatency
+				* (1 + BASELINE_DRIFT));
+		if (smoothedLatency > baselineLatency * latencyTolerance) {
+			limit = Math.max(MIN_LIMIT, limit / 2);
+			lowestLimit = Math.min(lowestLimit, limit);
+			backoffs++;
+			if (metrics != null) {
+				metrics.add(Metrics.GOVERNOR_BACKOFFS, 1);
+			}
+		} else {
+			limit = limit < 1 ? Math.min(1, limit * 2) : Math.min(maxSessions, limit + 1);
+		}
+		notifyAll();
+	}
+
+	/**
+	 * gets the current concurrency limit
+	 *
+	 * @return the number of sessions allowed to extract DDL at once, below 1
+	 *         when a single session is only allowed to be busy part of the
+	 *         time
+	 */
+	public synchronized double getLimit() {
+		return limit;
+	}
+
+	/**
+	 * gets the maximum number of sessions extracting DDL at once
+	 *
+	 * @return the maximum number of sessions, 0 for a governor without limits
+	 */
+	public int getMaxSessions() {
+		return maxSessions;
+	}
+
+	/**
+	 * gets the number of times the concurrency limit was reduced
+	 *
+	 * @return the number of back-offs
+	 */
+	public synchronized int getBackoffs() {
+		return backoffs;
+	}
+
+	/**
+	 * determines if this governor enforces limits
+	 *
+	 * @return false for a governor without limits
+	 */
+	public boolean isLimited() {
+		return maxSessions > 0;
+	}
+
+	/**
+	 * gets a description of the limits and of the load adjustments, for
+	 * display
+	 *
+	 * @return the statistics
+	 */
+	public synchronized String getStatistics() {
+		return String.format("Load governor: %d objects, at most %d sessions%s, concurrency limit %.1f "
+				+ "(lowest %.1f), %d back-offs, waited %d ms", objects, maxSessions,
+				maxRate > 0 ? String.format(" and %.0f objects/s", maxRate) : "", limit, lowestLimit, backoffs,
+				waitNanos / NANOS_PER_MILLI);
+	}
+}
@@ -0,0 +1,559 @@
+/*
+ * Copyright 2015 Abed Tony BenBrahim <tony.benbrahim@10xdev.com> This file is
+ * part of OVCS.
+ *
+ * OVCS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OVCS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OVCS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tenxdev.ovcs;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records the time spent in each phase of a command, counters such as the
+ * number of objects and bytes fetched, and latency histograms. Metrics may be
+ * recorded from several threads at once; the time of a phase running on
+ * several threads is the sum of the time spent on each thread.
+ *
+ * @author Tony BenBrahim <tony.benbrahim@10xdev.com>
+ *
+ */
+public class Metrics {
+
+	/**
+	 * Measures the time spent in a phase, from its creation until it is closed
+	 */
+	public final class Timer implements AutoCloseable {
+
+		/**
+		 * the phase being measured
+		 */
+		private final String phase;
+		/**
+		 * the time the phase started, in nanoseconds
+		 */
+		private final long start = System.nanoTime();
+
+		/**
+		 * constructor
+		 *
+		 * @param phase
+		 *            the phase being measured
+		 */
+		Timer(final String phase) {
+			this.phase = phase;
+		}
+
+		/**
+		 * ends the phase, adding the time elapsed to it
+		 */
+		@Override
+		public void close() {
+			addTime(phase, System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * The total time and number of runs of a phase
+	 */
+	private static final class Phase {
+
+		/**
+		 * the total time spent in the phase, in nanoseconds
+		 */
+		private final AtomicLong nanos = new AtomicLong();
+		/**
+		 * the number of times the phase ran
+		 */
+		private final AtomicLong count = new AtomicLong();
+	}
+
+	/**
+	 * A latency histogram, with buckets whose upper bounds are powers of two
+	 * microseconds
+	 */
+	private static final class Histogram {
+
+		/**
+		 * the number of buckets, the last bucket holding all latencies of more
+		 * than 2^(BUCKETS - 2) microseconds
+		 */
+		private static final int BUCKETS = 40;
+		/**
+		 * the number of values in each bucket
+		 */
+		private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+		/**
+		 * the number of values recorded
+		 */
+		private final AtomicLong count = new AtomicLong();
+		/**
+		 * the sum of all values, in nanoseconds
+		 */
+		private final AtomicLong sum = new AtomicLong();
+		/**
+		 * the smallest value, in nanoseconds
+		 */
+		private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+		/**
+		 * the largest value, in nanoseconds
+		 */
+		private final AtomicLong max = new AtomicLong();
+
+		/**
+		 * records a value
+		 *
+		 * @param nanos
+		 *            the value, in nanoseconds
+		 */
+		void record(final long nanos) {
+			final long micros = Math.max(0, nanos) / 1000;
+			final int bucket = micros == 0 ? 0 : 64 - Long.numberOfLeadingZeros(micros - 1);
+			buckets.incrementAndGet(Math.min(bucket, BUCKETS - 1));
+			count.incrementAndGet();
+			sum.addAndGet(nanos);
+			long current = min.get();
+			while (nanos < current && !min.compareAndSet(current, nanos)) {
+				current = min.get();
+			}
+			current = max.get();
+			while (nanos > current && !max.compareAndSet(current, nanos)) {
+				current = max.get();
+			}
+		}
+
+		/**
+		 * estimates a percentile, as the upper bound of the bucket holding it,
+		 * but no more than the largest value
+		 *
+		 * @param percentile
+		 *            the percentile, between 0 and 100
+		 * @return the estimated percentile, in nanoseconds
+		 */
+		long percentile(final double percentile) {
+			final long target = (long) Math.ceil(count.get() * percentile / 100);
+			long cumulative = 0;
+			for (int i = 0; i < BUCKETS - 1; i++) {
+				cumulative += buckets.get(i);
+				if (cumulative >= target) {
+					return Math.min((1L << i) * 1000, max.get());
+				}
+			}
+			return max.get();
+		}
+	}
+
+	/**
+	 * phase of opening database connections
+	 */
+	public static final String CONNECT = "connect";
+
+	/**
+	 * phase of setting the DBMS_METADATA session transforms
+	 */
+	public static final String METADATA_TRANSFORMS = "metadataTransforms";
+
+	/**
+	 * phase of running queries, until the first rows are returned
+	 */
+	public static final String QUERY = "query";
+
+	/**
+	 * phase of reading rows and object source from the database
+	 */
+	public static final String FETCH = "fetch";
+
+	/**
+	 * phase of writing object files, or inserting objects into the git object
+	 * database
+	 */
+	public static final String WRITE = "write";
+
+	/**
+	 * phase of pulling from the remote repository
+	 */
+	public static final String GIT_PULL = "gitPull";
+
+	/**
+	 * phase of computing the status of the working directory
+	 */
+	public static final String GIT_STATUS = "gitStatus";
+
+	/**
+	 * phase of updating the index
+	 */
+	public static final String GIT_ADD = "gitAdd";
+
+	/**
+	 * phase of creating commits
+	 */
+	public static final String GIT_COMMIT = "gitCommit";
+
+	/**
+	 * phase of pushing to the remote repository
+	 */
+	public static final String PUSH = "push";
+
+	/**
+	 * phase of waiting for the load governor to allow extracting more objects
+	 */
+	public static final String GOVERNOR_WAIT = "governorWait";
+
+	/**
+	 * counter of objects fetched from the database
+	 */
+	public static final String OBJECTS_FETCHED = "objectsFetched";
+
+	/**
+	 * counter of object files whose content changed
+	 */
+	public static final String OBJECTS_WRITTEN = "objectsWritten";
+
+	/**
+	 * counter of object files whose content did not change
+	 */
+	public static final String OBJECTS_UNCHANGED = "objectsUnchanged";
+
+	/**
+	 * counter of bytes of object source fetched from the database, encoded in
+	 * UTF-8
+	 */
+	public static final String BYTES_FETCHED = "bytesFetched";
+
+	/**
+	 * counter of bytes written to object files
+	 */
+	public static final String BYTES_WRITTEN = "bytesWritten";
+
+	/**
+	 * counter of the times the load governor reduced its concurrency limit
+	 */
+	public static final String GOVERNOR_BACKOFFS = "governorBackoffs";
+
+	/**
+	 * counter of database sessions whose statistics were captured
+	 */
+	public static final String DB_SESSIONS = "dbSessions";
+
+	/**
+	 * counter of SQL*Net round trips between the client and the database
+	 */
+	public static final String DB_ROUND_TRIPS = "dbRoundTrips";
+
+	/**
+	 * counter of bytes sent by the database to the client
+	 */
+	public static final String DB_BYTES_SENT = "dbBytesSent";
+
+	/**
+	 * counter of bytes received by the database from the client
+	 */
+	public static final String DB_BYTES_RECEIVED = "dbBytesReceived";
+
+	/**
+	 * counter of database CPU time used by the sessions, in milliseconds
+	 */
+	public static final String DB_CPU_MILLIS = "dbCpuMillis";
+
+	/**
+	 * counter of logical reads by the sessions
+	 */
+	public static final String DB_LOGICAL_READS = "dbLogicalReads";
+
+	/**
+	 * counter of LOB reads by the sessions
+	 */
+	public static final String DB_LOB_READS = "dbLobReads";
+
+	/**
+	 * histogram of the time taken to fetch and write each object
+	 */
+	public static final String OBJECT_LATENCY = "objectLatency";
+
+	/**
+	 * the time the metrics were created, in milliseconds since the epoch
+	 */
+	private final long startTime = System.currentTimeMillis();
+
+	/**
+	 * the time the metrics were created, in nanoseconds
+	 */
+	private final long startNanos = System.nanoTime();
+
+	/**
+	 * the phases, by name
+	 */
+	private final ConcurrentMap<String, Phase> phases = new ConcurrentHashMap<>();
+
+	/**
+	 * the counters, by name
+	 */
+	private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<>();
+
+	/**
+	 * the histograms, by name
+	 */
+	private final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+	/**
+	 * starts measuring the time spent in a phase. The timer is meant to be
+	 * used in a try with resources statement.
+	 *
+	 * @param phase
+	 *            the name of the phase
+	 * @return a timer adding the elapsed time to the phase when closed
+	 */
+	public Timer start(final String phase) {
+		return new Timer(phase);
+	}
+
+	/**
+	 * adds time spent in a phase
+	 *
+	 * @param phase
+	 *            the name of the phase
+	 * @param nanos
+	 *            the time spent, in nanoseconds
+	 */
+	public void addTime(final String phase, final long nanos) {
+		Phase entry = phases.get(phase);
+		if (entry == null) {
+			phases.putIfAbsent(phase, new Phase());
+			entry = phases.get(phase);
+		}
+		entry.nanos.addAndGet(nanos);
+		entry.count.incrementAndGet();
+	}
+
+	/**
+	 * adds to a counter
+	 *
+	 * @param counter
+	 *            the name of the counter
+	 * @param delta
+	 *            the value to add
+	 */
+	public void add(final String counter, final long delta) {
+		AtomicLong value = counters.get(counter);
+		if (value == null) {
+			counters.putIfAbsent(counter, new AtomicLong());
+			value = counters.get(counter);
+		}
+		value.addAndGet(delta);
+	}
+
+	/**
+	 * records a latency in a histogram
+	 *
+	 * @param histogram
+	 *            the name of the histogram
+	 * @param nanos
+	 *            the latency, in nanoseconds
+	 */
+	public void record(final String histogram, final long nanos) {
+		Histogram entry = histograms.get(histogram);
+		if (entry == null) {
+			histograms.putIfAbsent(histogram, new Histogram());
+			entry = histograms.get(histogram);
+		}
+		entry.record(nanos);
+	}
+
+	/**
+	 * gets the total time spent in a phase
+	 *
+	 * @param phase
+	 *            the name of the phase
+	 * @return the time spent, in nanoseconds, 0 if the phase never ran
+	 */
+	public long getTime(final String phase) {
+		final Phase entry = phases.get(phase);
+		return entry == null ? 0 : entry.nanos.get();
+	}
+
+	/**
+	 * gets the value of a counter
+	 *
+	 * @param counter
+	 *            the name of the counter
+	 * @return the value of the counter, 0 if it was never incremented
+	 */
+	public long getCount(final String counter) {
+		final AtomicLong value = counters.get(counter);
+		return value == null ? 0 : value.get();
+	}
+
+	/**
+	 * estimates a percentile of a histogram
+	 *
+	 * @param histogram
+	 *            the name of the histogram
+	 * @param percentile
+	 *            the percentile, between 0 and 100
+	 * @return the estimated percentile, in nanoseconds, 0 if no value was
+	 *         recorded
+	 */
+	public long getPercentile(final String histogram, final double percentile) {
+		final Histogram entry = histograms.get(histogram);
+		return entry == null ? 0 : entry.percentile(percentile);
+	}
+
+	/**
+	 * prints a summary of the metrics
+	 *
+	 * @param out
+	 *            the stream to print to
+	 */
+	public void printSummary(final PrintStream out) {
+		out.println(String.format("Elapsed time: %s", formatMillis(System.nanoTime() - startNanos)));
+		for (final Map.Entry<String, Phase> entry : new TreeMap<>(phases).entrySet()) {
+			out.println(String.format("  %-20s %12s  (%d)", entry.getKey(), formatMillis(entry.getValue().nanos.get()),
+					entry.getValue().count.get()));
+		}
+		for (final Map.Entry<String, AtomicLong> entry : new TreeMap<>(counters).entrySet()) {
+			out.println(String.format("  %-20s %12d", entry.getKey(), entry.getValue().get()));
+		}
+		for (final Map.Entry<String, Histogram> entry : new TreeMap<>(histograms).entrySet()) {
+			final Histogram histogram = entry.getValue();
+			out.println(String.format("  %-20s p50 %s, p90 %s, p99 %s, max %s", entry.getKey(),
+					formatMillis(histogram.percentile(50)), formatMillis(histogram.percentile(90)),
+					formatMillis(histogram.percentile(99)), formatMillis(histogram.max.get())));
+		}
+	}
+
+	/**
+	 * writes the metrics to a JSON report. The report is written to a
+	 * temporary file first, then moved in place, so that readers never see a
+	 * partial report.
+	 *
+	 * @param file
+	 *            the report file
+	 * @param properties
+	 *            additional string properties describing the run, such as the
+	 *            command and repository, written at the top of the report
+	 * @throws IOException
+	 *             if the report cannot be written
+	 */
+	public void writeReport(final File file, final Map<String, String> properties) throws IOException {
+		final File parent = file.getAbsoluteFile().getParentFile();
+		if (!parent.isDirectory() && !parent.mkdirs()) {
+			throw new IOException("Unable to create directory " + parent);
+		}
+		final File tempFile = new File(parent, file.getName() + ".tmp");
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(tempFile), StandardCharsets.UTF_8)) {
+			writer.write(toJson(properties));
+		}
+		Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * formats the metrics as a JSON document. Times are in milliseconds.
+	 *
+	 * @param properties
+	 *            additional string properties describing the run
+	 * @return the JSON document
+	 */
+	public String toJson(final Map<String, String> properties) {
+		final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.ENGLISH);
+		dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+		final StringBuilder json = new StringBuilder("{\n");
+		for (final Map.Entry<String, String> entry : properties.entrySet()) {
+			json.append("  ").append(quote(entry.getKey())).append(": ").append(quote(entry.getValue())).append(",\n");
+		}
+		json.append("  \"started\": ").append(quote(dateFormat.format(new Date(startTime)))).append(",\n");
+		json.append("  \"elapsedMillis\": ").append(toMillis(System.nanoTime() - startNanos)).append(",\n");
+		json.append("  \"phases\": {");
+		String separator = "\n";
+		for (final Map.Entry<String, Phase> entry : new TreeMap<>(phases).entrySet()) {
+			json.append(separator).append("    ").append(quote(entry.getKey())).append(": {\"millis\": ")
+					.append(toMillis(entry.getValue().nanos.get())).append(", \"count\": ")
+					.append(entry.getValue().count.get()).append('}');
+			separator = ",\n";
+		}
+		json.append("\n  },\n  \"counters\": {");
+		separator = "\n";
+		for (final Map.Entry<String, AtomicLong> entry : new TreeMap<>(counters).entrySet()) {
+			json.append(separator).append("    ").append(quote(entry.getKey())).append(": ")
+					.append(entry.getValue().get());
+			separator = ",\n";
+		}
+		json.append("\n  },\n  \"histograms\": {");
+		separator = "\n";
+		for (final Map.Entry<String, Histogram> entry : new TreeMap<>(histograms).entrySet()) {
+			final Histogram histogram = entry.getValue();
+			final long count = histogram.count.get();
+			json.append(separator).append("    ").append(quote(entry.getKey())).append(": {\"count\": ").append(count)
+					.append(", \"minMillis\": ").append(toMillis(count == 0 ? 0 : histogram.min.get()))
+					.append(", \"meanMillis\": ").append(toMillis(count == 0 ? 0 : histogram.sum.get() / count))
+					.append(", \"p50Millis\": ").append(toMillis(histogram.percentile(50)))
+					.append(", \"p90Millis\": ").append(toMillis(histogram.percentile(90)))
+					.append(", \"p99Millis\": ").append(toMillis(histogram.percentile(99)))
+					.append(", \"maxMillis\": ").append(toMillis(histogram.max.get())).append(", \"buckets\": [");
+			String bucketSeparator = "";
+			for (int i = 0; i < Histogram.BUCKETS; i++) {
+				final long bucketCount = histogram.buckets.get(i);
+				if (bucketCount > 0) {
+					json.append(bucketSeparator).append("{\"leMillis\": ")
+							.append(i == Histogram.BUCKETS - 1 ? "null" : toMillis((1L << i) * 1000))
+							.append(", \"count\": ").append(bucketCount).append('}');
+					bucketSeparator = ", ";
+				}
+			}
+			json.append("]}");
+			separator = ",\n";
+		}
+		json.append("\n  }\n}\n");
+		return json.toString();
+	}
+
+	private static String formatMillis(final long nanos) {
+		return toMillis(nanos) + " ms";
+	}
+
+	private static String toMillis(final long nanos) {
+		return String.format(Locale.ENGLISH, "%.3f", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+	}
+
+	private static String quote(final String value) {
+		final StringBuilder quoted = new StringBuilder("\"");
+		for (int i = 0; i < value.length(); i++) {
+			final char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				quoted.append('\\').append(c);
+			} else if (c < 0x20) {
+				quoted.append(String.format("\\u%04x", (int) c));
+			} else {
+				quoted.append(c);
+			}
+		}
+		return quoted.append('"').toString();
+	}
+}
@@ -28,4 +28,117 @@ public interface Settings {
 	 * setting to set the location of the Oracle JDBC driver jar file.
 	 */
 	String ORACLE_DRIVER = "oracle-driver";
+
+	/**
+	 * setting to set the number of database connections used to fetch schema
+	 * objects during init and sync.
+	 */
+	String PARALLELISM = "parallelism";
+
+	/**
+	 * setting to fetch schema objects with DBMS_METADATA handles, returning
+	 * the given number of objects per round trip, instead of calling get_ddl
+	 * for each object. 0 to use get_ddl.
+	 */
+	String BULK_FETCH_SIZE = "bulk-fetch-size";
+
+	/**
+	 * setting to set the number of minutes the ovcs daemon waits for a
+	 * command before stopping, and an idle database connection stays open.
+	 */
+	String DAEMON_IDLE_TIMEOUT = "daemon-idle-timeout";
+
+	/**
+	 * setting to commit objects fetched by init and sync straight into the
+	 * git object database, then only write changed files to the working
+	 * directory. true or false.
+	 */
+	String DIRECT_COMMIT = "direct-commit";
+
+	/**
+	 * setting to set the number of threads writing fetched objects during init
+	 * and sync, while objects continue to be fetched. 0 to write each object
+	 * on the thread that fetched it.
+	 */
+	String WRITE_THREADS = "write-threads";
+
+	/**
+	 * setting to have sync compare a hash of each object's DDL, computed by
+	 * the database with dbms_crypto, with the committed source, and only
+	 * fetch objects whose hash differs. true or false.
+	 */
+	String HASH_COMPARE = "hash-compare";
+
+	/**
+	 * setting to have status and diff compare the current source of changed
+	 * objects with the committed source in memory, without writing to the
+	 * working directory. true or false.
+	 */
+	String IN_MEMORY_COMPARE = "in-memory-compare";
+
+	/**
+	 * setting to set the number of seconds status and diff may reuse the DDL
+	 * of an unchanged object from the local DDL cache. 0 to disable the cache.
+	 */
+	String DDL_CACHE_TTL = "ddl-cache-ttl";
+
+	/**
+	 * setting to set the maximum size of the local DDL cache, in kilobytes.
+	 */
+	String DDL_CACHE_SIZE = "ddl-cache-size";
+
+	/**
+	 * setting to set the number of seconds between two checks for DDL changes
+	 * by the watch command.
+	 */
+	String WATCH_INTERVAL = "watch-interval";
+
+	/**
+	 * setting to set the number of seconds without DDL changes after which
+	 * the watch command commits the changes captured so far.
+	 */
+	String WATCH_QUIET_PERIOD = "watch-quiet-period";
+
+	/**
+	 * setting to set the number of rows the Oracle driver fetches in a single
+	 * round trip.
+	 */
+	String ROW_PREFETCH = "row-prefetch";
+
+	/**
+	 * setting to set the number of characters of each CLOB the Oracle driver
+	 * returns with the row, saving a round trip per CLOB that fits.
+	 */
+	String LOB_PREFETCH_SIZE = "lob-prefetch-size";
+
+	/**
+	 * setting to set the number of statements the Oracle driver caches per
+	 * connection. 0 to disable statement caching.
+	 */
+	String STATEMENT_CACHE_SIZE = "statement-cache-size";
+
+	/**
+	 * setting to enable SQL*Net compression. on, off or auto.
+	 */
+	String NETWORK_COMPRESSION = "network-compression";
+
+	/**
+	 * setting to print the time spent in each phase, object and byte counts
+	 * and object latencies after init, sync, commit, status and diff. true or
+	 * false.
+	 */
+	String METRICS_SUMMARY = "metrics-summary";
+
+	/**
+	 * setting to write the metrics of init, sync, commit, status and diff to a
+	 * JSON report file, replaced after each command. A relative path is
+	 * resolved against the .git/ovcs directory of the local repository.
+	 */
+	String METRICS_REPORT = "metrics-report";
+
+	/**
+	 * setting to capture the database statistics of each session opened by a
+	 * command from V$MYSTAT, and report them with the metrics. true or false.
+	 */
+	String SESSION_STATISTICS = "session-statistics";
 }
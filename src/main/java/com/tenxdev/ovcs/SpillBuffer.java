@@ -0,0 +1,222 @@
+/*
+ * Copyright 2015 Abed Tony BenBrahim <tony.benbrahim@10xdev.com> This file is
+ * part of OVCS.
+ *
+ * OVCS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OVCS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OVCS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tenxdev.ovcs;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Holds text, encoded in UTF-8, in memory up to a threshold, and in a
+ * temporary file beyond it, so that large sources can be kept for later use
+ * without holding them on the heap.
+ *
+ * @author Tony BenBrahim <tony.benbrahim@10xdev.com>
+ *
+ */
+public class SpillBuffer implements Closeable {
+
+	/**
+	 * Output stream that writes to memory until the threshold is reached, then
+	 * moves the content to a temporary file
+	 */
+	private class SpillingOutputStream extends OutputStream {
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void close() throws IOException {
+			if (fileStream != null) {
+				fileStream.close();
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void write(final byte[] bytes, final int off, final int len) throws IOException {
+			if (fileStream == null && memory.size() + len > threshold) {
+				spill();
+			}
+			if (fileStream == null) {
+				memory.write(bytes, off, len);
+			} else {
+				fileStream.write(bytes, off, len);
+			}
+			length += len;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void write(final int value) throws IOException {
+			write(new byte[] { (byte) value }, 0, 1);
+		}
+
+		private void spill() throws IOException {
+			file = Files.createTempFile("ovcs", ".sql");
+			fileStream = new BufferedOutputStream(new FileOutputStream(file.toFile()));
+			memory.writeTo(fileStream);
+			memory = null;
+		}
+	}
+
+	/**
+	 * the default largest number of bytes held in memory, used for object
+	 * sources
+	 */
+	public static final int DEFAULT_THRESHOLD = 64 * 1024;
+
+	/**
+	 * the size of the buffer used to copy text into the spill buffer
+	 */
+	private static final int COPY_BUFFER_SIZE = 8192;
+
+	/**
+	 * the largest number of bytes held in memory
+	 */
+	private final int threshold;
+
+	/**
+	 * the content while it fits in memory, null once spilled
+	 */
+	private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+
+	/**
+	 * the temporary file holding the content once spilled, null otherwise
+	 */
+	private Path file;
+
+	/**
+	 * the stream writing to the temporary file, while the content is written
+	 */
+	private OutputStream fileStream;
+
+	/**
+	 * the length of the content, in bytes
+	 */
+	private long length;
+
+	/**
+	 * constructor
+	 *
+	 * @param threshold
+	 *            the largest number of bytes held in memory
+	 */
+	public SpillBuffer(final int threshold) {
+		this.threshold = threshold;
+	}
+
+	/**
+	 * release the temporary file, if any
+	 *
+	 * @throws IOException
+	 *             if the temporary file cannot be deleted
+	 */
+	@Override
+	public void close() throws IOException {
+		if (fileStream != null) {
+			fileStream.close();
+		}
+		if (file != null) {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	/**
+	 * gets the length of the content
+	 *
+	 * @return the length of the content, in UTF-8 bytes
+	 */
+	public long getLength() {
+		return length;
+	}
+
+	/**
+	 * determines if the content was moved to a temporary file
+	 *
+	 * @return true if the content is held in a temporary file
+	 */
+	public boolean isSpilled() {
+		return file != null;
+	}
+
+	/**
+	 * open a stream to read the content, encoded in UTF-8
+	 *
+	 * @return an input stream
+	 * @throws IOException
+	 *             if the temporary file cannot be read
+	 */
+	public InputStream openInputStream() throws IOException {
+		if (file == null) {
+			return new ByteArrayInputStream(memory.toByteArray());
+		}
+		return new FileInputStream(file.toFile());
+	}
+
+	/**
+	 * open a reader to read the content
+	 *
+	 * @return a reader
+	 * @throws IOException
+	 *             if the temporary file cannot be read
+	 */
+	public Reader openReader() throws IOException {
+		return new InputStreamReader(openInputStream(), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * copy text to the buffer. This can only be called once.
+	 *
+	 * @param source
+	 *            the text to copy
+	 * @return this buffer
+	 * @throws IOException
+	 *             if the text could not be read or the temporary file could
+	 *             not be written
+	 */
+	public SpillBuffer write(final Reader source) throws IOException {
+		try (Writer writer = new OutputStreamWriter(new SpillingOutputStream(), StandardCharsets.UTF_8)) {
+			final char[] buffer = new char[COPY_BUFFER_SIZE];
+			int count = source.read(buffer);
+			while (count != -1) {
+				writer.write(buffer, 0, count);
+				count = source.read(buffer);
+			}
+		}
+		fileStream = null;
+		return this;
+	}
+
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2015 Abed Tony BenBrahim <tony.benbrahim@10xdev.com> This file is
+ * part of OVCS.
+ *
+ * OVCS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OVCS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OVCS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tenxdev.ovcs;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.regex.Pattern;
+
+/**
+ * Stores the last DDL time of each schema object at the time of the last
+ * synchronization, so that the next synchronization only fetches objects that
+ * changed since.
+ *
+ * @author Tony BenBrahim <tony.benbrahim@10xdev.com>
+ *
+ */
+public class WatermarkStore {
+
+	/**
+	 * key holding the number of watermarks in the file, used to detect
+	 * truncated files
+	 */
+	private static final String COUNT_KEY = "ovcs.count";
+
+	/**
+	 * format of a watermark, as returned by to_char(last_ddl_time,
+	 * 'YYYYMMDDHH24MISS')
+	 */
+	private static final Pattern WATERMARK_PATTERN = Pattern.compile("\\d{14}");
+
+	/**
+	 * the watermark file
+	 */
+	private transient final File file;
+
+	/**
+	 * constructor
+	 *
+	 * @param file
+	 *            the watermark file
+	 */
+	public WatermarkStore(final File file) {
+		this.file = file;
+	}
+
+	/**
+	 * load the watermarks
+	 *
+	 * @return a map of object names to last DDL time, or null if the file does
+	 *         not exist or is corrupt
+	 */
+	public Map<String, String> load() {
+		if (!file.exists()) {
+			return null;
+		}
+		final Properties properties = new Properties();
+		try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+			properties.load(reader);
+		} catch (final IOException | IllegalArgumentException e) {
+			return null;
+		}
+		final String count = properties.getProperty(COUNT_KEY);
+		if (count == null || !count.equals(Integer.toString(properties.size() - 1))) {
+			return null;
+		}
+		final Map<String, String> watermarks = new HashMap<>();
+		for (final String name : properties.stringPropertyNames()) {
+			if (!COUNT_KEY.equals(name)) {
+				final String value = properties.getProperty(name);
+				if (!WATERMARK_PATTERN.matcher(value).matches()) {
+					return null;
+				}
+				watermarks.put(name, value);
+			}
+		}
+		return watermarks;
+	}
+
+	/**
+	 * replace the stored watermarks
+	 *
+	 * @param watermarks
+	 *            a map of object names to last DDL time
+	 * @throws IOException
+	 *             if the watermarks cannot be written
+	 */
+	public void store(final Map<String, String> watermarks) throws IOException {
+		final Properties properties = new Properties();
+		properties.putAll(watermarks);
+		properties.setProperty(COUNT_KEY, Integer.toString(watermarks.size()));
+		final File parent = file.getAbsoluteFile().getParentFile();
+		if (!parent.exists() && !parent.mkdirs()) {
+			throw new IOException("Unable to create directory " + parent);
+		}
+		final File tempFile = new File(parent, file.getName() + ".tmp");
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(tempFile), StandardCharsets.UTF_8)) {
+			properties.store(writer, "ovcs watermarks");
+		}
+		Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2015 Abed Tony BenBrahim <tony.benbrahim@10xdev.com> This file is
+ * part of OVCS.
+ *
+ * OVCS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OVCS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OVCS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tenxdev.ovcs;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * Records the git blob id of files written by ovcs, with the length and
+ * modification time they had once written, so that git does not need to read
+ * and hash them again. A recorded id is only used while the file still has the
+ * recorded length and modification time.
+ *
+ * @author Tony BenBrahim <tony.benbrahim@10xdev.com>
+ *
+ */
+public class WrittenBlobs {
+
+	/**
+	 * The blob id and stat information of a written file
+	 */
+	public static final class WrittenBlob {
+
+		/**
+		 * the blob id of the file content
+		 */
+		private final ObjectId objectId;
+		/**
+		 * the length of the file, in bytes
+		 */
+		private final long length;
+		/**
+		 * the modification time of the file, in milliseconds
+		 */
+		private final long lastModified;
+
+		/**
+		 * constructor
+		 *
+		 * @param objectId
+		 *            the blob id of the file content
+		 * @param length
+		 *            the length of the file, in bytes
+		 * @param lastModified
+		 *            the modification time of the file, in milliseconds
+		 */
+		public WrittenBlob(final ObjectId objectId, final long length, final long lastModified) {
+			this.objectId = objectId;
+			this.length = length;
+			this.lastModified = lastModified;
+		}
+
+		/**
+		 * gets the modification time of the file
+		 *
+		 * @return the modification time, in milliseconds
+		 */
+		public long getLastModified() {
+			return lastModified;
+		}
+
+		/**
+		 * gets the length of the file
+		 *
+		 * @return the length, in bytes
+		 */
+		public long getLength() {
+			return length;
+		}
+
+		/**
+		 * gets the blob id of the file content
+		 *
+		 * @return the blob id
+		 */
+		public ObjectId getObjectId() {
+			return objectId;
+		}
+
+		/**
+		 * determines if a file still has the recorded length and modification
+		 * time
+		 *
+		 * @param fileLength
+		 *            the current length of the file
+		 * @param fileLastModified
+		 *            the current modification time of the file
+		 * @return true if the recorded blob id still describes the file
+		 */
+		public boolean matches(final long fileLength, final long fileLastModified) {
+			return length == fileLength && lastModified == fileLastModified;
+		}
+	}
+
+	/**
+	 * the written files, by path relative to the working tree
+	 */
+	private final Map<String, WrittenBlob> blobs = new ConcurrentHashMap<>();
+
+	/**
+	 * gets the recorded blob of a file, if the file has not been modified
+	 * since it was written
+	 *
+	 * @param workTree
+	 *            the working tree of the repository
+	 * @param path
+	 *            the path of the file, relative to the working tree, with
+	 *            forward slashes
+	 * @return the recorded blob, or null if the file was not written by ovcs
+	 *         or was modified since
+	 */
+	public WrittenBlob get(final File workTree, final String path) {
+		final WrittenBlob blob = blobs.get(path);
+		if (blob == null) {
+			return null;
+		}
+		final File file = new File(workTree, path);
+		return blob.matches(file.length(), file.lastModified()) ? blob : null;
+	}
+
+	/**
+	 * gets the recorded blob of a file, without checking the file
+	 *
+	 * @param path
+	 *            the path of the file, relative to the working tree, with
+	 *            forward slashes
+	 * @return the recorded blob, or null if the file was not written by ovcs
+	 */
+	public WrittenBlob getRecorded(final String path) {
+		return blobs.get(path);
+	}
+
+	/**
+	 * gets the paths of all recorded files
+	 *
+	 * @return the paths, relative to the working tree
+	 */
+	public Iterable<String> getPaths() {
+		return blobs.keySet();
+	}
+
+	/**
+	 * determines if no file has been recorded
+	 *
+	 * @return true if no file has been recorded
+	 */
+	public boolean isEmpty() {
+		return blobs.isEmpty();
+	}
+
+	/**
+	 * record a written file
+	 *
+	 * @param path
+	 *            the path of the file, relative to the working tree, with
+	 *            forward slashes
+	 * @param blob
+	 *            the blob id and stat information of the file
+	 */
+	public void put(final String path, final WrittenBlob blob) {
+		blobs.put(path, blob);
+	}
+
+}
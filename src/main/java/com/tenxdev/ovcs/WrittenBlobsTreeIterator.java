@@ -0,0 +1,102 @@
+/*
+ * Copyright 2015 Abed Tony BenBrahim <tony.benbrahim@10xdev.com> This file is
+ * part of OVCS.
+ *
+ * OVCS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OVCS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OVCS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tenxdev.ovcs;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.treewalk.AbstractTreeIterator;
+import org.eclipse.jgit.treewalk.FileTreeIterator;
+import org.eclipse.jgit.util.FS;
+
+import com.tenxdev.ovcs.WrittenBlobs.WrittenBlob;
+
+/**
+ * Working tree iterator that uses the blob ids recorded when ovcs wrote files,
+ * instead of reading and hashing the files again
+ *
+ * @author Tony BenBrahim <tony.benbrahim@10xdev.com>
+ *
+ */
+public class WrittenBlobsTreeIterator extends FileTreeIterator {
+
+	/**
+	 * the blob ids of files written by ovcs
+	 */
+	private final WrittenBlobs writtenBlobs;
+
+	/**
+	 * buffer holding the recorded blob id of the current entry
+	 */
+	private final byte[] recordedId = new byte[Constants.OBJECT_ID_LENGTH];
+
+	/**
+	 * constructor
+	 *
+	 * @param repository
+	 *            the repository whose working tree is iterated
+	 * @param writtenBlobs
+	 *            the blob ids of files written by ovcs
+	 */
+	public WrittenBlobsTreeIterator(final Repository repository, final WrittenBlobs writtenBlobs) {
+		super(repository);
+		this.writtenBlobs = writtenBlobs;
+	}
+
+	/**
+	 * constructor for a subdirectory
+	 *
+	 * @param parent
+	 *            the iterator of the parent directory
+	 * @param root
+	 *            the subdirectory
+	 * @param fs
+	 *            the file system abstraction
+	 */
+	protected WrittenBlobsTreeIterator(final WrittenBlobsTreeIterator parent, final File root, final FS fs) {
+		super(parent, root, fs);
+		this.writtenBlobs = parent.writtenBlobs;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public AbstractTreeIterator createSubtreeIterator(final ObjectReader reader) throws IOException {
+		return new WrittenBlobsTreeIterator(this, getEntryFile(), fs);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public byte[] idBuffer() {
+		if (FileMode.REGULAR_FILE.equals(getEntryRawMode())) {
+			final WrittenBlob blob = writtenBlobs.getRecorded(getEntryPathString());
+			if (blob != null && blob.matches(getEntryLength(), getEntryLastModified())) {
+				blob.getObjectId().copyRawTo(recordedId, 0);
+				return recordedId;
+			}
+		}
+		return super.idBuffer();
+	}
+
+}
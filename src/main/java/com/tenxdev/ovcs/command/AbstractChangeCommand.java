@@ -1,18 +1,34 @@
 package com.tenxdev.ovcs.command;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
-import java.sql.CallableStatement;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 import org.eclipse.jgit.internal.storage.file.FileRepository;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
 
+import com.tenxdev.ovcs.DdlCache;
+import com.tenxdev.ovcs.GitUtils;
+import com.tenxdev.ovcs.Layout;
 import com.tenxdev.ovcs.OvcsException;
+import com.tenxdev.ovcs.Settings;
+import com.tenxdev.ovcs.SpillBuffer;
 import com.tenxdev.ovcs.model.ChangeEntry;
+import com.tenxdev.ovcs.model.SourceChange;
 
 /*
  * Copyright 2015 Abed Tony BenBrahim <tony.benbrahim@10xdev.com> This file is
@@ -41,17 +57,78 @@ import com.tenxdev.ovcs.model.ChangeEntry;
 public abstract class AbstractChangeCommand extends AbstractOvcsCommand {
 
 	/**
-	 * query run to retrieve schema changes
+	 * A changed object captured by the changes query
+	 */
+	private static final class CapturedChange {
+
+		/**
+		 * the name of the database object
+		 */
+		private final String name;
+		/**
+		 * the current source of the object, or null if the object was dropped
+		 */
+		private final SpillBuffer currentSource;
+
+		/**
+		 * constructor
+		 *
+		 * @param name
+		 *            the name of the database object
+		 * @param currentSource
+		 *            the current source of the object, or null if the object
+		 *            was dropped
+		 */
+		CapturedChange(final String name, final SpillBuffer currentSource) {
+			this.name = name;
+			this.currentSource = currentSource;
+		}
+	}
+
+	/**
+	 * query run to retrieve schema changes. The source of a package includes
+	 * its body, so bodies are excluded to return a single row per object.
 	 */
 	private static final String CHANGES_QUERY = "select user_objects.object_name, action, original_source, "
 			+ " dbms_metadata.get_ddl(user_objects.object_type, user_objects.object_name) current_source"
 			+ " from ovcs.locked_objects, user_objects" + " where  osuser=ovcs.handler.get_osuser"
 			+ " and schema_name=upper(sys_context('USERENV', 'SESSION_USER'))"
-			+ " and user_objects.OBJECT_NAME=locked_objects.object_name" + " union all"
+			+ " and user_objects.OBJECT_NAME=locked_objects.object_name"
+			+ " and user_objects.object_type not like '% BODY'" + " union all"
 			+ " select object_name, action, original_source,  null current_source " + " from ovcs.locked_objects"
 			+ " where  osuser=ovcs.handler.get_osuser"
 			+ " and schema_name=upper(sys_context('USERENV', 'SESSION_USER'))" + " and action='DROP'";
 
+	/**
+	 * query run to retrieve the locked objects, without their current source,
+	 * when current source is fetched with DBMS_METADATA or taken from the DDL
+	 * cache. The last DDL time includes the time of the body, if any.
+	 */
+	private static final String LOCKED_OBJECTS_QUERY = "select user_objects.object_type, "
+			+ " user_objects.object_name, action, original_source,"
+			+ " (select max(o.last_ddl_time) from user_objects o"
+			+ " where o.object_name=user_objects.object_name) last_ddl_time"
+			+ " from ovcs.locked_objects, user_objects where  osuser=ovcs.handler.get_osuser"
+			+ " and schema_name=upper(sys_context('USERENV', 'SESSION_USER'))"
+			+ " and user_objects.OBJECT_NAME=locked_objects.object_name"
+			+ " and user_objects.object_type not like '% BODY'" + " union all"
+			+ " select null object_type, object_name, action, original_source, null last_ddl_time"
+			+ " from ovcs.locked_objects where  osuser=ovcs.handler.get_osuser"
+			+ " and schema_name=upper(sys_context('USERENV', 'SESSION_USER'))" + " and action='DROP'";
+
+	/**
+	 * wraps {@link #CHANGES_QUERY} or {@link #LOCKED_OBJECTS_QUERY} to restrict
+	 * it to a single object. The restriction is pushed into both branches of
+	 * the union, so the source of other objects is not extracted.
+	 */
+	private static final String SINGLE_OBJECT_QUERY = "select * from (%s) where object_name = ?";
+
+	/**
+	 * query run to retrieve the current source of a single object, for object
+	 * types not supported by DBMS_METADATA handles
+	 */
+	private static final String OBJECT_QUERY = "select dbms_metadata.get_ddl(?, ?) current_source from dual";
+
 	/**
 	 * Default constructor
 	 */
@@ -59,39 +136,286 @@ public abstract class AbstractChangeCommand extends AbstractOvcsCommand {
 		super();
 	}
 
-	private void writeChangesFirstPass(final ResultSet rset, final Path workingDirectory) throws SQLException,
-			OvcsException {
-		while (rset.next()) {
-			final String name = rset.getString("object_name");
-			final String source = rset.getString("original_source");
-			if (!rset.wasNull()) {
-				writeSchemaObject(workingDirectory, name, source, false);
+	private List<CapturedChange> writeChangesFirstPass(final ResultSet rset, final Path workingDirectory)
+			throws SQLException, OvcsException, IOException {
+		final List<CapturedChange> captured = new ArrayList<>();
+		try {
+			while (rset.next()) {
+				final String name = rset.getString("object_name");
+				final Reader source = rset.getCharacterStream("original_source");
+				if (source != null) {
+					writeSchemaObject(workingDirectory, name, source, false);
+				}
+				if ("DROP".equals(rset.getString("action"))) {
+					captured.add(new CapturedChange(name, null));
+				} else {
+					final SpillBuffer currentSource = new SpillBuffer(SpillBuffer.DEFAULT_THRESHOLD);
+					captured.add(new CapturedChange(name, currentSource));
+					final Reader current = rset.getCharacterStream("current_source");
+					currentSource.write(current == null ? new StringReader("") : current);
+				}
 			}
+		} catch (SQLException | OvcsException | IOException | RuntimeException e) {
+			release(captured);
+			throw e;
 		}
+		return captured;
 	}
 
-	private List<ChangeEntry> writeChangesSecondPass(final ResultSet rset, final Path workingDirectory)
-			throws SQLException, OvcsException {
+	private List<ChangeEntry> writeChangesSecondPass(final List<CapturedChange> captured,
+			final Path workingDirectory) throws OvcsException, IOException {
 		final List<ChangeEntry> changes = new ArrayList<>();
-		while (rset.next()) {
-			final String name = rset.getString("object_name");
-			final String action = rset.getString("action");
-			final String source = rset.getString("current_source");
-			if ("DROP".equals(action)) {
-				removeSchemaObject(workingDirectory, name, true);
-				changes.add(new ChangeEntry(name, true));
+		for (final CapturedChange change : captured) {
+			if (change.currentSource == null) {
+				removeSchemaObject(workingDirectory, change.name, true);
+				changes.add(new ChangeEntry(change.name, true));
 			} else {
-				writeSchemaObject(workingDirectory, name, source, true);
-				changes.add(new ChangeEntry(name, false));
+				try (Reader reader = change.currentSource.openReader()) {
+					writeSchemaObject(workingDirectory, change.name, reader, change.currentSource.getLength(),
+							true);
+				}
+				changes.add(new ChangeEntry(change.name, false));
+			}
+		}
+		return changes;
+	}
+
+	private PreparedStatement prepareChangesQuery(final Connection conn, final String query, final String objectName)
+			throws SQLException {
+		if (objectName == null) {
+			return conn.prepareStatement(query);
+		}
+		final PreparedStatement stmt = conn.prepareStatement(String.format(SINGLE_OBJECT_QUERY, query));
+		stmt.setString(1, objectName);
+		return stmt;
+	}
+
+	private void release(final List<CapturedChange> captured) {
+		for (final CapturedChange change : captured) {
+			if (change.currentSource != null) {
+				try {
+					change.currentSource.close();
+				} catch (final IOException e) {
+					System.err.println("Unable to delete temporary file: " + e.getMessage());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Fetch the current source of changed objects with DBMS_METADATA handles
+	 * and write it to disk
+	 *
+	 * @param conn
+	 *            the database connection to the managed schema
+	 * @param objectsByType
+	 *            the names of the changed objects, by object type
+	 * @param ddlTimes
+	 *            the last DDL time of the changed objects, by name
+	 * @param cache
+	 *            the DDL cache to use, or null to fetch all objects
+	 * @param workingDirectory
+	 *            the working directory of the local git repository
+	 * @param batchSize
+	 *            the number of documents fetched in a single round trip
+	 * @param changes
+	 *            the list of changes, to which an entry is added for each
+	 *            object written
+	 * @throws SQLException
+	 *             if the objects could not be fetched
+	 * @throws OvcsException
+	 *             if the objects could not be written
+	 */
+	private void writeCurrentSource(final Connection conn, final Map<String, List<String>> objectsByType,
+			final Map<String, Long> ddlTimes, final DdlCache cache, final Path workingDirectory,
+			final int batchSize, final List<ChangeEntry> changes) throws SQLException, OvcsException {
+		fetchCurrentSource(conn, objectsByType, ddlTimes, cache, batchSize, new MetadataFetcher.DocumentHandler() {
+
+			@Override
+			public void handle(final String objectName, final Reader source) throws OvcsException {
+				writeSchemaObject(workingDirectory, objectName, source, true);
+				changes.add(new ChangeEntry(objectName, false));
+			}
+		});
+	}
+
+	/**
+	 * Fetch the current source of changed objects, from the DDL cache when the
+	 * object has not changed since it was cached, otherwise with DBMS_METADATA
+	 * handles when the batch size is positive, or with get_ddl
+	 *
+	 * @param conn
+	 *            the database connection to the managed schema
+	 * @param objectsByType
+	 *            the names of the changed objects, by object type
+	 * @param ddlTimes
+	 *            the last DDL time of the changed objects, by name
+	 * @param cache
+	 *            the DDL cache to use, or null to fetch all objects
+	 * @param batchSize
+	 *            the number of documents fetched in a single round trip, 0 to
+	 *            use get_ddl
+	 * @param handler
+	 *            the handler receiving the source of each object
+	 * @throws SQLException
+	 *             if the objects could not be fetched
+	 * @throws OvcsException
+	 *             if the handler failed
+	 */
+	private void fetchCurrentSource(final Connection conn, final Map<String, List<String>> objectsByType,
+			final Map<String, Long> ddlTimes, final DdlCache cache, final int batchSize,
+			final MetadataFetcher.DocumentHandler handler) throws SQLException, OvcsException {
+		Map<String, List<String>> uncached = objectsByType;
+		MetadataFetcher.DocumentHandler fetchHandler = handler;
+		if (cache != null) {
+			uncached = handleCached(objectsByType, ddlTimes, cache, handler);
+			fetchHandler = new MetadataFetcher.DocumentHandler() {
+
+				@Override
+				public void handle(final String objectName, final Reader source) throws OvcsException {
+					try (SpillBuffer buffer = new SpillBuffer(SpillBuffer.DEFAULT_THRESHOLD)) {
+						try (Reader reader = source) {
+							buffer.write(reader == null ? new StringReader("") : reader);
+						}
+						final Long ddlTime = ddlTimes.get(objectName);
+						if (ddlTime != null) {
+							try (InputStream inputStream = buffer.openInputStream()) {
+								cache.put(objectName, ddlTime, inputStream);
+							} catch (final IOException e) {
+								System.err.println(String.format("Unable to cache DDL of %s: %s", objectName,
+										e.getMessage()));
+							}
+						}
+						try (Reader reader = buffer.openReader()) {
+							handler.handle(objectName, reader);
+						}
+					} catch (final IOException e) {
+						throw new OvcsException("Unable to read changed source: " + e.getMessage(), e);
+					}
+				}
+			};
+		}
+		final MetadataFetcher fetcher = new MetadataFetcher(conn, batchSize);
+		for (final MetadataFetcher.Request request : MetadataFetcher.plan(uncached, false)) {
+			if (batchSize > 0 && fetcher.fetch(request, fetchHandler)) {
+				continue;
+			}
+			try (PreparedStatement stmt = conn.prepareStatement(OBJECT_QUERY)) {
+				stmt.setString(1, request.getObjectType());
+				for (final String name : request.getNames()) {
+					stmt.setString(2, name);
+					try (ResultSet rset = executeQuery(stmt)) {
+						while (rset.next()) {
+							fetchHandler.handle(name, rset.getCharacterStream("current_source"));
+						}
+					}
+				}
+			}
+		}
+		if (cache != null) {
+			cache.trim();
+		}
+	}
+
+	/**
+	 * pass the cached source of unchanged objects to a handler
+	 *
+	 * @param objectsByType
+	 *            the names of the changed objects, by object type
+	 * @param ddlTimes
+	 *            the last DDL time of the changed objects, by name
+	 * @param cache
+	 *            the DDL cache
+	 * @param handler
+	 *            the handler receiving the source of each cached object
+	 * @return the names of the objects not found in the cache, by object type
+	 * @throws OvcsException
+	 *             if the handler failed
+	 */
+	private Map<String, List<String>> handleCached(final Map<String, List<String>> objectsByType,
+			final Map<String, Long> ddlTimes, final DdlCache cache, final MetadataFetcher.DocumentHandler handler)
+			throws OvcsException {
+		final Map<String, List<String>> uncached = new TreeMap<>();
+		for (final Map.Entry<String, List<String>> entry : objectsByType.entrySet()) {
+			final List<String> names = new ArrayList<>();
+			for (final String name : entry.getValue()) {
+				final Long ddlTime = ddlTimes.get(name);
+				final String ddl = ddlTime == null ? null : cache.get(name, ddlTime);
+				if (ddl == null) {
+					names.add(name);
+				} else {
+					handler.handle(name, new StringReader(ddl));
+				}
+			}
+			if (!names.isEmpty()) {
+				uncached.put(entry.getKey(), names);
+			}
+		}
+		return uncached;
+	}
+
+	/**
+	 * Fetch all changed objects from database, writing the original source to
+	 * disk, then fetch the current source of all changed objects with
+	 * DBMS_METADATA handles, one per object type, and write it to disk.
+	 *
+	 * @param conn
+	 *            the database connection to the managed schema
+	 * @param workingDirectory
+	 *            the working directory of the local git repository
+	 * @param batchSize
+	 *            the number of documents fetched in a single round trip
+	 * @param objectName
+	 *            the name of the only object to fetch, or null to fetch all
+	 *            changed objects
+	 * @param cache
+	 *            the DDL cache to use, or null to fetch all objects
+	 * @return a list of changed files
+	 * @throws SQLException
+	 *             if the objects could not be fetched
+	 * @throws OvcsException
+	 *             if the objects could not be written
+	 */
+	private List<ChangeEntry> writeChangesInBulk(final Connection conn, final Path workingDirectory,
+			final int batchSize, final String objectName, final DdlCache cache) throws SQLException,
+			OvcsException {
+		final List<ChangeEntry> changes = new ArrayList<>();
+		final Map<String, List<String>> objectsByType = new TreeMap<>();
+		final Map<String, Long> ddlTimes = new HashMap<>();
+		try (PreparedStatement stmt = prepareChangesQuery(conn, LOCKED_OBJECTS_QUERY, objectName)) {
+			try (ResultSet rset = executeQuery(stmt)) {
+				while (rset.next()) {
+					final String name = rset.getString("object_name");
+					final Reader source = rset.getCharacterStream("original_source");
+					if (source != null) {
+						writeSchemaObject(workingDirectory, name, source, false);
+					}
+					if ("DROP".equals(rset.getString("action"))) {
+						removeSchemaObject(workingDirectory, name, true);
+						changes.add(new ChangeEntry(name, true));
+					} else {
+						final String objectType = rset.getString("object_type");
+						List<String> names = objectsByType.get(objectType);
+						if (names == null) {
+							names = new ArrayList<>();
+							objectsByType.put(objectType, names);
+						}
+						names.add(name);
+						ddlTimes.put(name, rset.getTimestamp("last_ddl_time").getTime());
+					}
+				}
 			}
 		}
+		writeCurrentSource(conn, objectsByType, ddlTimes, cache, workingDirectory, batchSize, changes);
 		return changes;
 	}
 
 	/**
 	 * Fetch all changed objects from database, write original source to disk,
 	 * warn if original is different from last commit, then write all changed
-	 * source to disk.
+	 * source to disk. The changes are queried once; the changed source is held
+	 * until all original source has been written, spilling to temporary files
+	 * for large objects.
 	 *
 	 * @param repository
 	 *            the local git repository
@@ -100,29 +424,250 @@ public abstract class AbstractChangeCommand extends AbstractOvcsCommand {
 	 *             for errors during processing
 	 */
 	protected List<ChangeEntry> writeChanges(final FileRepository repository) throws OvcsException {
+		return writeChanges(repository, null);
+	}
+
+	/**
+	 * Fetch a single changed object from database, or all changed objects,
+	 * and write its original and changed source to disk
+	 *
+	 * @param repository
+	 *            the local git repository
+	 * @param objectName
+	 *            the name of the only object to fetch, or null to fetch all
+	 *            changed objects
+	 * @return a list of changed files, empty if the object was not changed
+	 * @throws OvcsException
+	 *             for errors during processing
+	 * @see #writeChanges(FileRepository)
+	 */
+	protected List<ChangeEntry> writeChanges(final FileRepository repository, final String objectName)
+			throws OvcsException {
+		try (DatabaseSession session = openSession(repository)) {
+			return writeChanges(session, repository, objectName);
+		} catch (final SQLException e) {
+			throw new OvcsException("Unable to close database connection: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Fetch all changed objects from database using an existing database
+	 * session, write original source to disk, then write all changed source to
+	 * disk.
+	 *
+	 * @param session
+	 *            the database session of the command
+	 * @param repository
+	 *            the local git repository
+	 * @return a list of changed files
+	 * @throws OvcsException
+	 *             for errors during processing
+	 * @see #writeChanges(FileRepository)
+	 */
+	protected List<ChangeEntry> writeChanges(final DatabaseSession session, final FileRepository repository)
+			throws OvcsException {
+		return writeChanges(session, repository, null);
+	}
+
+	/**
+	 * Fetch a single changed object from database, or all changed objects,
+	 * using an existing database session, and write its original and changed
+	 * source to disk
+	 *
+	 * @param session
+	 *            the database session of the command
+	 * @param repository
+	 *            the local git repository
+	 * @param objectName
+	 *            the name of the only object to fetch, or null to fetch all
+	 *            changed objects
+	 * @return a list of changed files
+	 * @throws OvcsException
+	 *             for errors during processing
+	 * @see #writeChanges(FileRepository)
+	 */
+	protected List<ChangeEntry> writeChanges(final DatabaseSession session, final FileRepository repository,
+			final String objectName) throws OvcsException {
 		final Path workingDirectory = repository.getWorkTree().toPath();
-		try (Connection conn = getDbConnectionForRepo(repository)) {
-			try (CallableStatement stmt = conn
-					.prepareCall("begin\n"
-							+ "DBMS_METADATA.SET_TRANSFORM_PARAM(DBMS_METADATA.SESSION_TRANSFORM,'STORAGE',false);\n"
-							+ "DBMS_METADATA.SET_TRANSFORM_PARAM(DBMS_METADATA.SESSION_TRANSFORM,'TABLESPACE',false);\n"
-							+ "DBMS_METADATA.SET_TRANSFORM_PARAM(DBMS_METADATA.SESSION_TRANSFORM,'SEGMENT_ATTRIBUTES',false);\nend;")) {
-
-				stmt.execute();
-			}
-			try (PreparedStatement stmt = conn.prepareStatement(CHANGES_QUERY)) {
-				try (ResultSet rset = stmt.executeQuery()) {
-					writeChangesFirstPass(rset, workingDirectory);
+		try {
+			final Connection conn = session.getMetadataConnection();
+			final int batchSize = getIntSetting(Settings.BULK_FETCH_SIZE, 0);
+			final DdlCache cache = getDdlCacheForCommand(repository);
+			if (batchSize > 0 || cache != null) {
+				return writeChangesInBulk(conn, workingDirectory, batchSize, objectName, cache);
+			}
+			final List<CapturedChange> captured;
+			try (PreparedStatement stmt = prepareChangesQuery(conn, CHANGES_QUERY, objectName)) {
+				try (ResultSet rset = executeQuery(stmt)) {
+					captured = writeChangesFirstPass(rset, workingDirectory);
 				}
 			}
-			try (PreparedStatement stmt = conn.prepareStatement(CHANGES_QUERY)) {
-				try (ResultSet rset = stmt.executeQuery()) {
-					return writeChangesSecondPass(rset, workingDirectory);
+			try {
+				return writeChangesSecondPass(captured, workingDirectory);
+			} finally {
+				release(captured);
+			}
+		} catch (final SQLException e) {
+			throw new OvcsException("Unable to query database: " + e.getMessage(), e);
+		} catch (final IOException e) {
+			throw new OvcsException("Unable to buffer changed source: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Fetch a single changed object from database, or all changed objects, and
+	 * compare their current source with the source in the HEAD revision,
+	 * without writing to the working directory
+	 *
+	 * @param repository
+	 *            the local git repository
+	 * @param objectName
+	 *            the name of the only object to fetch, or null to fetch all
+	 *            changed objects
+	 * @return the objects whose current source differs from the committed
+	 *         source, in object name order
+	 * @throws OvcsException
+	 *             for errors during processing
+	 */
+	protected List<SourceChange> compareChanges(final FileRepository repository, final String objectName)
+			throws OvcsException {
+		final Map<String, byte[]> currentSources = new TreeMap<>();
+		try (DatabaseSession session = openSession(repository)) {
+			final DdlCache cache = getDdlCacheForCommand(repository);
+			if (cache == null) {
+				try (PreparedStatement stmt = prepareChangesQuery(session.getMetadataConnection(), CHANGES_QUERY,
+						objectName)) {
+					try (ResultSet rset = executeQuery(stmt)) {
+						while (rset.next()) {
+							final String name = rset.getString("object_name");
+							currentSources.put(name, "DROP".equals(rset.getString("action")) ? null : readSource(
+									rset.getCharacterStream("current_source")).getBytes(StandardCharsets.UTF_8));
+						}
+					}
 				}
+			} else {
+				readCurrentSources(session.getMetadataConnection(), objectName, cache, currentSources);
 			}
 		} catch (final SQLException e) {
 			throw new OvcsException("Unable to query database: " + e.getMessage(), e);
+		} catch (final IOException e) {
+			throw new OvcsException("Unable to read changed source: " + e.getMessage(), e);
+		}
+		final Layout layout = getLayout(repository.getWorkTree().toPath());
+		final List<String> paths = new ArrayList<>();
+		for (final String name : currentSources.keySet()) {
+			paths.add(layout.getPath(name));
+		}
+		final Map<String, ObjectId> committedIds;
+		try {
+			committedIds = GitUtils.findHeadBlobs(repository, paths);
+		} catch (final IOException e) {
+			throw new OvcsException("Unable to read committed source: " + e.getMessage(), e);
+		}
+		final ObjectInserter.Formatter formatter = new ObjectInserter.Formatter();
+		final List<SourceChange> changes = new ArrayList<>();
+		for (final Map.Entry<String, byte[]> entry : currentSources.entrySet()) {
+			final String path = layout.getPath(entry.getKey());
+			final ObjectId committedId = committedIds.get(path);
+			final byte[] currentSource = entry.getValue();
+			final ObjectId currentId = currentSource == null ? null : formatter.idFor(Constants.OBJ_BLOB,
+					currentSource);
+			if (committedId == null ? currentId != null : !committedId.equals(currentId)) {
+				changes.add(new SourceChange(path, committedId, currentSource));
+			}
+		}
+		return changes;
+	}
+
+	/**
+	 * read the current source of changed objects, taking unchanged objects
+	 * from the DDL cache
+	 *
+	 * @param conn
+	 *            the database connection to the managed schema
+	 * @param objectName
+	 *            the name of the only object to fetch, or null to fetch all
+	 *            changed objects
+	 * @param cache
+	 *            the DDL cache
+	 * @param currentSources
+	 *            the map receiving the current source of each object, UTF-8
+	 *            encoded, or null for dropped objects
+	 * @throws SQLException
+	 *             if the objects could not be fetched
+	 * @throws OvcsException
+	 *             if the source could not be read
+	 */
+	private void readCurrentSources(final Connection conn, final String objectName, final DdlCache cache,
+			final Map<String, byte[]> currentSources) throws SQLException, OvcsException {
+		final Map<String, List<String>> objectsByType = new TreeMap<>();
+		final Map<String, Long> ddlTimes = new HashMap<>();
+		try (PreparedStatement stmt = prepareChangesQuery(conn, LOCKED_OBJECTS_QUERY, objectName)) {
+			try (ResultSet rset = executeQuery(stmt)) {
+				while (rset.next()) {
+					final String name = rset.getString("object_name");
+					if ("DROP".equals(rset.getString("action"))) {
+						currentSources.put(name, null);
+					} else {
+						final String objectType = rset.getString("object_type");
+						List<String> names = objectsByType.get(objectType);
+						if (names == null) {
+							names = new ArrayList<>();
+							objectsByType.put(objectType, names);
+						}
+						names.add(name);
+						ddlTimes.put(name, rset.getTimestamp("last_ddl_time").getTime());
+					}
+				}
+			}
+		}
+		fetchCurrentSource(conn, objectsByType, ddlTimes, cache, getIntSetting(Settings.BULK_FETCH_SIZE, 0),
+				new MetadataFetcher.DocumentHandler() {
+
+					@Override
+					public void handle(final String name, final Reader source) throws OvcsException {
+						try {
+							currentSources.put(name, readSource(source).getBytes(StandardCharsets.UTF_8));
+						} catch (final IOException e) {
+							throw new OvcsException("Unable to read changed source: " + e.getMessage(), e);
+						}
+					}
+				});
+	}
+
+	/**
+	 * determines if the command only reads the current source of changed
+	 * objects, and may take the source of unchanged objects from the DDL cache
+	 *
+	 * @return true if the command may use the DDL cache, false otherwise
+	 */
+	protected boolean usesDdlCache() {
+		return false;
+	}
+
+	private DdlCache getDdlCacheForCommand(final FileRepository repository) throws OvcsException {
+		if (!usesDdlCache()) {
+			return null;
+		}
+		final DdlCache cache = getDdlCache(repository);
+		return cache.isEnabled() ? cache : null;
+	}
+
+	private String readSource(final Reader source) throws IOException {
+		final StringBuilder builder = new StringBuilder();
+		if (source != null) {
+			try {
+				final char[] buffer = new char[COPY_BUFFER_SIZE];
+				int count = source.read(buffer);
+				while (count != -1) {
+					builder.append(buffer, 0, count);
+					count = source.read(buffer);
+				}
+			} finally {
+				source.close();
+			}
 		}
+		return builder.toString();
 	}
 
 }
@@ -18,30 +18,49 @@ package com.tenxdev.ovcs.command;
  */
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
 import java.io.Writer;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.sql.CallableStatement;
 import java.sql.Connection;
 import java.sql.Driver;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.internal.storage.file.FileRepository;
+import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.lib.TextProgressMonitor;
 import org.eclipse.jgit.storage.file.FileBasedConfig;
 import org.eclipse.jgit.transport.PushResult;
+import org.eclipse.jgit.treewalk.WorkingTreeIterator;
 
+import com.tenxdev.ovcs.ChangedFileOutputStream;
+import com.tenxdev.ovcs.DdlCache;
+import com.tenxdev.ovcs.Layout;
+import com.tenxdev.ovcs.Metrics;
 import com.tenxdev.ovcs.OvcsException;
 import com.tenxdev.ovcs.Settings;
 import com.tenxdev.ovcs.SettingsStore;
 import com.tenxdev.ovcs.SettingsStore.SettingsStoreException;
+import com.tenxdev.ovcs.WrittenBlobs;
+import com.tenxdev.ovcs.WrittenBlobs.WrittenBlob;
+import com.tenxdev.ovcs.WrittenBlobsTreeIterator;
+import com.tenxdev.ovcs.daemon.ConnectionPool;
+import com.tenxdev.ovcs.daemon.RepositoryCache;
 
 /**
  * Abstract base class for all ovcs commands that need to access the local git
@@ -56,7 +75,83 @@ public abstract class AbstractOvcsCommand implements Command {
 	 * the name of the folder under the user home directory where settings are
 	 * stored
 	 */
-	protected static final String CONFIG_FOLDER_NAME = ".ovcs";
+	public static final String CONFIG_FOLDER_NAME = ".ovcs";
+
+	/**
+	 * the size, in characters, of the buffer used to copy object source to disk
+	 */
+	protected static final int COPY_BUFFER_SIZE = 8192;
+
+	/**
+	 * the number of rows fetched in a single round trip, unless configured
+	 */
+	private static final int DEFAULT_ROW_PREFETCH = 100;
+
+	/**
+	 * the number of characters of each CLOB returned with the row, unless
+	 * configured. Covers the DDL of most objects.
+	 */
+	private static final int DEFAULT_LOB_PREFETCH_SIZE = 32 * 1024;
+
+	/**
+	 * the number of statements cached per connection, unless configured
+	 */
+	private static final int DEFAULT_STATEMENT_CACHE_SIZE = 20;
+
+	/**
+	 * the maximum size of the DDL cache, in kilobytes, unless configured
+	 */
+	private static final int DEFAULT_DDL_CACHE_SIZE = 10 * 1024;
+
+	/**
+	 * Oracle JDBC drivers already loaded, by jar file path, so that the
+	 * driver's class loader is created once per process
+	 */
+	private static final Map<String, Driver> DRIVERS = new ConcurrentHashMap<>();
+
+	/**
+	 * the number of object files written by this command
+	 */
+	private final AtomicInteger writtenCount = new AtomicInteger();
+
+	/**
+	 * the number of object files left untouched because their content did not
+	 * change
+	 */
+	private final AtomicInteger unchangedCount = new AtomicInteger();
+
+	/**
+	 * the time spent in each phase of this command, and its counters
+	 */
+	private final Metrics metrics = new Metrics();
+
+	/**
+	 * the capture of database session statistics, created on the first
+	 * connection when enabled
+	 */
+	private SessionStatistics sessionStatistics;
+
+	/**
+	 * the blob ids of object files written by this command
+	 */
+	private final WrittenBlobs writtenBlobs = new WrittenBlobs();
+
+	/**
+	 * the working directory of the local git repository, or null to use the
+	 * current directory
+	 */
+	private File workingDirectory;
+
+	/**
+	 * the layout of object files in the working directory, loaded on first
+	 * use
+	 */
+	private Layout layout;
+
+	/**
+	 * the ovcs settings, loaded once per command
+	 */
+	private SettingsStore settings;
 
 	/**
 	 * Default constructor
@@ -74,12 +169,14 @@ public abstract class AbstractOvcsCommand implements Command {
 	 *             if the push operation failed
 	 */
 	protected void doPush(final Git git) throws GitAPIException {
-		final Iterable<PushResult> pushResults = git.push().setRemote("origin").add("master")
-				.setProgressMonitor(new TextProgressMonitor()).call();
-		for (final PushResult pushResult : pushResults) {
-			final String messages = pushResult.getMessages();
-			if (!"".equals(messages)) {
-				System.out.println();
+		try (Metrics.Timer timer = metrics.start(Metrics.PUSH)) {
+			final Iterable<PushResult> pushResults = git.push().setRemote("origin").add("master")
+					.setProgressMonitor(new TextProgressMonitor()).call();
+			for (final PushResult pushResult : pushResults) {
+				final String messages = pushResult.getMessages();
+				if (!"".equals(messages)) {
+					System.out.println();
+				}
 			}
 		}
 	}
@@ -99,7 +196,9 @@ public abstract class AbstractOvcsCommand implements Command {
 	}
 
 	/**
-	 * get an Oracle DB connection
+	 * get an Oracle DB connection. When running in the ovcs daemon, an idle
+	 * connection to the same schema is reused, and closing the connection
+	 * returns it to the daemon's pool.
 	 *
 	 * @param connectionString
 	 *            the Oracle DB connection string, in format
@@ -110,21 +209,87 @@ public abstract class AbstractOvcsCommand implements Command {
 	 *             the driver has not been configured
 	 */
 	protected Connection getConnection(final String connectionString) throws OvcsException {
+		final Connection connection;
+		try (Metrics.Timer timer = metrics.start(Metrics.CONNECT)) {
+			connection = connect(connectionString);
+		}
+		final SessionStatistics statistics = getSessionStatistics();
+		return statistics == null ? connection : statistics.track(connection);
+	}
+
+	/**
+	 * gets the capture of session statistics for this command, created on
+	 * first use
+	 *
+	 * @return the session statistics, or null if the session-statistics
+	 *         setting is not enabled
+	 * @throws OvcsException
+	 *             if the settings cannot be read
+	 */
+	private synchronized SessionStatistics getSessionStatistics() throws OvcsException {
+		if (sessionStatistics == null && getBooleanSetting(Settings.SESSION_STATISTICS, false)) {
+			sessionStatistics = new SessionStatistics(metrics);
+		}
+		return sessionStatistics;
+	}
+
+	private Connection connect(final String connectionString) throws OvcsException {
+		final ConnectionPool connectionPool = ConnectionPool.getInstance();
+		if (connectionPool != null) {
+			final Connection connection = connectionPool.borrow(connectionString);
+			if (connection != null) {
+				return connection;
+			}
+		}
 		String jdbcLibPath;
 		try {
-			jdbcLibPath = new SettingsStore(CONFIG_FOLDER_NAME).load().getSetting(Settings.ORACLE_DRIVER, true);
+			jdbcLibPath = getSettings().getSetting(Settings.ORACLE_DRIVER, true);
 		} catch (final SettingsStoreException e) {
 			throw new OvcsException("Unable to read configuration: " + e.getMessage(), e);
 		}
-		final Driver driver = loadOracleJbcDriver(jdbcLibPath);
+		Driver driver = DRIVERS.get(jdbcLibPath);
+		if (driver == null) {
+			synchronized (DRIVERS) {
+				driver = DRIVERS.get(jdbcLibPath);
+				if (driver == null) {
+					driver = loadOracleJbcDriver(jdbcLibPath);
+					DRIVERS.put(jdbcLibPath, driver);
+				}
+			}
+		}
 		try {
-
-			return driver.connect("jdbc:oracle:thin:" + connectionString, new Properties());
+			final Connection connection = driver.connect("jdbc:oracle:thin:" + connectionString,
+					getConnectionProperties());
+			return connectionPool == null ? connection : connectionPool.wrap(connectionString, connection);
 		} catch (final SQLException e) {
 			throw new OvcsException(String.format("Unable to connect to %s: %s", connectionString, e.getMessage()), e);
 		}
 	}
 
+	/**
+	 * gets the Oracle driver properties used for every connection, from the
+	 * ovcs settings
+	 *
+	 * @return the connection properties
+	 * @throws OvcsException
+	 *             if the settings cannot be read, or a numeric setting is not
+	 *             a number
+	 */
+	protected Properties getConnectionProperties() throws OvcsException {
+		final Properties properties = new Properties();
+		properties.setProperty("defaultRowPrefetch",
+				Integer.toString(getIntSetting(Settings.ROW_PREFETCH, DEFAULT_ROW_PREFETCH)));
+		properties.setProperty("oracle.jdbc.defaultLobPrefetchSize",
+				Integer.toString(getIntSetting(Settings.LOB_PREFETCH_SIZE, DEFAULT_LOB_PREFETCH_SIZE)));
+		properties.setProperty("oracle.jdbc.implicitStatementCacheSize",
+				Integer.toString(getIntSetting(Settings.STATEMENT_CACHE_SIZE, DEFAULT_STATEMENT_CACHE_SIZE)));
+		final String networkCompression = getSettings().getSetting(Settings.NETWORK_COMPRESSION);
+		if (networkCompression != null) {
+			properties.setProperty("oracle.net.networkCompression", networkCompression.trim());
+		}
+		return properties;
+	}
+
 	/**
 	 * gets an Oracle DB connection, based on connection string stored in the
 	 * local git repo's settings
@@ -135,31 +300,126 @@ public abstract class AbstractOvcsCommand implements Command {
 	 * @throws OvcsException
 	 */
 	protected Connection getDbConnectionForRepo(final FileRepository repository) throws OvcsException {
+		return getConnection(getConnectionString(repository));
+	}
+
+	/**
+	 * opens a database session, based on connection string stored in the local
+	 * git repo's settings. The connection is only established when first used.
+	 *
+	 * @param repository
+	 *            the local git repository
+	 * @return a database session for the schema being tracked
+	 * @throws OvcsException
+	 *             if the repository is not an ovcs repository
+	 */
+	protected DatabaseSession openSession(final FileRepository repository) throws OvcsException {
+		return new DatabaseSession(this, getConnectionString(repository));
+	}
+
+	/**
+	 * gets the Oracle DB connection string stored in the local git repo's
+	 * settings
+	 *
+	 * @param repository
+	 *            the local git repository
+	 * @return the Oracle DB connection string, in format
+	 *         user/password@host:port:sid
+	 * @throws OvcsException
+	 *             if the repository is not an ovcs repository
+	 */
+	protected String getConnectionString(final FileRepository repository) throws OvcsException {
 		final FileBasedConfig config = repository.getConfig();
 		final String connectionString = config.getString("database", null, "connectionString");
 		if (connectionString == null) {
 			throw new OvcsException("The current git repository is not an OVCS repository");
 		}
-		return getConnection(connectionString);
+		return connectionString;
 	}
 
 	/**
-	 * checks if the current directory is a git repository and returns a
-	 * repository object if it is
+	 * get a boolean ovcs setting
+	 *
+	 * @param key
+	 *            the name of the setting
+	 * @param defaultValue
+	 *            the value to use if the setting has not been configured
+	 * @return the value of the setting, or the default value if the setting
+	 *         does not exist
+	 * @throws OvcsException
+	 *             if the settings cannot be read
+	 */
+	protected boolean getBooleanSetting(final String key, final boolean defaultValue) throws OvcsException {
+		final String value = getSettings().getSetting(key);
+		return value == null ? defaultValue : Boolean.parseBoolean(value.trim());
+	}
+
+	/**
+	 * get a numeric ovcs setting
+	 *
+	 * @param key
+	 *            the name of the setting
+	 * @param defaultValue
+	 *            the value to use if the setting has not been configured
+	 * @return the value of the setting, or the default value if the setting
+	 *         does not exist
+	 * @throws OvcsException
+	 *             if the settings cannot be read, or the setting is not a
+	 *             number
+	 */
+	protected int getIntSetting(final String key, final int defaultValue) throws OvcsException {
+		final String value = getSettings().getSetting(key);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (final NumberFormatException e) {
+			throw new OvcsException(String.format("Invalid value \"%s\" for setting %s", value, key), e);
+		}
+	}
+
+	/**
+	 * gets the ovcs settings, loading them on first use
+	 *
+	 * @return the settings
+	 * @throws OvcsException
+	 *             if the settings cannot be read
+	 */
+	protected synchronized SettingsStore getSettings() throws OvcsException {
+		if (settings == null) {
+			try {
+				settings = new SettingsStore(CONFIG_FOLDER_NAME).load();
+			} catch (final SettingsStoreException e) {
+				throw new OvcsException("Unable to read configuration: " + e.getMessage(), e);
+			}
+		}
+		return settings;
+	}
+
+	/**
+	 * checks if the current directory, or the working directory set for this
+	 * command, is a git repository and returns a repository object if it is.
+	 * When running in the ovcs daemon, the repository is kept open between
+	 * commands.
 	 *
 	 * @return a repository object
 	 * @throws OvcsException
 	 *             if the current directory is not a git repository
 	 */
 	protected FileRepository getRepoForCurrentDir() throws OvcsException {
-		final File workingDir = new File(System.getProperty("user.dir"));
+		final File workingDir = workingDirectory == null ? new File(System.getProperty("user.dir"))
+				: workingDirectory;
 		final File gitDir = new File(workingDir, ".git");
 		if (!gitDir.exists()) {
 			throw new OvcsException("The current directory is not a git repository");
 		}
 		try {
-			final FileRepository fileRepository = new FileRepository(gitDir);
+			final RepositoryCache repositoryCache = RepositoryCache.getInstance();
+			final FileRepository fileRepository = repositoryCache == null ? new FileRepository(gitDir)
+					: repositoryCache.open(gitDir);
 			if (!fileRepository.getObjectDatabase().exists()) {
+				fileRepository.close();
 				throw new OvcsException("The current directory is not a git repository");
 			}
 			return fileRepository;
@@ -209,6 +469,42 @@ public abstract class AbstractOvcsCommand implements Command {
 		}
 	}
 
+	/**
+	 * Applies the DBMS_METADATA session transforms used for all extracted
+	 * source, so that storage and tablespace clauses are omitted
+	 *
+	 * @param conn
+	 *            the database connection to the managed schema
+	 * @throws SQLException
+	 *             if the transforms could not be set
+	 */
+	protected void setMetadataTransforms(final Connection conn) throws SQLException {
+		try (Metrics.Timer timer = metrics.start(Metrics.METADATA_TRANSFORMS); CallableStatement stmt = conn
+				.prepareCall("begin\n"
+						+ "DBMS_METADATA.SET_TRANSFORM_PARAM(DBMS_METADATA.SESSION_TRANSFORM,'STORAGE',false);\n"
+						+ "DBMS_METADATA.SET_TRANSFORM_PARAM(DBMS_METADATA.SESSION_TRANSFORM,'TABLESPACE',false);\n"
+						+ "DBMS_METADATA.SET_TRANSFORM_PARAM(DBMS_METADATA.SESSION_TRANSFORM,'SEGMENT_ATTRIBUTES',false);\nend;")) {
+
+			stmt.execute();
+		}
+	}
+
+	/**
+	 * Runs a query, adding the time taken until the first rows are returned
+	 * to the query phase of this command's metrics
+	 *
+	 * @param stmt
+	 *            the query to run
+	 * @return the result set of the query
+	 * @throws SQLException
+	 *             if the query failed
+	 */
+	protected ResultSet executeQuery(final PreparedStatement stmt) throws SQLException {
+		try (Metrics.Timer timer = metrics.start(Metrics.QUERY)) {
+			return stmt.executeQuery();
+		}
+	}
+
 	/**
 	 * Remove a schema object from thw working directory
 	 *
@@ -224,7 +520,7 @@ public abstract class AbstractOvcsCommand implements Command {
 	 */
 	protected void removeSchemaObject(final Path workingDirectory, final String objectName, final boolean feedback)
 			throws OvcsException {
-		final File file = workingDirectory.resolve(objectName + ".sql").toFile();
+		final File file = workingDirectory.resolve(getLayout(workingDirectory).getPath(objectName)).toFile();
 		if (file.exists() && !file.delete()) {
 			throw new OvcsException(String.format("Unabled to delete \"%s\"", file.getPath()));
 		}
@@ -251,15 +547,259 @@ public abstract class AbstractOvcsCommand implements Command {
 	 */
 	protected void writeSchemaObject(final Path workingDirectory, final String objectName, final String source,
 			final boolean feedback) throws OvcsException {
-		final Path filePath = workingDirectory.resolve(objectName + ".sql");
-		if (feedback) {
-			System.out.println("Writing " + objectName);
-		}
-		try (Writer writer = new OutputStreamWriter(new FileOutputStream(filePath.toFile()), StandardCharsets.UTF_8)) {
-			writer.write(source);
+		writeSchemaObject(workingDirectory, objectName, new StringReader(source), feedback);
+	}
+
+	/**
+	 * Write a database schema object's source to the working directory. The
+	 * source is copied through a fixed size buffer, so that memory use does not
+	 * depend on the size of the object. The file is left untouched if its
+	 * content is unchanged.
+	 *
+	 * @param workingDirectory
+	 *            the path to the working directory
+	 * @param objectName
+	 *            the name of the database object to write
+	 * @param source
+	 *            a reader for the SQL source corresponding to the creation of
+	 *            the database object, typically the character stream of a CLOB
+	 *            column. A null reader writes an empty file.
+	 * @param feedback
+	 *            true to display a status message when writing an object, false
+	 *            otherwise
+	 * @throws OvcsException
+	 *             if the object could not be read or written
+	 */
+	protected void writeSchemaObject(final Path workingDirectory, final String objectName, final Reader source,
+			final boolean feedback) throws OvcsException {
+		writeSchemaObject(workingDirectory, objectName, source, -1, feedback);
+	}
+
+	/**
+	 * Write a database schema object's source to the working directory, unless
+	 * the file already has the same content
+	 *
+	 * @param workingDirectory
+	 *            the path to the working directory
+	 * @param objectName
+	 *            the name of the database object to write
+	 * @param source
+	 *            a reader for the SQL source corresponding to the creation of
+	 *            the database object. A null reader writes an empty file.
+	 * @param length
+	 *            the length of the source encoded in UTF-8, in bytes, or -1 if
+	 *            unknown
+	 * @param feedback
+	 *            true to display a status message when writing an object, false
+	 *            otherwise
+	 * @return true if the file was written, false if it was unchanged
+	 * @throws OvcsException
+	 *             if the object could not be read or written
+	 */
+	protected boolean writeSchemaObject(final Path workingDirectory, final String objectName, final Reader source,
+			final long length, final boolean feedback) throws OvcsException {
+		final Path filePath = workingDirectory.resolve(getLayout(workingDirectory).getPath(objectName));
+		final ChangedFileOutputStream outputStream;
+		final long start = System.nanoTime();
+		long readNanos = 0;
+		try {
+			final File parent = filePath.toFile().getParentFile();
+			if (!parent.isDirectory() && !parent.mkdirs()) {
+				throw new IOException("Unable to create directory " + parent);
+			}
+			outputStream = new ChangedFileOutputStream(filePath.toFile(), length);
+			try {
+				final Writer writer = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8);
+				if (source != null) {
+					final char[] buffer = new char[COPY_BUFFER_SIZE];
+					long readStart = System.nanoTime();
+					int count = source.read(buffer);
+					readNanos += System.nanoTime() - readStart;
+					while (count != -1) {
+						writer.write(buffer, 0, count);
+						readStart = System.nanoTime();
+						count = source.read(buffer);
+						readNanos += System.nanoTime() - readStart;
+					}
+				}
+				writer.close();
+			} finally {
+				// keeps the existing file if the source could not be read to
+				// the end
+				outputStream.abort();
+			}
 		} catch (final IOException e) {
-			throw new OvcsException(String.format("Unable to write file %s", filePath.toString()), e);
+			throw new OvcsException(String.format("Unable to write file %s: %s", filePath.toString(), e.getMessage()),
+					e);
+		}
+		final long elapsed = System.nanoTime() - start;
+		metrics.addTime(Metrics.FETCH, readNanos);
+		metrics.addTime(Metrics.WRITE, elapsed - readNanos);
+		metrics.record(Metrics.OBJECT_LATENCY, elapsed);
+		final File file = filePath.toFile();
+		metrics.add(Metrics.BYTES_FETCHED, file.length());
+		if (outputStream.isChanged()) {
+			metrics.add(Metrics.BYTES_WRITTEN, file.length());
+		}
+		writtenBlobs.put(workingDirectory.relativize(filePath).toString().replace(File.separatorChar, '/'),
+				new WrittenBlob(outputStream.getObjectId(), file.length(), file.lastModified()));
+		countWrite(objectName, outputStream.isChanged(), feedback);
+		return outputStream.isChanged();
+	}
+
+	/**
+	 * count an object written by this command, and display a status message
+	 * if the object changed
+	 *
+	 * @param objectName
+	 *            the name of the database object written
+	 * @param changed
+	 *            true if the object source changed, false if it was unchanged
+	 * @param feedback
+	 *            true to display a status message when writing an object, false
+	 *            otherwise
+	 */
+	protected void countWrite(final String objectName, final boolean changed, final boolean feedback) {
+		metrics.add(Metrics.OBJECTS_FETCHED, 1);
+		metrics.add(changed ? Metrics.OBJECTS_WRITTEN : Metrics.OBJECTS_UNCHANGED, 1);
+		if (changed) {
+			writtenCount.incrementAndGet();
+			if (feedback) {
+				System.out.println("Writing " + objectName);
+			}
+		} else {
+			unchangedCount.incrementAndGet();
 		}
 	}
 
+	/**
+	 * gets the layout of object files in a working directory, loading it on
+	 * first use
+	 *
+	 * @param workingDirectory
+	 *            the working directory of the local git repository
+	 * @return the layout of object files
+	 * @throws OvcsException
+	 *             if the layout file cannot be read
+	 */
+	protected synchronized Layout getLayout(final Path workingDirectory) throws OvcsException {
+		if (layout == null) {
+			try {
+				layout = Layout.load(workingDirectory.toFile());
+			} catch (final IOException e) {
+				throw new OvcsException("Unable to read object file layout: " + e.getMessage(), e);
+			}
+		}
+		return layout;
+	}
+
+	/**
+	 * sets the working directory of the local git repository, when the command
+	 * is not run from that directory
+	 *
+	 * @param workingDirectory
+	 *            the working directory of the local git repository
+	 */
+	void setWorkingDirectory(final File workingDirectory) {
+		this.workingDirectory = workingDirectory;
+	}
+
+	/**
+	 * gets the local DDL cache of a repository
+	 *
+	 * @param repository
+	 *            the local git repository
+	 * @return the DDL cache, disabled unless a time to live is configured
+	 * @throws OvcsException
+	 *             if the settings cannot be read
+	 */
+	protected DdlCache getDdlCache(final Repository repository) throws OvcsException {
+		return new DdlCache(new File(new File(repository.getDirectory(), "ovcs"), "cache"),
+				getIntSetting(Settings.DDL_CACHE_TTL, 0) * 1000L,
+				getIntSetting(Settings.DDL_CACHE_SIZE, DEFAULT_DDL_CACHE_SIZE) * 1024L);
+	}
+
+	/**
+	 * gets the blob ids of the object files written by this command, with
+	 * paths relative to the working directory they were written to
+	 *
+	 * @return the written blobs
+	 */
+	protected WrittenBlobs getWrittenBlobs() {
+		return writtenBlobs;
+	}
+
+	/**
+	 * creates a working tree iterator that does not read and hash object files
+	 * written by this command
+	 *
+	 * @param repository
+	 *            the local git repository
+	 * @return a working tree iterator
+	 */
+	protected WorkingTreeIterator newWorkingTreeIterator(final Repository repository) {
+		return new WrittenBlobsTreeIterator(repository, writtenBlobs);
+	}
+
+	/**
+	 * gets the metrics of this command
+	 *
+	 * @return the metrics
+	 */
+	protected Metrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * prints a summary of the metrics of this command and writes them to a
+	 * JSON report, as configured by the metrics-summary and metrics-report
+	 * settings. Failures to report are displayed, but do not fail the command.
+	 *
+	 * @param command
+	 *            the name of the command
+	 * @param workingDirectory
+	 *            the working directory of the local git repository. A relative
+	 *            report path is resolved against its .git/ovcs directory, so
+	 *            that reports are not committed.
+	 * @param succeeded
+	 *            true if the command succeeded, false otherwise
+	 */
+	protected void reportMetrics(final String command, final Path workingDirectory, final boolean succeeded) {
+		try {
+			if (getBooleanSetting(Settings.METRICS_SUMMARY, false)) {
+				metrics.printSummary(System.out);
+			}
+			final String report = getSettings().getSetting(Settings.METRICS_REPORT);
+			if (report != null && !report.trim().isEmpty()) {
+				final Map<String, String> properties = new LinkedHashMap<>();
+				properties.put("command", command);
+				properties.put("repository", workingDirectory.toAbsolutePath().toString());
+				properties.put("result", succeeded ? "success" : "failure");
+				metrics.writeReport(workingDirectory.resolve(".git").resolve("ovcs").resolve(report.trim()).toFile(),
+						properties);
+			}
+		} catch (final OvcsException | IOException e) {
+			System.out.println("Unable to report metrics: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * gets the number of object files written by this command
+	 *
+	 * @return the number of files whose content changed
+	 */
+	protected int getWrittenCount() {
+		return writtenCount.get();
+	}
+
+	/**
+	 * gets the number of object files left untouched by this command because
+	 * their content did not change
+	 *
+	 * @return the number of unchanged files
+	 */
+	protected int getUnchangedCount() {
+		return unchangedCount.get();
+	}
+
 }
@@ -16,20 +16,48 @@
  */
 package com.tenxdev.ovcs.command;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
 import java.nio.file.Path;
-import java.sql.CallableStatement;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.Status;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.internal.storage.file.FileRepository;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.lib.TextProgressMonitor;
 
+import com.tenxdev.ovcs.ChangedFileOutputStream;
+import com.tenxdev.ovcs.DirectCommit;
+import com.tenxdev.ovcs.GitUtils;
+import com.tenxdev.ovcs.HashManifest;
+import com.tenxdev.ovcs.LoadGovernor;
+import com.tenxdev.ovcs.Metrics;
 import com.tenxdev.ovcs.OvcsException;
+import com.tenxdev.ovcs.Settings;
+import com.tenxdev.ovcs.SpillBuffer;
+import com.tenxdev.ovcs.WatermarkStore;
 
 /**
  * Abstract base class for commands that synchronize the database objects with
@@ -40,6 +68,309 @@ import com.tenxdev.ovcs.OvcsException;
  */
 public abstract class AbstractSyncCommand extends AbstractChangeCommand {
 
+	/**
+	 * Describes the objects to fetch, and how to fetch them
+	 */
+	private static final class FetchPlan {
+
+		/**
+		 * the names of the objects to fetch, or null to fetch all objects
+		 */
+		private final List<String> names;
+		/**
+		 * the DBMS_METADATA requests covering the objects to fetch, or null to
+		 * fetch each object with get_ddl
+		 */
+		private final List<MetadataFetcher.Request> requests;
+		/**
+		 * the number of documents fetched in a single round trip with
+		 * DBMS_METADATA
+		 */
+		private final int batchSize;
+
+		/**
+		 * constructor
+		 *
+		 * @param names
+		 *            the names of the objects to fetch, or null to fetch all
+		 *            objects
+		 * @param requests
+		 *            the DBMS_METADATA requests covering the objects to fetch,
+		 *            or null to fetch each object with get_ddl
+		 * @param batchSize
+		 *            the number of documents fetched in a single round trip
+		 *            with DBMS_METADATA
+		 */
+		FetchPlan(final List<String> names, final List<MetadataFetcher.Request> requests, final int batchSize) {
+			this.names = names;
+			this.requests = requests;
+			this.batchSize = batchSize;
+		}
+
+		/**
+		 * determines if there is nothing to fetch
+		 *
+		 * @return true if there are no objects to fetch
+		 */
+		boolean isEmpty() {
+			return names != null && names.isEmpty();
+		}
+	}
+
+	/**
+	 * Fetches one partition of the schema objects on its own database
+	 * connection
+	 */
+	private class PartitionFetcher implements Callable<Void> {
+
+		/**
+		 * the Oracle DB connection string
+		 */
+		private final String connectionString;
+		/**
+		 * the working directory of the local git repository
+		 */
+		private final Path workingDir;
+		/**
+		 * the total number of partitions
+		 */
+		private final int partitions;
+		/**
+		 * the partition fetched by this task, between 0 and partitions - 1
+		 */
+		private final int partition;
+		/**
+		 * the objects to fetch
+		 */
+		private final FetchPlan plan;
+
+		/**
+		 * constructor
+		 *
+		 * @param connectionString
+		 *            the Oracle DB connection string
+		 * @param workingDir
+		 *            the working directory of the local git repository
+		 * @param partitions
+		 *            the total number of partitions
+		 * @param partition
+		 *            the partition fetched by this task
+		 * @param plan
+		 *            the objects to fetch
+		 */
+		PartitionFetcher(final String connectionString, final Path workingDir, final int partitions,
+				final int partition, final FetchPlan plan) {
+			this.connectionString = connectionString;
+			this.workingDir = workingDir;
+			this.partitions = partitions;
+			this.partition = partition;
+			this.plan = plan;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public Void call() throws OvcsException {
+			try (Connection conn = getConnection(connectionString)) {
+				setMetadataTransforms(conn);
+				writeSchemaObjects(conn, workingDir, partitions, partition, plan);
+			} catch (final SQLException e) {
+				throw new OvcsException("Unable to connect to database: " + e.getMessage(), e);
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * the message of commits created by init and sync
+	 */
+	private static final String SYNC_COMMIT_MESSAGE = "initial synchronization";
+
+	/**
+	 * the number of fetched objects that can wait to be written, per writer
+	 * thread
+	 */
+	private static final int QUEUED_OBJECTS_PER_WRITER = 8;
+
+	/**
+	 * query run to retrieve the source of all schema objects
+	 */
+	private static final String OBJECTS_QUERY = "select object_type, object_name, "
+			+ " dbms_metadata.get_ddl(object_type, object_name) src "
+			+ " from user_objects where object_type not like '% BODY' and object_name not like 'OVCS#'";
+
+	/**
+	 * restriction added to {@link #OBJECTS_QUERY} to retrieve a single
+	 * partition of the schema objects
+	 */
+	private static final String PARTITION_CLAUSE = " and mod(ora_hash(object_name), ?) = ?";
+
+	/**
+	 * restriction added to {@link #OBJECTS_QUERY} to retrieve a single object
+	 */
+	private static final String NAME_CLAUSE = " and object_name = ?";
+
+	/**
+	 * restriction added to {@link #OBJECTS_QUERY} to retrieve objects of a
+	 * single type
+	 */
+	private static final String TYPE_CLAUSE = " and object_type = ?";
+
+	/**
+	 * query run to retrieve the type of all schema objects
+	 */
+	private static final String OBJECT_TYPES_QUERY = "select object_type, object_name from user_objects "
+			+ " where object_type not like '% BODY' and object_name not like 'OVCS#' order by object_type";
+
+	/**
+	 * query run to retrieve the last DDL time of all schema objects. The
+	 * latest time of all objects sharing a name is used, so that changes to a
+	 * package body move the watermark of the package.
+	 */
+	private static final String DDL_TIMES_QUERY = "select object_name, "
+			+ " to_char(max(last_ddl_time), 'YYYYMMDDHH24MISS') last_ddl_time "
+			+ " from user_objects where object_name not like 'OVCS#' group by object_name";
+
+	/**
+	 * commits fetched objects straight into the git object database, null
+	 * when fetched objects are written to the working directory
+	 */
+	private volatile DirectCommit directCommit;
+
+	/**
+	 * queues fetched objects to be written by a pool of writer threads, null
+	 * when fetched objects are written by the fetching thread
+	 */
+	private volatile WritePipeline writePipeline;
+
+	/**
+	 * limits the load extraction puts on the database, as configured by the
+	 * limits file of the repository
+	 */
+	private volatile LoadGovernor loadGovernor = LoadGovernor.UNLIMITED;
+
+	/**
+	 * the maximum number of database connections this command may open at
+	 * once, 0 for no limit
+	 */
+	private int connectionLimit;
+
+	/**
+	 * limits the number of pushes to remote repositories running at once
+	 * across commands, null for no limit
+	 */
+	private Semaphore pushPermits;
+
+	/**
+	 * gets the number of connections fetching objects concurrently, from the
+	 * parallelism setting, reduced so that the connections of this command,
+	 * including the session connection, stay within its connection limit
+	 *
+	 * @return the number of connections fetching objects concurrently
+	 * @throws OvcsException
+	 *             if the settings cannot be read
+	 */
+	protected int getParallelism() throws OvcsException {
+		final int parallelism = getIntSetting(Settings.PARALLELISM, 1);
+		return connectionLimit > 0 ? Math.max(1, Math.min(parallelism, connectionLimit - 1)) : parallelism;
+	}
+
+	/**
+	 * sets the maximum number of database connections this command may open
+	 * at once
+	 *
+	 * @param connectionLimit
+	 *            the maximum number of connections, 0 for no limit
+	 */
+	void setConnectionLimit(final int connectionLimit) {
+		this.connectionLimit = connectionLimit;
+	}
+
+	/**
+	 * sets the permits shared by commands to limit the number of pushes to
+	 * remote repositories running at once
+	 *
+	 * @param pushPermits
+	 *            the push permits, null for no limit
+	 */
+	void setPushPermits(final Semaphore pushPermits) {
+		this.pushPermits = pushPermits;
+	}
+
+	/**
+	 * {@inheritDoc}. When push permits are set, waits for a permit first.
+	 */
+	@Override
+	protected void doPush(final Git git) throws GitAPIException {
+		if (pushPermits == null) {
+			super.doPush(git);
+			return;
+		}
+		pushPermits.acquireUninterruptibly();
+		try {
+			super.doPush(git);
+		} finally {
+			pushPermits.release();
+		}
+	}
+
+	/**
+	 * Fetch schema objects from the database, commit them to the local
+	 * repository and push them to the remote repository. With the
+	 * direct-commit setting, fetched objects are committed straight into the
+	 * object database, and only changed files are written to the working
+	 * directory. The local DDL cache is cleared first. The metrics of the
+	 * synchronization are reported when it ends, whether it succeeded or not.
+	 *
+	 * @param session
+	 *            the database session for the managed schema
+	 * @param workingDir
+	 *            the working directory of the local git repository
+	 * @param incremental
+	 *            true to only fetch objects changed since the last fetch,
+	 *            false to fetch all objects
+	 * @throws OvcsException
+	 *             if objects could not be fetched, committed or pushed
+	 */
+	protected void synchronize(final DatabaseSession session, final Path workingDir, final boolean incremental)
+			throws OvcsException {
+		final FileRepository repository = getRepoForCurrentDir();
+		boolean succeeded = false;
+		try {
+			getDdlCache(repository).clear();
+			if (getBooleanSetting(Settings.DIRECT_COMMIT, false)) {
+				synchronizeDirect(repository, session, workingDir, incremental);
+			} else {
+				writeSchemaObjects(session, workingDir, incremental);
+				commitAndPush();
+			}
+			succeeded = true;
+		} finally {
+			repository.close();
+			reportMetrics(incremental ? "sync" : "full sync", workingDir, succeeded);
+		}
+	}
+
+	private void synchronizeDirect(final FileRepository repository, final DatabaseSession session,
+			final Path workingDir, final boolean incremental) throws OvcsException {
+		try (DirectCommit commit = new DirectCommit(repository)) {
+			directCommit = commit;
+			writeSchemaObjects(session, workingDir, incremental);
+			final boolean committed;
+			try (Metrics.Timer timer = getMetrics().start(Metrics.GIT_COMMIT)) {
+				committed = commit.commit(SYNC_COMMIT_MESSAGE);
+			}
+			if (committed) {
+				doPush(new Git(repository));
+			}
+		} catch (final IOException | GitAPIException e) {
+			throw new OvcsException("Unable to commit to git repo: " + e.getMessage(), e);
+		} finally {
+			directCommit = null;
+		}
+	}
+
 	/**
 	 * Commit all changes and push to remote repository
 	 *
@@ -47,49 +378,522 @@ public abstract class AbstractSyncCommand extends AbstractChangeCommand {
 	 *             if changes could not be committed or pushed
 	 */
 	protected void commitAndPush() throws OvcsException {
+		final FileRepository fileRepository = getRepoForCurrentDir();
 		try {
-			final FileRepository fileRepository = getRepoForCurrentDir();
 			final Git git = new Git(fileRepository);
-			final Status status = git.status().setProgressMonitor(new TextProgressMonitor()).call();
-			if (!status.isClean()) {
-				git.add().addFilepattern(".").call();
-				git.commit().setMessage("initial synchronization").setAll(true).call();
+			if (commitChanges(git, SYNC_COMMIT_MESSAGE)) {
 				doPush(git);
 			}
 		} catch (final GitAPIException e) {
 			throw new OvcsException("Unable to commit to git repo: " + e.getMessage(), e);
+		} finally {
+			fileRepository.close();
+		}
+	}
+
+	/**
+	 * Commit all changes in the working directory to the local repository
+	 *
+	 * @param git
+	 *            the local git repository
+	 * @param message
+	 *            the commit message
+	 * @return true if changes were committed, false if the working directory
+	 *         was clean
+	 * @throws OvcsException
+	 *             if changes could not be committed
+	 */
+	protected boolean commitChanges(final Git git, final String message) throws OvcsException {
+		try {
+			final Repository repository = git.getRepository();
+			final Metrics metrics = getMetrics();
+			final Status status;
+			try (Metrics.Timer timer = metrics.start(Metrics.GIT_STATUS)) {
+				status = git.status().setWorkingTreeIt(newWorkingTreeIterator(repository))
+						.setProgressMonitor(new TextProgressMonitor()).call();
+			}
+			final List<String> updatedPaths = new ArrayList<>();
+			for (final String path : status.getUntracked()) {
+				if (!ChangedFileOutputStream.isTempFile(path)) {
+					updatedPaths.add(path);
+				}
+			}
+			updatedPaths.addAll(status.getModified());
+			if (updatedPaths.isEmpty() && status.getMissing().isEmpty()) {
+				return false;
+			}
+			try (Metrics.Timer timer = metrics.start(Metrics.GIT_ADD)) {
+				GitUtils.updateIndex(repository, updatedPaths, status.getMissing());
+			}
+			try (Metrics.Timer timer = metrics.start(Metrics.GIT_COMMIT)) {
+				git.commit().setMessage(message).call();
+			}
+			return true;
+		} catch (final IOException | GitAPIException e) {
+			throw new OvcsException("Unable to commit to git repo: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Determines which objects changed since the last synchronization
+	 *
+	 * @param previous
+	 *            the watermarks stored by the last synchronization
+	 * @param current
+	 *            the current watermarks
+	 * @return the names of all objects that are new or whose last DDL time
+	 *         changed
+	 */
+	protected List<String> getChangedObjects(final Map<String, String> previous, final Map<String, String> current) {
+		final List<String> changed = new ArrayList<>();
+		for (final Map.Entry<String, String> entry : current.entrySet()) {
+			if (!entry.getValue().equals(previous.get(entry.getKey()))) {
+				changed.add(entry.getKey());
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Determines which objects were dropped since the last synchronization
+	 *
+	 * @param previous
+	 *            the watermarks stored by the last synchronization
+	 * @param current
+	 *            the current watermarks
+	 * @return the names of all objects that no longer exist
+	 */
+	protected List<String> getDroppedObjects(final Map<String, String> previous, final Map<String, String> current) {
+		final List<String> dropped = new ArrayList<>();
+		for (final String name : previous.keySet()) {
+			if (!current.containsKey(name)) {
+				dropped.add(name);
+			}
 		}
+		return dropped;
 	}
 
 	/**
-	 * Fetch the source of all schema objects from the database and writes it to
-	 * the local repository
-	 * 
+	 * Remove the files of dropped objects from the working directory, or from
+	 * the commit being built when committing directly
+	 *
+	 * @param workingDir
+	 *            the working directory of the local git repository
+	 * @param names
+	 *            the names of the dropped objects
+	 * @throws OvcsException
+	 *             if a file cannot be removed
+	 */
+	protected void removeSchemaObjects(final Path workingDir, final List<String> names) throws OvcsException {
+		final DirectCommit commit = directCommit;
+		for (final String name : names) {
+			if (commit == null) {
+				removeSchemaObject(workingDir, name, true);
+			} else if (commit.remove(getLayout(workingDir).getPath(name))) {
+				System.out.println(String.format("Removing %s ", name));
+			}
+		}
+	}
+
+	/**
+	 * Selects the objects whose DDL differs from the committed source, by
+	 * comparing hashes computed by the database with hashes of the committed
+	 * files
+	 *
+	 * @param conn
+	 *            the database connection to the managed schema, with the
+	 *            DBMS_METADATA session transforms applied
+	 * @param workingDir
+	 *            the working directory of the local git repository
+	 * @param names
+	 *            the names of the candidate objects, or null for all objects
+	 * @return the names of the objects to fetch, or the candidate objects if
+	 *         there is no commit to compare with or the database cannot
+	 *         compute the hashes
+	 * @throws OvcsException
+	 *             if the committed files cannot be read
+	 */
+	private List<String> filterByDdlHash(final Connection conn, final Path workingDir, final List<String> names)
+			throws OvcsException {
+		if (names != null && names.isEmpty()) {
+			return names;
+		}
+		final FileRepository repository = getRepoForCurrentDir();
+		try {
+			if (repository.resolve(Constants.HEAD) == null) {
+				return names;
+			}
+			final List<String> differing = new DdlHashFilter(repository, new HashManifest(getHashManifestFile(
+					workingDir)), getLayout(workingDir), loadGovernor).filter(conn, names);
+			System.out.println(String.format("%d objects differ from the committed source", differing.size()));
+			return differing;
+		} catch (final SQLException e) {
+			System.out.println("Unable to compare DDL hashes in the database, fetching all candidate objects: "
+					+ e.getMessage());
+			return names;
+		} catch (final IOException e) {
+			throw new OvcsException("Unable to read committed objects: " + e.getMessage(), e);
+		} finally {
+			repository.close();
+		}
+	}
+
+	/**
+	 * Selects the objects whose DDL differs from the committed source, and the
+	 * objects whose files hold uncommitted changes, which cannot be compared
+	 * with the committed source
+	 *
+	 * @param conn
+	 *            the database connection to the managed schema, with the
+	 *            DBMS_METADATA session transforms applied
+	 * @param workingDir
+	 *            the working directory of the local git repository
+	 * @param names
+	 *            the names of the candidate objects, or null for all objects
+	 * @param uncommitted
+	 *            the names of the objects whose files hold uncommitted changes
+	 * @return the names of the objects to fetch
+	 * @throws OvcsException
+	 *             if the committed files cannot be read
+	 */
+	private List<String> filterByDdlHash(final Connection conn, final Path workingDir, final List<String> names,
+			final Set<String> uncommitted) throws OvcsException {
+		if (names == null || uncommitted.isEmpty()) {
+			return filterByDdlHash(conn, workingDir, names);
+		}
+		final List<String> fetched = new ArrayList<>();
+		final List<String> candidates = new ArrayList<>();
+		for (final String name : names) {
+			if (uncommitted.contains(name)) {
+				fetched.add(name);
+			} else {
+				candidates.add(name);
+			}
+		}
+		fetched.addAll(filterByDdlHash(conn, workingDir, candidates));
+		return fetched;
+	}
+
+	/**
+	 * gets the file holding the content hashes of committed object files
+	 *
+	 * @param workingDir
+	 *            the working directory of the local git repository
+	 * @return the hash manifest file
+	 */
+	private File getHashManifestFile(final Path workingDir) {
+		return workingDir.resolve(".git").resolve("ovcs").resolve("hashes").toFile();
+	}
+
+	/**
+	 * gets the file holding the watermarks of the last synchronization
+	 *
+	 * @param workingDir
+	 *            the working directory of the local git repository
+	 * @return the watermark file
+	 */
+	protected File getWatermarkFile(final Path workingDir) {
+		return workingDir.resolve(".git").resolve("ovcs").resolve("watermarks").toFile();
+	}
+
+	/**
+	 * Reads the type of schema objects
+	 *
 	 * @param conn
 	 *            the database connection to the managed schema
+	 * @param names
+	 *            the names of the objects to read, or null to read all objects
+	 * @return the names of the schema objects, by object type
+	 * @throws OvcsException
+	 *             if the types could not be read
+	 */
+	private Map<String, List<String>> readObjectTypes(final Connection conn, final List<String> names)
+			throws OvcsException {
+		final Set<String> wanted = names == null ? null : new HashSet<>(names);
+		final Map<String, List<String>> objectsByType = new TreeMap<>();
+		try (PreparedStatement stmt = conn.prepareStatement(OBJECT_TYPES_QUERY)) {
+			try (ResultSet rset = executeQuery(stmt)) {
+				while (rset.next()) {
+					final String objectType = rset.getString("object_type");
+					final String name = rset.getString("object_name");
+					if (wanted != null && !wanted.contains(name)) {
+						continue;
+					}
+					List<String> typeNames = objectsByType.get(objectType);
+					if (typeNames == null) {
+						typeNames = new ArrayList<>();
+						objectsByType.put(objectType, typeNames);
+					}
+					typeNames.add(name);
+				}
+			}
+		} catch (final SQLException e) {
+			throw new OvcsException("Unable to fetch schema object types: " + e.getMessage(), e);
+		}
+		return objectsByType;
+	}
+
+	/**
+	 * Reads the last DDL time of all schema objects
+	 *
+	 * @param conn
+	 *            the database connection to the managed schema
+	 * @return a map of object name to last DDL time
+	 * @throws OvcsException
+	 *             if the times could not be read
+	 */
+	protected Map<String, String> readDdlTimes(final Connection conn) throws OvcsException {
+		final Map<String, String> ddlTimes = new HashMap<>();
+		try (PreparedStatement stmt = conn.prepareStatement(DDL_TIMES_QUERY)) {
+			try (ResultSet rset = executeQuery(stmt)) {
+				while (rset.next()) {
+					ddlTimes.put(rset.getString("object_name"), rset.getString("last_ddl_time"));
+				}
+			}
+		} catch (final SQLException e) {
+			throw new OvcsException("Unable to fetch schema object times: " + e.getMessage(), e);
+		}
+		return ddlTimes;
+	}
+
+	/**
+	 * Fetch the source of schema objects from the database and writes it to
+	 * the local repository. When the parallelism setting is greater than one,
+	 * the objects are split by hash of their name and fetched concurrently,
+	 * each partition on its own connection.
+	 * <p>
+	 * The last DDL time of every object is saved after each successful fetch.
+	 * In incremental mode, only objects that are new or whose last DDL time
+	 * moved since the last fetch are retrieved. A full fetch is performed if
+	 * the saved times are missing or unreadable.
+	 * <p>
+	 * When the bulk fetch size setting is configured, objects are fetched with
+	 * a DBMS_METADATA handle per object type instead of get_ddl.
+	 *
+	 * @param session
+	 *            the database session of the command. Additional connections
+	 *            to the same schema are opened for parallel fetches.
+	 * @param workingDir
+	 *            the working directory of the local git repository
+	 * @param incremental
+	 *            true to only fetch objects changed since the last fetch,
+	 *            false to fetch all objects
+	 * @throws OvcsException
+	 *             if changes could not be fecthed from the database or written
+	 *             to the local repository
+	 */
+	protected void writeSchemaObjects(final DatabaseSession session, final Path workingDir,
+			final boolean incremental) throws OvcsException {
+		final WatermarkStore watermarkStore = new WatermarkStore(getWatermarkFile(workingDir));
+		System.out.println("Fetching objects");
+		Map<String, String> previous = null;
+		if (incremental) {
+			previous = watermarkStore.load();
+			if (previous == null) {
+				System.out.println("No valid watermarks from a previous synchronization, fetching all objects");
+			}
+		}
+		final Map<String, String> current;
+		try {
+			final Connection conn = session.getMetadataConnection();
+			current = readDdlTimes(conn);
+			final List<String> names = previous == null ? null : getChangedObjects(previous, current);
+			final List<String> dropped = previous == null ? Collections.<String> emptyList() : getDroppedObjects(
+					previous, current);
+			if (names != null) {
+				System.out.println(String.format("%d objects changed and %d dropped since the last synchronization",
+						names.size(), dropped.size()));
+			}
+			fetchSchemaObjects(session, workingDir, names);
+			removeSchemaObjects(workingDir, dropped);
+		} catch (final SQLException e) {
+			throw new OvcsException("Unable to fetch schema objects: " + e.getMessage(), e);
+		}
+		System.out.println(String.format("%d objects written, %d unchanged", getWrittenCount(), getUnchangedCount()));
+		try {
+			watermarkStore.store(current);
+		} catch (final IOException e) {
+			throw new OvcsException("Unable to save synchronization watermarks: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Fetch schema objects from the database and write them to the local
+	 * repository
+	 *
+	 * @param session
+	 *            the database session of the command. Additional connections
+	 *            to the same schema are opened for parallel fetches.
 	 * @param workingDir
 	 *            the working directory of the local git repository
+	 * @param names
+	 *            the names of the objects to fetch, or null for all objects
 	 * @throws OvcsException
 	 *             if changes could not be fecthed from the database or written
 	 *             to the local repository
 	 */
-	protected void writeSchemaObjects(final Connection conn, final Path workingDir) throws OvcsException {
+	protected void fetchSchemaObjects(final DatabaseSession session, final Path workingDir, final List<String> names)
+			throws OvcsException {
+		fetchSchemaObjects(session, workingDir, names, Collections.<String> emptySet());
+	}
+
+	/**
+	 * Fetch schema objects from the database and write them to the local
+	 * repository. Objects whose files hold uncommitted changes are fetched
+	 * even when hash-compare finds their DDL equal to the committed source,
+	 * since their files may no longer hold the committed source.
+	 *
+	 * @param session
+	 *            the database session of the command. Additional connections
+	 *            to the same schema are opened for parallel fetches.
+	 * @param workingDir
+	 *            the working directory of the local git repository
+	 * @param names
+	 *            the names of the objects to fetch, or null for all objects
+	 * @param uncommitted
+	 *            the names of the objects whose files hold uncommitted changes
+	 * @throws OvcsException
+	 *             if changes could not be fecthed from the database or written
+	 *             to the local repository
+	 */
+	protected void fetchSchemaObjects(final DatabaseSession session, final Path workingDir,
+			final List<String> names, final Set<String> uncommitted) throws OvcsException {
+		final LoadGovernor governor = readLoadLimits(workingDir, getParallelism());
+		final int parallelism = governor.isLimited() ? governor.getMaxSessions() : getParallelism();
+		final int batchSize = getIntSetting(Settings.BULK_FETCH_SIZE, 0);
+		loadGovernor = governor;
 		try {
-			System.out.println("Fetching objects");
-			try (CallableStatement stmt = conn
-					.prepareCall("begin\n"
-							+ "DBMS_METADATA.SET_TRANSFORM_PARAM(DBMS_METADATA.SESSION_TRANSFORM,'STORAGE',false);\n"
-							+ "DBMS_METADATA.SET_TRANSFORM_PARAM(DBMS_METADATA.SESSION_TRANSFORM,'TABLESPACE',false);\n"
-							+ "DBMS_METADATA.SET_TRANSFORM_PARAM(DBMS_METADATA.SESSION_TRANSFORM,'SEGMENT_ATTRIBUTES',false);\nend;")) {
-
-				stmt.execute();
-			}
-			try (PreparedStatement stmt = conn
-					.prepareStatement("select object_type, object_name, dbms_metadata.get_ddl(object_type, object_name) src "
-							+ " from user_objects where object_type not like '% BODY' and object_name not like 'OVCS#'")) {
-				try (ResultSet rset = stmt.executeQuery()) {
-					while (rset.next()) {
-						writeSchemaObject(workingDir, rset.getString("object_name"), rset.getString("src"), true);
+			final Connection conn = session.getMetadataConnection();
+			List<String> fetched = names;
+			if (getBooleanSetting(Settings.HASH_COMPARE, false)) {
+				fetched = filterByDdlHash(conn, workingDir, fetched, uncommitted);
+			}
+			final FetchPlan plan = new FetchPlan(fetched, batchSize > 0 ? MetadataFetcher.plan(readObjectTypes(conn,
+					fetched), fetched == null) : null, batchSize);
+			startWritePipeline(workingDir);
+			try {
+				if (parallelism <= 1) {
+					writeSchemaObjects(conn, workingDir, 1, 0, plan);
+				} else if (!plan.isEmpty()) {
+					writeSchemaObjects(session.getConnectionString(), workingDir, parallelism, plan);
+				}
+				finishWritePipeline();
+			} finally {
+				closeWritePipeline();
+			}
+		} catch (final SQLException e) {
+			throw new OvcsException("Unable to fetch schema objects: " + e.getMessage(), e);
+		} finally {
+			loadGovernor = LoadGovernor.UNLIMITED;
+		}
+		if (governor.isLimited()) {
+			System.out.println(governor.getStatistics());
+		}
+	}
+
+	/**
+	 * reads the limits on the load extraction may put on the database
+	 *
+	 * @param workingDir
+	 *            the working directory of the local git repository
+	 * @param parallelism
+	 *            the number of connections fetching objects concurrently
+	 *            without limits
+	 * @return the governor enforcing the limits
+	 * @throws OvcsException
+	 *             if the limits file cannot be read or is not valid
+	 */
+	private LoadGovernor readLoadLimits(final Path workingDir, final int parallelism) throws OvcsException {
+		try {
+			return LoadGovernor.load(workingDir.toFile(), parallelism, getMetrics());
+		} catch (final IOException e) {
+			throw new OvcsException("Unable to read load limits: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Fetch schema objects concurrently, each partition on its own connection
+	 *
+	 * @param connectionString
+	 *            the Oracle DB connection string to the managed schema
+	 * @param workingDir
+	 *            the working directory of the local git repository
+	 * @param parallelism
+	 *            the number of partitions and connections
+	 * @param plan
+	 *            the objects to fetch
+	 * @throws OvcsException
+	 *             if changes could not be fecthed from the database or written
+	 *             to the local repository
+	 */
+	private void writeSchemaObjects(final String connectionString, final Path workingDir, final int parallelism,
+			final FetchPlan plan) throws OvcsException {
+		final ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+		try {
+			final List<Future<Void>> futures = new ArrayList<>();
+			for (int partition = 0; partition < parallelism; ++partition) {
+				futures.add(executor.submit(new PartitionFetcher(connectionString, workingDir, parallelism,
+						partition, plan)));
+			}
+			for (final Future<Void> future : futures) {
+				future.get();
+			}
+		} catch (final ExecutionException e) {
+			if (e.getCause() instanceof OvcsException) {
+				throw (OvcsException) e.getCause();
+			}
+			throw new OvcsException("Unable to fetch schema objects: " + e.getCause().getMessage(), e.getCause());
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new OvcsException("Interrupted while fetching schema objects", e);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Fetch the source of one partition of the schema objects from the
+	 * database and writes it to the local repository
+	 *
+	 * @param conn
+	 *            the database connection to the managed schema, with the
+	 *            DBMS_METADATA session transforms applied
+	 * @param workingDir
+	 *            the working directory of the local git repository
+	 * @param partitions
+	 *            the total number of partitions, 1 to fetch all objects
+	 * @param partition
+	 *            the partition to fetch, between 0 and partitions - 1
+	 * @param plan
+	 *            the objects to fetch. When names or DBMS_METADATA requests
+	 *            are given, every partitions-th one is fetched, starting with
+	 *            the partition-th.
+	 * @throws OvcsException
+	 *             if changes could not be fecthed from the database or written
+	 *             to the local repository
+	 */
+	private void writeSchemaObjects(final Connection conn, final Path workingDir, final int partitions,
+			final int partition, final FetchPlan plan) throws OvcsException {
+		try {
+			if (plan.requests != null) {
+				final MetadataFetcher fetcher = new MetadataFetcher(conn, plan.batchSize, loadGovernor);
+				for (int i = partition; i < plan.requests.size(); i += partitions) {
+					writeSchemaObjects(conn, fetcher, plan.requests.get(i), workingDir);
+				}
+			} else if (plan.names == null) {
+				final String query = partitions > 1 ? OBJECTS_QUERY + PARTITION_CLAUSE : OBJECTS_QUERY;
+				try (PreparedStatement stmt = conn.prepareStatement(query)) {
+					if (partitions > 1) {
+						stmt.setInt(1, partitions);
+						stmt.setInt(2, partition);
+					}
+					writeSchemaObjects(stmt, workingDir);
+				}
+			} else {
+				try (PreparedStatement stmt = conn.prepareStatement(OBJECTS_QUERY + NAME_CLAUSE)) {
+					for (int i = partition; i < plan.names.size(); i += partitions) {
+						stmt.setString(1, plan.names.get(i));
+						writeSchemaObjects(stmt, workingDir);
 					}
 				}
 			}
@@ -98,4 +902,153 @@ public abstract class AbstractSyncCommand extends AbstractChangeCommand {
 		}
 	}
 
+	/**
+	 * Fetch the source of objects of a single type with DBMS_METADATA, falling
+	 * back to get_ddl if DBMS_METADATA does not support the object type
+	 *
+	 * @param conn
+	 *            the database connection to the managed schema
+	 * @param fetcher
+	 *            the DBMS_METADATA fetcher
+	 * @param request
+	 *            the objects to fetch
+	 * @param workingDir
+	 *            the working directory of the local git repository
+	 * @throws SQLException
+	 *             if the objects could not be fetched
+	 * @throws OvcsException
+	 *             if the objects could not be written to the local repository
+	 */
+	private void writeSchemaObjects(final Connection conn, final MetadataFetcher fetcher,
+			final MetadataFetcher.Request request, final Path workingDir) throws SQLException, OvcsException {
+		final boolean fetched = fetcher.fetch(request, new MetadataFetcher.DocumentHandler() {
+
+			@Override
+			public void handle(final String objectName, final Reader source) throws OvcsException {
+				storeSchemaObject(workingDir, objectName, source);
+			}
+		});
+		if (fetched) {
+			return;
+		}
+		if (request.getNames() == null) {
+			try (PreparedStatement stmt = conn.prepareStatement(OBJECTS_QUERY + TYPE_CLAUSE)) {
+				stmt.setString(1, request.getObjectType());
+				writeSchemaObjects(stmt, workingDir);
+			}
+		} else {
+			try (PreparedStatement stmt = conn.prepareStatement(OBJECTS_QUERY + TYPE_CLAUSE + NAME_CLAUSE)) {
+				stmt.setString(1, request.getObjectType());
+				for (final String name : request.getNames()) {
+					stmt.setString(2, name);
+					writeSchemaObjects(stmt, workingDir);
+				}
+			}
+		}
+	}
+
+	private void startWritePipeline(final Path workingDir) throws OvcsException {
+		final int writeThreads = getIntSetting(Settings.WRITE_THREADS, 0);
+		if (writeThreads <= 0) {
+			return;
+		}
+		writePipeline = new WritePipeline(writeThreads, writeThreads * QUEUED_OBJECTS_PER_WRITER,
+				new WritePipeline.Sink() {
+
+					@Override
+					public void write(final String objectName, final SpillBuffer source) throws OvcsException {
+						storeSchemaObject(workingDir, objectName, source);
+					}
+				});
+	}
+
+	private void finishWritePipeline() throws OvcsException {
+		final WritePipeline pipeline = writePipeline;
+		if (pipeline != null) {
+			pipeline.finish();
+			System.out.println(pipeline.getStatistics());
+		}
+	}
+
+	private void closeWritePipeline() {
+		final WritePipeline pipeline = writePipeline;
+		if (pipeline != null) {
+			writePipeline = null;
+			pipeline.close();
+		}
+	}
+
+	private void storeSchemaObject(final Path workingDir, final String objectName, final Reader source)
+			throws OvcsException {
+		final WritePipeline pipeline = writePipeline;
+		if (pipeline != null) {
+			try (Metrics.Timer timer = getMetrics().start(Metrics.FETCH)) {
+				pipeline.submit(objectName, source);
+			}
+			return;
+		}
+		if (directCommit == null) {
+			writeSchemaObject(workingDir, objectName, source, true);
+			return;
+		}
+		try (SpillBuffer buffer = new SpillBuffer(SpillBuffer.DEFAULT_THRESHOLD)) {
+			try (Metrics.Timer timer = getMetrics().start(Metrics.FETCH)) {
+				buffer.write(source == null ? new StringReader("") : source);
+			}
+			storeSchemaObject(workingDir, objectName, buffer);
+		} catch (final IOException e) {
+			throw new OvcsException(String.format("Unable to read %s: %s", objectName, e.getMessage()), e);
+		}
+	}
+
+	private void storeSchemaObject(final Path workingDir, final String objectName, final SpillBuffer source)
+			throws OvcsException {
+		try {
+			final DirectCommit commit = directCommit;
+			if (commit == null) {
+				try (Reader reader = source.openReader()) {
+					writeSchemaObject(workingDir, objectName, reader, source.getLength(), true);
+				}
+			} else {
+				final Metrics metrics = getMetrics();
+				final long start = System.nanoTime();
+				final boolean changed = commit.insert(getLayout(workingDir).getPath(objectName), source);
+				final long elapsed = System.nanoTime() - start;
+				metrics.addTime(Metrics.WRITE, elapsed);
+				metrics.record(Metrics.OBJECT_LATENCY, elapsed);
+				metrics.add(Metrics.BYTES_FETCHED, source.getLength());
+				if (changed) {
+					metrics.add(Metrics.BYTES_WRITTEN, source.getLength());
+				}
+				countWrite(objectName, changed, true);
+			}
+		} catch (final IOException e) {
+			throw new OvcsException(String.format("Unable to store %s: %s", objectName, e.getMessage()), e);
+		}
+	}
+
+	private void writeSchemaObjects(final PreparedStatement stmt, final Path workingDir) throws SQLException,
+			OvcsException {
+		final Metrics metrics = getMetrics();
+		final LoadGovernor governor = loadGovernor;
+		final ResultSet resultSet;
+		try (LoadGovernor.Permit permit = governor.acquire()) {
+			resultSet = executeQuery(stmt);
+		}
+		try (ResultSet rset = resultSet) {
+			while (true) {
+				final boolean found;
+				try (LoadGovernor.Permit permit = governor.acquire();
+						Metrics.Timer timer = metrics.start(Metrics.FETCH)) {
+					found = rset.next();
+					permit.add(found ? 1 : 0);
+				}
+				if (!found) {
+					break;
+				}
+				storeSchemaObject(workingDir, rset.getString("object_name"), rset.getCharacterStream("src"));
+			}
+		}
+	}
+
 }
@@ -54,6 +54,14 @@ public final class CommandFactory {
 			return new PushCommand();
 		case "sync":
 			return new SyncCommand();
+		case "sync-all":
+			return new SyncAllCommand();
+		case "watch":
+			return new WatchCommand();
+		case "layout":
+			return new LayoutCommand();
+		case "daemon":
+			return new DaemonCommand();
 		default:
 			return new UsageCommand();
 		}
@@ -23,6 +23,7 @@ import java.nio.charset.Charset;
 import java.sql.CallableStatement;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 
@@ -30,6 +31,9 @@ import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.internal.storage.file.FileRepository;
 
+import com.tenxdev.ovcs.GitUtils;
+import com.tenxdev.ovcs.Layout;
+import com.tenxdev.ovcs.Metrics;
 import com.tenxdev.ovcs.OvcsException;
 import com.tenxdev.ovcs.model.ChangeEntry;
 
@@ -56,23 +60,28 @@ public class CommitCommand extends AbstractChangeCommand {
 		}
 		System.out.println("Fetching changes from database...");
 		final FileRepository repository = getRepoForCurrentDir();
+		boolean succeeded = false;
 		try {
-			try (Connection conn = getDbConnectionForRepo(repository)) {
+			try (DatabaseSession session = openSession(repository)) {
 				final Git git = new Git(repository);
-				final List<ChangeEntry> changes = writeChanges(repository);
+				final List<ChangeEntry> changes = writeChanges(session, repository);
 				if (changes.isEmpty()) {
 					System.out.println("No changes have been made, ending session");
 				} else {
 					try {
-						for (final ChangeEntry changeEntry : changes) {
-							git.add().addFilepattern(changeEntry.getName().toUpperCase(Locale.getDefault()) + ".sql")
-									.call();
+						try (Metrics.Timer timer = getMetrics().start(Metrics.GIT_ADD)) {
+							stageChanges(repository, changes);
 						}
-						git.commit().setMessage(getCommitMessage()).setAll(true).call();
-					} catch (final GitAPIException e) {
+						final String message = getCommitMessage();
+						try (Metrics.Timer timer = getMetrics().start(Metrics.GIT_COMMIT)) {
+							git.commit().setMessage(message).call();
+						}
+						getDdlCache(repository).clear();
+					} catch (final IOException | GitAPIException e) {
 						throw new OvcsException("Unable to commit: " + e.getMessage(), e);
 					}
 				}
+				final Connection conn = session.getConnection();
 				try (CallableStatement stmt = conn.prepareCall("begin ovcs.handler.end_session; end;")) {
 					stmt.execute();
 					conn.commit();
@@ -100,12 +109,30 @@ public class CommitCommand extends AbstractChangeCommand {
 								+ "ovcs.handler.end_session from your schema and commit to bring the database into a consistent state.",
 						e);
 			}
+			succeeded = true;
 		} finally {
 			repository.close();
+			reportMetrics("commit", repository.getWorkTree().toPath(), succeeded);
 		}
 
 	}
 
+	private void stageChanges(final FileRepository repository, final List<ChangeEntry> changes) throws IOException,
+			OvcsException {
+		final Layout layout = getLayout(repository.getWorkTree().toPath());
+		final List<String> updatedPaths = new ArrayList<>();
+		final List<String> removedPaths = new ArrayList<>();
+		for (final ChangeEntry changeEntry : changes) {
+			final String path = layout.getPath(changeEntry.getName().toUpperCase(Locale.getDefault()));
+			if (changeEntry.isRemoved()) {
+				removedPaths.add(path);
+			} else {
+				updatedPaths.add(path);
+			}
+		}
+		GitUtils.updateIndex(repository, updatedPaths, removedPaths);
+	}
+
 	private String getCommitMessage() throws OvcsException {
 		System.out.println("Enter commit message, enter a single . at the start of a line to end:");
 		final BufferedReader reader = new BufferedReader(new InputStreamReader(System.in, Charset.defaultCharset()));
@@ -36,7 +36,13 @@ public class ConfigCommand extends AbstractOvcsCommand {
 	/**
 	 * list of valid configuration settings
 	 */
-	private static final List<String> KNOWN_KEYS = Arrays.asList(new String[] { Settings.ORACLE_DRIVER });
+	private static final List<String> KNOWN_KEYS = Arrays.asList(new String[] { Settings.ORACLE_DRIVER,
+			Settings.PARALLELISM, Settings.BULK_FETCH_SIZE, Settings.DAEMON_IDLE_TIMEOUT,
+			Settings.DIRECT_COMMIT, Settings.WRITE_THREADS, Settings.HASH_COMPARE, Settings.ROW_PREFETCH,
+			Settings.LOB_PREFETCH_SIZE, Settings.STATEMENT_CACHE_SIZE, Settings.NETWORK_COMPRESSION,
+			Settings.IN_MEMORY_COMPARE, Settings.DDL_CACHE_TTL, Settings.DDL_CACHE_SIZE, Settings.WATCH_INTERVAL,
+			Settings.WATCH_QUIET_PERIOD, Settings.METRICS_SUMMARY, Settings.METRICS_REPORT,
+			Settings.SESSION_STATISTICS });
 	/**
 	 * command usage
 	 */
@@ -57,10 +63,51 @@ public class ConfigCommand extends AbstractOvcsCommand {
 		final String value = args[2];
 		if (Settings.ORACLE_DRIVER.equals(key)) {
 			loadOracleJbcDriver(value);
+		} else if (Settings.PARALLELISM.equals(key)) {
+			validateNumber(key, value, 1);
+		} else if (Settings.BULK_FETCH_SIZE.equals(key) || Settings.WRITE_THREADS.equals(key)
+				|| Settings.LOB_PREFETCH_SIZE.equals(key) || Settings.STATEMENT_CACHE_SIZE.equals(key)
+				|| Settings.DDL_CACHE_TTL.equals(key) || Settings.DDL_CACHE_SIZE.equals(key)
+				|| Settings.WATCH_QUIET_PERIOD.equals(key)) {
+			validateNumber(key, value, 0);
+		} else if (Settings.ROW_PREFETCH.equals(key)) {
+			validateNumber(key, value, 1);
+		} else if (Settings.NETWORK_COMPRESSION.equals(key)) {
+			validateNetworkCompression(key, value);
+		} else if (Settings.DAEMON_IDLE_TIMEOUT.equals(key) || Settings.WATCH_INTERVAL.equals(key)) {
+			validateNumber(key, value, 1);
+		} else if (Settings.DIRECT_COMMIT.equals(key) || Settings.HASH_COMPARE.equals(key)
+				|| Settings.IN_MEMORY_COMPARE.equals(key) || Settings.METRICS_SUMMARY.equals(key)
+				|| Settings.SESSION_STATISTICS.equals(key)) {
+			validateBoolean(key, value);
 		}
 		storeSetting(key, value);
 	}
 
+	private void validateBoolean(final String key, final String value) throws OvcsException {
+		if (!"true".equals(value) && !"false".equals(value)) {
+			throw new OvcsException(String.format("Error: %s must be true or false", key));
+		}
+	}
+
+	private void validateNetworkCompression(final String key, final String value) throws OvcsException {
+		if (!"on".equals(value) && !"off".equals(value) && !"auto".equals(value)) {
+			throw new OvcsException(String.format("Error: %s must be on, off or auto", key));
+		}
+	}
+
+	private void validateNumber(final String key, final String value, final int minimum) throws OvcsException {
+		try {
+			if (Integer.parseInt(value) >= minimum) {
+				return;
+			}
+		} catch (final NumberFormatException e) {
+			// reported below
+		}
+		throw new OvcsException(String.format("Error: %s must be a number greater than or equal to %d", key,
+				minimum));
+	}
+
 	private void storeSetting(final String key, final String value) throws OvcsException {
 		try {
 			new SettingsStore(CONFIG_FOLDER_NAME).load().setSetting(key, value).store();
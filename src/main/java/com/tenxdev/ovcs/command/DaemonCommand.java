@@ -0,0 +1,82 @@
+/*
+ * Copyright 2015 Abed Tony BenBrahim <tony.benbrahim@10xdev.com> This file is
+ * part of OVCS.
+ *
+ * OVCS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OVCS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OVCS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tenxdev.ovcs.command;
+
+import java.io.IOException;
+
+import com.tenxdev.ovcs.OvcsException;
+import com.tenxdev.ovcs.Settings;
+import com.tenxdev.ovcs.UsageException;
+import com.tenxdev.ovcs.daemon.DaemonClient;
+import com.tenxdev.ovcs.daemon.DaemonServer;
+
+/**
+ * Command to run the ovcs daemon, which keeps the JVM, the Oracle driver,
+ * database connections and git repositories warm between commands, or to stop
+ * it
+ *
+ * @author Tony BenBrahim <tony.benbrahim@10xdev.com>
+ *
+ */
+public class DaemonCommand extends AbstractOvcsCommand {
+
+	/**
+	 * command usage
+	 */
+	private static final String USAGE = "    ovcs daemon [stop]";
+
+	/**
+	 * option to stop the running daemon
+	 */
+	private static final String STOP_OPTION = "stop";
+
+	/**
+	 * the default number of minutes the daemon waits for a command before
+	 * stopping
+	 */
+	private static final int DEFAULT_IDLE_TIMEOUT = 30;
+
+	/**
+	 * the number of milliseconds in a minute
+	 */
+	private static final long MILLIS_PER_MINUTE = 60 * 1000L;
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void execute(final String... args) throws OvcsException {
+		if (args.length == 2 && STOP_OPTION.equalsIgnoreCase(args[1])) {
+			if (DaemonClient.stop(CONFIG_FOLDER_NAME)) {
+				System.out.println("ovcs daemon stopped");
+			} else {
+				System.out.println("ovcs daemon is not running");
+			}
+			return;
+		}
+		if (args.length != 1) {
+			throw new UsageException(USAGE);
+		}
+		final int idleTimeout = getIntSetting(Settings.DAEMON_IDLE_TIMEOUT, DEFAULT_IDLE_TIMEOUT);
+		try {
+			new DaemonServer(CONFIG_FOLDER_NAME, idleTimeout * MILLIS_PER_MINUTE).run();
+		} catch (final IOException e) {
+			throw new OvcsException("Unable to run ovcs daemon: " + e.getMessage(), e);
+		}
+	}
+
+}
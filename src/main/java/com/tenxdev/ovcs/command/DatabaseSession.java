@@ -0,0 +1,128 @@
+/*
+ * Copyright 2015 Abed Tony BenBrahim <tony.benbrahim@10xdev.com> This file is
+ * part of OVCS.
+ *
+ * OVCS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OVCS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OVCS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tenxdev.ovcs.command;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import com.tenxdev.ovcs.OvcsException;
+
+/**
+ * The database connection used by a single command invocation. The connection
+ * is opened on first use and shared by all database work of the command, and
+ * the DBMS_METADATA session transforms are applied to it at most once.
+ *
+ * @author Tony BenBrahim <tony.benbrahim@10xdev.com>
+ *
+ */
+public class DatabaseSession implements AutoCloseable {
+
+	/**
+	 * the command that owns the session, used to open the connection
+	 */
+	private final AbstractOvcsCommand command;
+
+	/**
+	 * the Oracle DB connection string, in format user/password@host:port:sid
+	 */
+	private final String connectionString;
+
+	/**
+	 * the connection, null until first used
+	 */
+	private Connection connection;
+
+	/**
+	 * true once the DBMS_METADATA session transforms have been applied
+	 */
+	private boolean metadataTransformsSet;
+
+	/**
+	 * constructor
+	 *
+	 * @param command
+	 *            the command that owns the session
+	 * @param connectionString
+	 *            the Oracle DB connection string, in format
+	 *            user/password@host:port:sid
+	 */
+	DatabaseSession(final AbstractOvcsCommand command, final String connectionString) {
+		this.command = command;
+		this.connectionString = connectionString;
+	}
+
+	/**
+	 * close the connection, if it was opened
+	 *
+	 * @throws SQLException
+	 *             if the connection could not be closed
+	 */
+	@Override
+	public void close() throws SQLException {
+		if (connection != null) {
+			try {
+				connection.close();
+			} finally {
+				connection = null;
+			}
+		}
+	}
+
+	/**
+	 * gets the session's connection, opening it if needed
+	 *
+	 * @return the connection
+	 * @throws OvcsException
+	 *             if the connection could not be opened
+	 */
+	public Connection getConnection() throws OvcsException {
+		if (connection == null) {
+			connection = command.getConnection(connectionString);
+		}
+		return connection;
+	}
+
+	/**
+	 * gets the connection string of the session, to open additional
+	 * connections to the same schema
+	 *
+	 * @return the Oracle DB connection string
+	 */
+	public String getConnectionString() {
+		return connectionString;
+	}
+
+	/**
+	 * gets the session's connection, with the DBMS_METADATA session transforms
+	 * applied
+	 *
+	 * @return the connection
+	 * @throws OvcsException
+	 *             if the connection could not be opened
+	 * @throws SQLException
+	 *             if the transforms could not be applied
+	 */
+	public Connection getMetadataConnection() throws OvcsException, SQLException {
+		final Connection conn = getConnection();
+		if (!metadataTransformsSet) {
+			command.setMetadataTransforms(conn);
+			metadataTransformsSet = true;
+		}
+		return conn;
+	}
+
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2015 Abed Tony BenBrahim <tony.benbrahim@10xdev.com> This file is
+ * part of OVCS.
+ *
+ * OVCS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OVCS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OVCS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tenxdev.ovcs.command;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+
+import com.tenxdev.ovcs.HashManifest;
+import com.tenxdev.ovcs.Layout;
+import com.tenxdev.ovcs.LoadGovernor;
+import com.tenxdev.ovcs.OvcsException;
+
+/**
+ * Selects the schema objects whose DDL differs from the committed source, by
+ * comparing a SHA-1 hash of the DDL computed in the database with the hash of
+ * the committed file, so that only the DDL of differing objects has to be
+ * transferred. Hashes of committed files are cached by blob id in a manifest.
+ *
+ * @author Tony BenBrahim <tony.benbrahim@10xdev.com>
+ *
+ */
+final class DdlHashFilter {
+
+	/**
+	 * query returning the SHA-1 hash of the DDL of schema objects. Run on a
+	 * connection with the DBMS_METADATA session transforms applied, so that
+	 * the DDL hashed is the DDL that would be written. dbms_crypto hashes
+	 * CLOBs encoded in AL32UTF8, the encoding of object files.
+	 */
+	private static final String HASH_QUERY = "select object_name, "
+			+ " lower(rawtohex(dbms_crypto.hash(dbms_metadata.get_ddl(object_type, object_name), 3))) ddl_hash "
+			+ " from user_objects where object_type not like '% BODY' and object_name not like 'OVCS#'";
+
+	/**
+	 * restriction added to {@link #HASH_QUERY} to hash a single object
+	 */
+	private static final String NAME_CLAUSE = " and object_name = ?";
+
+	/**
+	 * the local git repository
+	 */
+	private final Repository repository;
+
+	/**
+	 * the manifest caching the hashes of committed files
+	 */
+	private final HashManifest manifest;
+
+	/**
+	 * the layout of object files
+	 */
+	private final Layout layout;
+
+	/**
+	 * the governor limiting the load of hash computations on the database
+	 */
+	private final LoadGovernor governor;
+
+	/**
+	 * constructor
+	 *
+	 * @param repository
+	 *            the local git repository
+	 * @param manifest
+	 *            the manifest caching the hashes of committed files
+	 * @param layout
+	 *            the layout of object files
+	 * @param governor
+	 *            the governor limiting the load of hash computations on the
+	 *            database
+	 */
+	DdlHashFilter(final Repository repository, final HashManifest manifest, final Layout layout,
+			final LoadGovernor governor) {
+		this.repository = repository;
+		this.manifest = manifest;
+		this.layout = layout;
+		this.governor = governor;
+	}
+
+	/**
+	 * select the objects whose DDL differs from the committed source
+	 *
+	 * @param conn
+	 *            the database connection to the managed schema, with the
+	 *            DBMS_METADATA session transforms applied
+	 * @param names
+	 *            the names of the candidate objects, or null for all objects
+	 * @return the names of the objects whose DDL differs from the committed
+	 *         source, or that are not committed
+	 * @throws SQLException
+	 *             if the hashes cannot be computed by the database, for
+	 *             example if the schema cannot execute dbms_crypto
+	 * @throws IOException
+	 *             if the committed files cannot be read
+	 * @throws OvcsException
+	 *             if interrupted while waiting for the load governor
+	 */
+	List<String> filter(final Connection conn, final List<String> names) throws SQLException, IOException,
+			OvcsException {
+		final Map<String, String> ddlHashes = readDdlHashes(conn, names);
+		final Map<String, ObjectId> committed = readCommittedBlobs();
+		final Map<String, String> contentHashes = manifest.load();
+		final int cachedHashes = contentHashes.size();
+		final List<String> differing = new ArrayList<>();
+		final ObjectReader reader = repository.newObjectReader();
+		try {
+			for (final Map.Entry<String, String> entry : ddlHashes.entrySet()) {
+				final ObjectId blobId = committed.get(entry.getKey());
+				if (blobId == null) {
+					differing.add(entry.getKey());
+					continue;
+				}
+				String contentHash = contentHashes.get(blobId.name());
+				if (contentHash == null) {
+					contentHash = hashBlob(reader, blobId);
+					contentHashes.put(blobId.name(), contentHash);
+				}
+				if (!contentHash.equals(entry.getValue())) {
+					differing.add(entry.getKey());
+				}
+			}
+		} finally {
+			reader.release();
+		}
+		if (contentHashes.size() != cachedHashes) {
+			manifest.store(contentHashes);
+		}
+		return differing;
+	}
+
+	private String hashBlob(final ObjectReader reader, final ObjectId blobId) throws IOException {
+		final MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (final NoSuchAlgorithmException e) {
+			throw new IOException("SHA-1 is not available", e);
+		}
+		final byte[] buffer = new byte[8192];
+		try (InputStream inputStream = reader.open(blobId, Constants.OBJ_BLOB).openStream()) {
+			int count = inputStream.read(buffer);
+			while (count != -1) {
+				digest.update(buffer, 0, count);
+				count = inputStream.read(buffer);
+			}
+		}
+		final StringBuilder hash = new StringBuilder();
+		for (final byte value : digest.digest()) {
+			hash.append(String.format("%02x", value));
+		}
+		return hash.toString();
+	}
+
+	private Map<String, ObjectId> readCommittedBlobs() throws IOException {
+		final Map<String, ObjectId> blobs = new HashMap<>();
+		final ObjectId headId = repository.resolve(Constants.HEAD);
+		if (headId == null) {
+			return blobs;
+		}
+		final RevWalk walk = new RevWalk(repository);
+		try {
+			final TreeWalk treeWalk = new TreeWalk(repository);
+			try {
+				treeWalk.addTree(walk.parseCommit(headId).getTree());
+				treeWalk.setRecursive(true);
+				while (treeWalk.next()) {
+					final String objectName = layout.getObjectName(treeWalk.getPathString());
+					if (objectName != null && FileMode.REGULAR_FILE.equals(treeWalk.getRawMode(0))) {
+						blobs.put(objectName, treeWalk.getObjectId(0));
+					}
+				}
+			} finally {
+				treeWalk.release();
+			}
+		} finally {
+			walk.dispose();
+		}
+		return blobs;
+	}
+
+	private Map<String, String> readDdlHashes(final Connection conn, final List<String> names) throws SQLException,
+			OvcsException {
+		final Map<String, String> hashes = new HashMap<>();
+		if (names == null) {
+			try (PreparedStatement stmt = conn.prepareStatement(HASH_QUERY)) {
+				readDdlHashes(stmt, hashes);
+			}
+		} else {
+			try (PreparedStatement stmt = conn.prepareStatement(HASH_QUERY + NAME_CLAUSE)) {
+				for (final String name : names) {
+					stmt.setString(1, name);
+					readDdlHashes(stmt, hashes);
+				}
+			}
+		}
+		return hashes;
+	}
+
+	private void readDdlHashes(final PreparedStatement stmt, final Map<String, String> hashes) throws SQLException,
+			OvcsException {
+		final ResultSet resultSet;
+		try (LoadGovernor.Permit permit = governor.acquire()) {
+			resultSet = stmt.executeQuery();
+		}
+		try (ResultSet rset = resultSet) {
+			boolean found = true;
+			while (found) {
+				try (LoadGovernor.Permit permit = governor.acquire()) {
+					found = rset.next();
+					if (found) {
+						permit.add(1);
+						hashes.put(rset.getString("object_name"), rset.getString("ddl_hash"));
+					}
+				}
+			}
+		}
+	}
+
+}
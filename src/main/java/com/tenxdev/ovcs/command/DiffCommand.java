@@ -16,20 +16,28 @@
  */
 package com.tenxdev.ovcs.command;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.List;
 import java.util.Locale;
 
 import org.eclipse.jgit.diff.DiffEntry;
 import org.eclipse.jgit.diff.DiffFormatter;
+import org.eclipse.jgit.diff.EditList;
+import org.eclipse.jgit.diff.HistogramDiff;
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.diff.RawTextComparator;
 import org.eclipse.jgit.internal.storage.file.FileRepository;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.treewalk.AbstractTreeIterator;
-import org.eclipse.jgit.treewalk.FileTreeIterator;
-import org.eclipse.jgit.treewalk.filter.PathFilter;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.WorkingTreeIterator;
 
 import com.tenxdev.ovcs.GitUtils;
 import com.tenxdev.ovcs.OvcsException;
+import com.tenxdev.ovcs.Settings;
 import com.tenxdev.ovcs.UsageException;
+import com.tenxdev.ovcs.model.SourceChange;
 
 /**
  * Implementation of diff command
@@ -52,36 +60,153 @@ public class DiffCommand extends AbstractChangeCommand {
 		if (args.length != 1 && args.length != 2) {
 			throw new UsageException(USAGE);
 		}
-		String targetObject = null;
+		String objectName = null;
 		if (args.length == 2) {
-			targetObject = args[1].toUpperCase(Locale.getDefault());
-			if (!targetObject.toLowerCase(Locale.getDefault()).endsWith(".sql")) {
-				targetObject = targetObject + ".sql";
+			objectName = args[1].toUpperCase(Locale.getDefault());
+			if (objectName.endsWith(".SQL")) {
+				objectName = objectName.substring(0, objectName.length() - ".SQL".length());
 			}
 		}
 		final FileRepository fileRepository = getRepoForCurrentDir();
+		boolean succeeded = false;
 		try {
-			writeChanges(fileRepository);
 			final DiffFormatter formatter = new DiffFormatter(System.out);
 			formatter.setNewPrefix("new/");
 			formatter.setOldPrefix("old/");
 			formatter.setRepository(fileRepository);
+			final String targetObject = objectName == null ? null : getLayout(
+					fileRepository.getWorkTree().toPath()).getPath(objectName);
+			if (getBooleanSetting(Settings.IN_MEMORY_COMPARE, false)) {
+				for (final SourceChange change : compareChanges(fileRepository, objectName)) {
+					formatTexts(formatter, change.getPath(), readBlob(fileRepository, change.getCommittedId()),
+							change.isRemoved() ? RawText.EMPTY_TEXT : new RawText(change.getCurrentSource()));
+				}
+				succeeded = true;
+				return;
+			}
 			if (targetObject != null) {
-				formatter.setPathFilter(PathFilter.create(targetObject));
+				writeChanges(fileRepository, objectName);
+				formatObject(fileRepository, formatter, targetObject);
+				succeeded = true;
+				return;
 			}
+			writeChanges(fileRepository);
 			final AbstractTreeIterator commitTreeIterator = GitUtils.prepareHeadTreeParser(fileRepository);
-			final FileTreeIterator workTreeIterator = new FileTreeIterator(fileRepository);
+			final WorkingTreeIterator workTreeIterator = newWorkingTreeIterator(fileRepository);
 			final List<DiffEntry> diffEntries = formatter.scan(commitTreeIterator, workTreeIterator);
 
 			for (final DiffEntry entry : diffEntries) {
 				System.out.println("Entry: " + entry);
 				formatter.format(entry);
 			}
+			succeeded = true;
 		} catch (final IOException e) {
 			throw new OvcsException("Unable to generate diff: " + e.getMessage(), e);
 		} finally {
 			fileRepository.close();
+			reportMetrics("diff", fileRepository.getWorkTree().toPath(), succeeded);
+		}
+	}
+
+	/**
+	 * formats the differences between the committed and the working copy of a
+	 * single file, without scanning the rest of the commit or working tree
+	 *
+	 * @param repository
+	 *            the local git repository
+	 * @param formatter
+	 *            the formatter to write the differences to
+	 * @param path
+	 *            the path of the file
+	 * @throws IOException
+	 *             if either copy could not be read
+	 */
+	private void formatObject(final FileRepository repository, final DiffFormatter formatter, final String path)
+			throws IOException {
+		final File file = new File(repository.getWorkTree(), path);
+		formatTexts(formatter, path, readCommitted(repository, path), file.isFile() ? new RawText(file)
+				: RawText.EMPTY_TEXT);
+	}
+
+	/**
+	 * formats the differences between two versions of a file
+	 *
+	 * @param formatter
+	 *            the formatter to write the differences to
+	 * @param path
+	 *            the path of the file
+	 * @param committed
+	 *            the committed text, or an empty text if the file is new
+	 * @param current
+	 *            the current text, or an empty text if the file was removed
+	 * @throws IOException
+	 *             if the differences could not be written
+	 */
+	private void formatTexts(final DiffFormatter formatter, final String path, final RawText committed,
+			final RawText current) throws IOException {
+		final EditList edits = new HistogramDiff().diff(RawTextComparator.DEFAULT, committed, current);
+		if (edits.isEmpty()) {
+			return;
+		}
+		System.out.println(String.format("diff --git old/%s new/%s", path, path));
+		System.out.println("--- " + (committed == RawText.EMPTY_TEXT ? "/dev/null" : "old/" + path));
+		System.out.println("+++ " + (current == RawText.EMPTY_TEXT ? "/dev/null" : "new/" + path));
+		System.out.flush();
+		formatter.format(edits, committed, current);
+		formatter.flush();
+	}
+
+	/**
+	 * reads the committed copy of a file
+	 *
+	 * @param repository
+	 *            the local git repository
+	 * @param path
+	 *            the path of the file
+	 * @return the committed text, or an empty text if the file is not in HEAD
+	 * @throws IOException
+	 *             if the commit could not be read
+	 */
+	private RawText readCommitted(final FileRepository repository, final String path) throws IOException {
+		final ObjectId headTree = repository.resolve("HEAD^{tree}");
+		if (headTree == null) {
+			return RawText.EMPTY_TEXT;
+		}
+		final TreeWalk walk = TreeWalk.forPath(repository, path, headTree);
+		if (walk == null) {
+			return RawText.EMPTY_TEXT;
+		}
+		try {
+			return readBlob(repository, walk.getObjectId(0));
+		} finally {
+			walk.release();
+		}
+	}
+
+	/**
+	 * reads a blob as text
+	 *
+	 * @param repository
+	 *            the local git repository
+	 * @param blobId
+	 *            the id of the blob, or null for an empty text
+	 * @return the text of the blob
+	 * @throws IOException
+	 *             if the blob could not be read
+	 */
+	private RawText readBlob(final FileRepository repository, final ObjectId blobId) throws IOException {
+		if (blobId == null) {
+			return RawText.EMPTY_TEXT;
 		}
+		return new RawText(repository.open(blobId).getCachedBytes(Integer.MAX_VALUE));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected boolean usesDdlCache() {
+		return true;
 	}
 
 }
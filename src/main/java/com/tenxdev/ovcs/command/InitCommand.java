@@ -5,7 +5,6 @@ import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.sql.Connection;
 import java.sql.SQLException;
 
 import org.eclipse.jgit.api.CreateBranchCommand.SetupUpstreamMode;
@@ -59,12 +58,11 @@ public class InitCommand extends AbstractSyncCommand {
 		final String gitServer = args[2];
 		final Path workingDir = getWorkingDirectory();
 		initGitRepo(workingDir, gitServer, connectionString);
-		try (Connection conn = getConnection(connectionString)) {
-			writeSchemaObjects(conn, workingDir);
+		try (DatabaseSession session = new DatabaseSession(this, connectionString)) {
+			synchronize(session, workingDir, false);
 		} catch (final SQLException e) {
-			throw new OvcsException("Unable to connect to database: " + e.getMessage(), e);
+			throw new OvcsException("Unable to close database connection: " + e.getMessage(), e);
 		}
-		commitAndPush();
 	}
 
 	private Path getWorkingDirectory() throws OvcsException {
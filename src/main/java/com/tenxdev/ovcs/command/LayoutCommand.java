@@ -0,0 +1,189 @@
+/*
+ * Copyright 2015 Abed Tony BenBrahim <tony.benbrahim@10xdev.com> This file is
+ * part of OVCS.
+ *
+ * OVCS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OVCS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OVCS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tenxdev.ovcs.command;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.Status;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheBuilder;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.internal.storage.file.FileRepository;
+
+import com.tenxdev.ovcs.GitUtils;
+import com.tenxdev.ovcs.Layout;
+import com.tenxdev.ovcs.OvcsException;
+import com.tenxdev.ovcs.UsageException;
+
+/**
+ * Command to display the layout of object files, or to move all object files
+ * to a new layout. Files are moved in a single commit without changing their
+ * content, so that git records the moves as renames and file history is
+ * preserved.
+ *
+ * @author Tony BenBrahim <tony.benbrahim@10xdev.com>
+ *
+ */
+public class LayoutCommand extends AbstractOvcsCommand {
+
+	/**
+	 * command usage
+	 */
+	private static final String USAGE = "    ovcs layout [flat | prefix length | hash buckets]";
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void execute(final String... args) throws OvcsException {
+		if (args.length > 3) {
+			throw new UsageException(USAGE);
+		}
+		final FileRepository repository = getRepoForCurrentDir();
+		try {
+			final Layout current = getLayout(repository.getWorkTree().toPath());
+			if (args.length == 1) {
+				System.out.println("Object file layout: " + current);
+				return;
+			}
+			final Layout target = parseLayout(args);
+			if (target.equals(current)) {
+				System.out.println("The object files already use the " + target + " layout");
+				return;
+			}
+			migrate(repository, current, target);
+		} finally {
+			repository.close();
+		}
+	}
+
+	private Layout parseLayout(final String... args) throws UsageException {
+		try {
+			return new Layout(args[1], args.length == 3 ? Integer.parseInt(args[2]) : 0);
+		} catch (final IllegalArgumentException e) {
+			throw new UsageException(USAGE + "\n" + e.getMessage());
+		}
+	}
+
+	/**
+	 * move all object files from their current layout to a new layout, then
+	 * commit and push the moves
+	 *
+	 * @param repository
+	 *            the local git repository
+	 * @param current
+	 *            the current layout
+	 * @param target
+	 *            the new layout
+	 * @throws OvcsException
+	 *             if the working directory has uncommitted changes, or files
+	 *             could not be moved or committed
+	 */
+	private void migrate(final FileRepository repository, final Layout current, final Layout target)
+			throws OvcsException {
+		final Git git = new Git(repository);
+		try {
+			final Status status = git.status().setWorkingTreeIt(newWorkingTreeIterator(repository)).call();
+			if (!status.isClean()) {
+				throw new OvcsException("The working directory has uncommitted changes, "
+						+ "run ovcs sync or ovcs commit before changing the layout");
+			}
+			final Map<String, String> moves = moveIndexEntries(repository, current, target);
+			target.store(repository.getWorkTree());
+			GitUtils.updateIndex(repository, Collections.singleton(Layout.FILE_NAME),
+					Collections.<String> emptyList());
+			git.commit().setMessage(String.format("change object file layout from %s to %s", current, target))
+					.call();
+			System.out.println(String.format("%d object files moved to the %s layout", moves.size(), target));
+		} catch (final IOException | GitAPIException e) {
+			throw new OvcsException("Unable to change the object file layout: " + e.getMessage(), e);
+		}
+		try {
+			doPush(git);
+		} catch (final GitAPIException e) {
+			throw new OvcsException(String.format("The layout change has been committed, but was not sent to the "
+					+ "remote repository%nPlease run the ovcs push command to retry sending to the remote "
+					+ "repository%nError: %s", e.getMessage()), e);
+		}
+	}
+
+	/**
+	 * move the index entries and working files of object files to their path
+	 * in a new layout. Entries keep their blob id and stat information, so
+	 * that the moved files are not hashed again.
+	 *
+	 * @param repository
+	 *            the local git repository
+	 * @param current
+	 *            the current layout
+	 * @param target
+	 *            the new layout
+	 * @return the moved files, new paths by old path
+	 * @throws IOException
+	 *             if the index or the files could not be updated
+	 */
+	private Map<String, String> moveIndexEntries(final FileRepository repository, final Layout current,
+			final Layout target) throws IOException {
+		final Map<String, String> moves = new TreeMap<>();
+		final DirCache dirCache = repository.lockDirCache();
+		try {
+			final DirCacheBuilder builder = dirCache.builder();
+			for (int i = 0; i < dirCache.getEntryCount(); i++) {
+				final DirCacheEntry entry = dirCache.getEntry(i);
+				final String objectName = current.getObjectName(entry.getPathString());
+				final String path = objectName == null ? entry.getPathString() : target.getPath(objectName);
+				if (path.equals(entry.getPathString())) {
+					builder.add(entry);
+				} else {
+					final DirCacheEntry moved = new DirCacheEntry(path);
+					moved.copyMetaData(entry);
+					builder.add(moved);
+					moves.put(entry.getPathString(), path);
+				}
+			}
+			builder.finish();
+			final File workTree = repository.getWorkTree();
+			for (final Map.Entry<String, String> move : moves.entrySet()) {
+				final File destination = new File(workTree, move.getValue());
+				final File parent = destination.getParentFile();
+				if (!parent.isDirectory() && !parent.mkdirs()) {
+					throw new IOException("Unable to create directory " + parent);
+				}
+				Files.move(new File(workTree, move.getKey()).toPath(), destination.toPath());
+			}
+			for (final String path : moves.keySet()) {
+				final File parent = new File(workTree, path).getParentFile();
+				if (!parent.equals(workTree)) {
+					// only succeeds once the directory is empty
+					parent.delete();
+				}
+			}
+			builder.commit();
+		} finally {
+			dirCache.unlock();
+		}
+		return moves;
+	}
+
+}
@@ -0,0 +1,490 @@
+/*
+ * Copyright 2015 Abed Tony BenBrahim <tony.benbrahim@10xdev.com> This file is
+ * part of OVCS.
+ *
+ * OVCS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OVCS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OVCS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tenxdev.ovcs.command;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+import java.sql.CallableStatement;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import com.tenxdev.ovcs.LoadGovernor;
+import com.tenxdev.ovcs.OvcsException;
+
+/**
+ * Fetches the DDL of schema objects with the DBMS_METADATA programmatic
+ * interface. A single metadata handle is opened for each object type and the
+ * transforms are applied once to the handle, instead of once per object as
+ * dbms_metadata.get_ddl does. Documents are returned in batches, each batch in
+ * a single round trip, and are streamed to the handler one at a time.
+ *
+ * @author Tony BenBrahim <tony.benbrahim@10xdev.com>
+ *
+ */
+final class MetadataFetcher {
+
+	/**
+	 * Receives each fetched document
+	 */
+	interface DocumentHandler {
+
+		/**
+		 * handle a fetched document
+		 *
+		 * @param objectName
+		 *            the name of the database object
+		 * @param source
+		 *            a reader for the DDL of the database object, valid until
+		 *            the handler returns
+		 * @throws OvcsException
+		 *             if the document could not be processed
+		 */
+		void handle(String objectName, Reader source) throws OvcsException;
+	}
+
+	/**
+	 * Reads a single document from the character stream of a batch
+	 */
+	private static final class DocumentReader extends Reader {
+
+		/**
+		 * the character stream of the batch
+		 */
+		private final Reader batchReader;
+
+		/**
+		 * the number of characters of the document not yet read
+		 */
+		private long remaining;
+
+		/**
+		 * constructor
+		 *
+		 * @param batchReader
+		 *            the character stream of the batch, positioned at the
+		 *            start of the document
+		 * @param length
+		 *            the length of the document, in characters
+		 */
+		DocumentReader(final Reader batchReader, final long length) {
+			super();
+			this.batchReader = batchReader;
+			this.remaining = length;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void close() {
+			// the batch stream is closed when the whole batch has been read
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int read(final char[] cbuf, final int off, final int len) throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			final int count = batchReader.read(cbuf, off, (int) Math.min(len, remaining));
+			if (count == -1) {
+				throw new EOFException("Unexpected end of DBMS_METADATA batch");
+			}
+			remaining -= count;
+			return count;
+		}
+
+		/**
+		 * position the batch stream at the start of the next document,
+		 * skipping any part of this document that was not read
+		 *
+		 * @throws IOException
+		 *             if the batch stream cannot be read
+		 */
+		void skipRemaining() throws IOException {
+			final char[] buffer = new char[SKIP_BUFFER_SIZE];
+			while (read(buffer, 0, buffer.length) != -1) {
+				continue;
+			}
+		}
+	}
+
+	/**
+	 * A set of objects of the same type to fetch with a single metadata handle
+	 */
+	static final class Request {
+
+		/**
+		 * the object type, as found in user_objects
+		 */
+		private final String objectType;
+
+		/**
+		 * the names of the objects to fetch, or null to fetch all objects of
+		 * the type
+		 */
+		private final List<String> names;
+
+		/**
+		 * constructor
+		 *
+		 * @param objectType
+		 *            the object type, as found in user_objects
+		 * @param names
+		 *            the names of the objects to fetch, or null to fetch all
+		 *            objects of the type
+		 */
+		Request(final String objectType, final List<String> names) {
+			this.objectType = objectType;
+			this.names = names;
+		}
+
+		/**
+		 * gets the names of the objects to fetch
+		 *
+		 * @return the names of the objects to fetch, or null to fetch all
+		 *         objects of the type
+		 */
+		List<String> getNames() {
+			return names;
+		}
+
+		/**
+		 * gets the object type
+		 *
+		 * @return the object type, as found in user_objects
+		 */
+		String getObjectType() {
+			return objectType;
+		}
+	}
+
+	/**
+	 * the largest number of documents returned in a single round trip, limited
+	 * by the size of the PL/SQL varchar2 holding the names of the objects
+	 */
+	static final int MAX_BATCH_SIZE = 200;
+
+	/**
+	 * the size of the buffer used to skip unread parts of a document
+	 */
+	private static final int SKIP_BUFFER_SIZE = 4096;
+
+	/**
+	 * the largest number of names in a single name filter
+	 */
+	private static final int MAX_NAMES_PER_REQUEST = 100;
+
+	/**
+	 * Oracle error raised when DBMS_METADATA does not support an object type
+	 */
+	private static final int INVALID_INPUT_VALUE = 31600;
+
+	/**
+	 * object types whose DBMS_METADATA name is not the user_objects name with
+	 * spaces replaced by underscores
+	 */
+	private static final Map<String, String> METADATA_TYPES = new HashMap<>();
+
+	static {
+		METADATA_TYPES.put("DATABASE LINK", "DB_LINK");
+		METADATA_TYPES.put("JOB", "PROCOBJ");
+		METADATA_TYPES.put("PROGRAM", "PROCOBJ");
+		METADATA_TYPES.put("SCHEDULE", "PROCOBJ");
+	}
+
+	/**
+	 * opens a metadata handle for an object type and applies the same
+	 * transforms as
+	 * {@link AbstractOvcsCommand#setMetadataTransforms(Connection)}. Transform
+	 * parameters that do not apply to the object type are ignored.
+	 */
+	private static final String OPEN_BLOCK = "declare\n" //
+			+ "  h number;\n" //
+			+ "  th number;\n" //
+			+ "  invalid_param exception;\n" //
+			+ "  pragma exception_init(invalid_param, -31600);\n" //
+			+ "  procedure param(name varchar2) is\n" //
+			+ "  begin\n" //
+			+ "    dbms_metadata.set_transform_param(th, name, false);\n" //
+			+ "  exception\n" //
+			+ "    when invalid_param then null;\n" //
+			+ "  end;\n" //
+			+ "begin\n" //
+			+ "  h := dbms_metadata.open(?);\n" //
+			+ "  dbms_metadata.set_count(h, 1);\n" //
+			+ "  dbms_metadata.set_parse_item(h, 'NAME');\n" //
+			+ "  dbms_metadata.add_filter(h, 'NAME_EXPR', ?);\n" //
+			+ "  th := dbms_metadata.add_transform(h, 'DDL');\n" //
+			+ "  param('STORAGE');\n" //
+			+ "  param('TABLESPACE');\n" //
+			+ "  param('SEGMENT_ATTRIBUTES');\n" //
+			+ "  ? := h;\n" //
+			+ "end;";
+
+	/**
+	 * fetches up to a batch of documents from a metadata handle. The documents
+	 * are concatenated in a single CLOB, and a "length:name" line is returned
+	 * for each document. The statements making up one object (for example a
+	 * package specification and body) are concatenated, as get_ddl does.
+	 */
+	private static final String FETCH_BLOCK = "declare\n" //
+			+ "  docs sys.ku$_ddls;\n" //
+			+ "  doc clob;\n" //
+			+ "  buf clob;\n" //
+			+ "  names varchar2(32767);\n" //
+			+ "  name varchar2(4000);\n" //
+			+ "  n pls_integer := 0;\n" //
+			+ "begin\n" //
+			+ "  dbms_lob.createtemporary(buf, true);\n" //
+			+ "  while n < ? loop\n" //
+			+ "    docs := dbms_metadata.fetch_ddl(?);\n" //
+			+ "    exit when docs is null;\n" //
+			+ "    name := null;\n" //
+			+ "    dbms_lob.createtemporary(doc, true);\n" //
+			+ "    for i in 1 .. docs.count loop\n" //
+			+ "      if docs(i).ddltext is not null and dbms_lob.getlength(docs(i).ddltext) > 0 then\n" //
+			+ "        dbms_lob.append(doc, docs(i).ddltext);\n" //
+			+ "      end if;\n" //
+			+ "      if name is null and docs(i).parseditems is not null then\n" //
+			+ "        for j in 1 .. docs(i).parseditems.count loop\n" //
+			+ "          if docs(i).parseditems(j).item = 'NAME' then\n" //
+			+ "            name := docs(i).parseditems(j).value;\n" //
+			+ "          end if;\n" //
+			+ "        end loop;\n" //
+			+ "      end if;\n" //
+			+ "    end loop;\n" //
+			+ "    names := names || dbms_lob.getlength(doc) || ':' || name || chr(10);\n" //
+			+ "    if dbms_lob.getlength(doc) > 0 then\n" //
+			+ "      dbms_lob.append(buf, doc);\n" //
+			+ "    end if;\n" //
+			+ "    dbms_lob.freetemporary(doc);\n" //
+			+ "    n := n + 1;\n" //
+			+ "  end loop;\n" //
+			+ "  ? := names;\n" //
+			+ "  ? := buf;\n" //
+			+ "end;";
+
+	/**
+	 * closes a metadata handle
+	 */
+	private static final String CLOSE_BLOCK = "begin dbms_metadata.close(?); end;";
+
+	/**
+	 * gets the DBMS_METADATA object type for an object type
+	 *
+	 * @param objectType
+	 *            the object type, as found in user_objects
+	 * @return the DBMS_METADATA object type
+	 */
+	static String getMetadataType(final String objectType) {
+		final String metadataType = METADATA_TYPES.get(objectType);
+		return metadataType == null ? objectType.replace(' ', '_') : metadataType;
+	}
+
+	/**
+	 * Groups objects into requests, one per object type and at most
+	 * {@link #MAX_NAMES_PER_REQUEST} names
+	 *
+	 * @param objectsByType
+	 *            the names of the objects to fetch, by object type
+	 * @param allObjects
+	 *            true if the objects are all the objects of the schema, in
+	 *            which case requests are not restricted by name
+	 * @return the requests
+	 */
+	static List<Request> plan(final Map<String, List<String>> objectsByType, final boolean allObjects) {
+		final List<Request> requests = new ArrayList<>();
+		for (final Map.Entry<String, List<String>> entry : objectsByType.entrySet()) {
+			if (allObjects) {
+				requests.add(new Request(entry.getKey(), null));
+				continue;
+			}
+			final List<String> names = entry.getValue();
+			for (int start = 0; start < names.size(); start += MAX_NAMES_PER_REQUEST) {
+				requests.add(new Request(entry.getKey(), names.subList(start,
+						Math.min(start + MAX_NAMES_PER_REQUEST, names.size()))));
+			}
+		}
+		return requests;
+	}
+
+	/**
+	 * the database connection to the managed schema
+	 */
+	private final Connection conn;
+
+	/**
+	 * the number of documents fetched in a single round trip
+	 */
+	private final int batchSize;
+
+	/**
+	 * the governor limiting the load of batch fetches on the database
+	 */
+	private final LoadGovernor governor;
+
+	/**
+	 * constructor
+	 *
+	 * @param conn
+	 *            the database connection to the managed schema
+	 * @param batchSize
+	 *            the number of documents fetched in a single round trip
+	 */
+	MetadataFetcher(final Connection conn, final int batchSize) {
+		this(conn, batchSize, LoadGovernor.UNLIMITED);
+	}
+
+	/**
+	 * constructor
+	 *
+	 * @param conn
+	 *            the database connection to the managed schema
+	 * @param batchSize
+	 *            the number of documents fetched in a single round trip
+	 * @param governor
+	 *            the governor limiting the load of batch fetches on the
+	 *            database
+	 */
+	MetadataFetcher(final Connection conn, final int batchSize, final LoadGovernor governor) {
+		this.conn = conn;
+		this.batchSize = Math.max(1, Math.min(batchSize, MAX_BATCH_SIZE));
+		this.governor = governor;
+	}
+
+	/**
+	 * Fetch the DDL of a set of objects of the same type
+	 *
+	 * @param request
+	 *            the objects to fetch
+	 * @param handler
+	 *            receives each fetched document
+	 * @return true if the objects were fetched, false if the object type is
+	 *         not supported by DBMS_METADATA, in which case the objects must
+	 *         be fetched with get_ddl
+	 * @throws SQLException
+	 *             if the objects could not be fetched
+	 * @throws OvcsException
+	 *             if the handler failed
+	 */
+	boolean fetch(final Request request, final DocumentHandler handler) throws SQLException, OvcsException {
+		final long handle;
+		try {
+			handle = open(request);
+		} catch (final SQLException e) {
+			if (e.getErrorCode() == INVALID_INPUT_VALUE) {
+				return false;
+			}
+			throw e;
+		}
+		try {
+			try (CallableStatement stmt = conn.prepareCall(FETCH_BLOCK)) {
+				stmt.setInt(1, batchSize);
+				stmt.setLong(2, handle);
+				stmt.registerOutParameter(3, Types.VARCHAR);
+				stmt.registerOutParameter(4, Types.CLOB);
+				boolean more = true;
+				while (more) {
+					final String names;
+					try (LoadGovernor.Permit permit = governor.acquire()) {
+						stmt.execute();
+						names = stmt.getString(3);
+						permit.add(countEntries(names));
+					}
+					more = handleBatch(names, stmt.getClob(4), handler) == batchSize;
+				}
+			}
+		} finally {
+			try (CallableStatement stmt = conn.prepareCall(CLOSE_BLOCK)) {
+				stmt.setLong(1, handle);
+				stmt.execute();
+			}
+		}
+		return true;
+	}
+
+	private int countEntries(final String names) {
+		if (names == null || names.isEmpty()) {
+			return 0;
+		}
+		int count = names.charAt(names.length() - 1) == '\n' ? 0 : 1;
+		for (int i = names.indexOf('\n'); i != -1; i = names.indexOf('\n', i + 1)) {
+			count++;
+		}
+		return count;
+	}
+
+	private String getNameFilter(final List<String> names) {
+		if (names == null) {
+			return "!= 'OVCS#'";
+		}
+		final StringBuilder filter = new StringBuilder("IN (");
+		for (int i = 0; i < names.size(); ++i) {
+			if (i > 0) {
+				filter.append(',');
+			}
+			filter.append('\'').append(names.get(i).replace("'", "''")).append('\'');
+		}
+		return filter.append(')').toString();
+	}
+
+	private int handleBatch(final String names, final Clob docs, final DocumentHandler handler)
+			throws SQLException, OvcsException {
+		try {
+			if (names == null) {
+				return 0;
+			}
+			final String[] entries = names.split("\n");
+			try (Reader batchReader = docs.getCharacterStream()) {
+				for (final String entry : entries) {
+					final int separator = entry.indexOf(':');
+					final DocumentReader documentReader = new DocumentReader(batchReader, Long.parseLong(entry
+							.substring(0, separator)));
+					handler.handle(entry.substring(separator + 1), documentReader);
+					documentReader.skipRemaining();
+				}
+			} catch (final IOException e) {
+				throw new OvcsException("Unable to read DBMS_METADATA documents: " + e.getMessage(), e);
+			}
+			return entries.length;
+		} finally {
+			docs.free();
+		}
+	}
+
+	private long open(final Request request) throws SQLException {
+		try (CallableStatement stmt = conn.prepareCall(OPEN_BLOCK)) {
+			stmt.setString(1, getMetadataType(request.getObjectType()).toUpperCase(Locale.ENGLISH));
+			stmt.setString(2, getNameFilter(request.getNames()));
+			stmt.registerOutParameter(3, Types.NUMERIC);
+			stmt.execute();
+			return stmt.getLong(3);
+		}
+	}
+
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2015 Abed Tony BenBrahim <tony.benbrahim@10xdev.com> This file is
+ * part of OVCS.
+ *
+ * OVCS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OVCS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OVCS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tenxdev.ovcs.command;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.tenxdev.ovcs.Metrics;
+
+/**
+ * Captures the database side statistics of the sessions opened by a command.
+ * V$MYSTAT is read when a connection is opened and again when it is closed,
+ * and the difference is added to the command's metrics, next to the client
+ * side timings. The deltas include the two snapshot queries themselves, one
+ * round trip each.
+ *
+ * @author Tony BenBrahim <tony.benbrahim@10xdev.com>
+ *
+ */
+final class SessionStatistics {
+
+	/**
+	 * Takes the closing snapshot when the connection handed to a command is
+	 * closed
+	 */
+	private final class StatisticsConnectionHandler implements InvocationHandler {
+
+		/**
+		 * the connection being tracked
+		 */
+		private final Connection connection;
+		/**
+		 * the statistics when the connection was opened
+		 */
+		private final Map<String, Long> start;
+		/**
+		 * true once the command closed the connection
+		 */
+		private boolean closed;
+
+		/**
+		 * constructor
+		 *
+		 * @param connection
+		 *            the connection being tracked
+		 * @param start
+		 *            the statistics when the connection was opened
+		 */
+		StatisticsConnectionHandler(final Connection connection, final Map<String, Long> start) {
+			this.connection = connection;
+			this.start = start;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+			if ("close".equals(method.getName()) && (args == null || args.length == 0) && !closed) {
+				closed = true;
+				try {
+					if (!connection.isClosed()) {
+						addDeltas(start, snapshot(connection));
+					}
+				} catch (final SQLException e) {
+					// the session is unusable, its statistics are lost
+				}
+			}
+			try {
+				return method.invoke(connection, args);
+			} catch (final InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+	}
+
+	/**
+	 * the statistic reported in centiseconds, converted to milliseconds
+	 */
+	private static final String CPU_STATISTIC = "CPU used by this session";
+
+	/**
+	 * the session statistics captured, mapped to the metrics counters they are
+	 * added to
+	 */
+	private static final Map<String, String> STATISTICS = new LinkedHashMap<>();
+
+	static {
+		STATISTICS.put("SQL*Net roundtrips to/from client", Metrics.DB_ROUND_TRIPS);
+		STATISTICS.put("bytes sent via SQL*Net to client", Metrics.DB_BYTES_SENT);
+		STATISTICS.put("bytes received via SQL*Net from client", Metrics.DB_BYTES_RECEIVED);
+		STATISTICS.put(CPU_STATISTIC, Metrics.DB_CPU_MILLIS);
+		STATISTICS.put("session logical reads", Metrics.DB_LOGICAL_READS);
+		STATISTICS.put("lob reads", Metrics.DB_LOB_READS);
+	}
+
+	/**
+	 * query returning the name and value of the captured statistics for the
+	 * current session
+	 */
+	private static final String SNAPSHOT_QUERY = buildSnapshotQuery();
+
+	/**
+	 * the metrics the deltas are added to
+	 */
+	private final Metrics metrics;
+
+	/**
+	 * false once V$MYSTAT could not be read, so that the reason is displayed
+	 * only once per command
+	 */
+	private volatile boolean available = true;
+
+	/**
+	 * constructor
+	 *
+	 * @param metrics
+	 *            the metrics the deltas are added to
+	 */
+	SessionStatistics(final Metrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * takes the opening snapshot of a connection's session statistics
+	 *
+	 * @param connection
+	 *            the newly opened connection
+	 * @return a connection that adds the session statistics deltas to the
+	 *         metrics when closed, or the connection itself if the statistics
+	 *         cannot be read, usually because the schema has not been granted
+	 *         select on V$MYSTAT and V$STATNAME
+	 */
+	Connection track(final Connection connection) {
+		if (!available) {
+			return connection;
+		}
+		final Map<String, Long> start;
+		try {
+			start = snapshot(connection);
+		} catch (final SQLException e) {
+			synchronized (this) {
+				if (available) {
+					available = false;
+					System.out.println("Session statistics are not available: " + e.getMessage().trim());
+				}
+			}
+			return connection;
+		}
+		metrics.add(Metrics.DB_SESSIONS, 1);
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, new StatisticsConnectionHandler(connection, start));
+	}
+
+	/**
+	 * builds the query returning the captured statistics
+	 *
+	 * @return the query
+	 */
+	private static String buildSnapshotQuery() {
+		final StringBuilder query = new StringBuilder(
+				"select n.name, s.value from v$mystat s, v$statname n where n.statistic# = s.statistic# and n.name in (");
+		String separator = "";
+		for (final String name : STATISTICS.keySet()) {
+			query.append(separator).append('\'').append(name).append('\'');
+			separator = ", ";
+		}
+		return query.append(')').toString();
+	}
+
+	/**
+	 * reads the current values of the captured statistics
+	 *
+	 * @param connection
+	 *            the connection whose session is read
+	 * @return the value of each statistic, by statistic name
+	 * @throws SQLException
+	 *             if the statistics cannot be read
+	 */
+	private static Map<String, Long> snapshot(final Connection connection) throws SQLException {
+		final Map<String, Long> values = new HashMap<>();
+		try (PreparedStatement stmt = connection.prepareStatement(SNAPSHOT_QUERY);
+				ResultSet rset = stmt.executeQuery()) {
+			while (rset.next()) {
+				values.put(rset.getString("name"), rset.getLong("value"));
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * adds the difference between two snapshots to the metrics
+	 *
+	 * @param start
+	 *            the snapshot taken when the connection was opened
+	 * @param end
+	 *            the snapshot taken when the connection was closed
+	 */
+	private void addDeltas(final Map<String, Long> start, final Map<String, Long> end) {
+		for (final Map.Entry<String, String> statistic : STATISTICS.entrySet()) {
+			final Long startValue = start.get(statistic.getKey());
+			final Long endValue = end.get(statistic.getKey());
+			if (startValue != null && endValue != null) {
+				final long delta = endValue - startValue;
+				metrics.add(statistic.getValue(), CPU_STATISTIC.equals(statistic.getKey()) ? delta * 10 : delta);
+			}
+		}
+	}
+}
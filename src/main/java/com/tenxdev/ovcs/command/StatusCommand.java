@@ -16,7 +16,10 @@
  */
 package com.tenxdev.ovcs.command;
 
+import java.io.IOException;
+import java.util.List;
 import java.util.Set;
+import java.util.TreeSet;
 
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.Status;
@@ -24,8 +27,11 @@ import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.errors.NoWorkTreeException;
 import org.eclipse.jgit.internal.storage.file.FileRepository;
 
+import com.tenxdev.ovcs.GitUtils;
 import com.tenxdev.ovcs.OvcsException;
+import com.tenxdev.ovcs.Settings;
 import com.tenxdev.ovcs.UsageException;
+import com.tenxdev.ovcs.model.SourceChange;
 
 /**
  * implementation of status command
@@ -50,17 +56,26 @@ public class StatusCommand extends AbstractChangeCommand {
 		}
 		System.out.println("Fetching changes from database...");
 		final FileRepository repository = getRepoForCurrentDir();
+		boolean succeeded = false;
 		try {
-			writeChanges(repository);
-			displayChanges(repository);
+			if (getBooleanSetting(Settings.IN_MEMORY_COMPARE, false)) {
+				displayChanges(compareChanges(repository, null));
+			} else {
+				writeChanges(repository);
+				displayChanges(repository);
+			}
+			succeeded = true;
 		} finally {
 			repository.close();
+			reportMetrics("status", repository.getWorkTree().toPath(), succeeded);
 		}
 	}
 
 	private void displayChanges(final FileRepository repository) throws OvcsException {
 		try {
-			final Status status = new Git(repository).status().call();
+			GitUtils.refreshIndex(repository, getWrittenBlobs());
+			final Status status = new Git(repository).status().setWorkingTreeIt(newWorkingTreeIterator(repository))
+					.call();
 			if (status.isClean()) {
 				System.out.println("No changes.");
 			} else {
@@ -68,11 +83,33 @@ public class StatusCommand extends AbstractChangeCommand {
 				displayChanges("Modified", status.getModified());
 				displayChanges("Removed", status.getMissing());
 			}
-		} catch (NoWorkTreeException | GitAPIException e) {
+		} catch (NoWorkTreeException | IOException | GitAPIException e) {
 			throw new OvcsException("Unable to query git status: " + e.getMessage(), e);
 		}
 	}
 
+	private void displayChanges(final List<SourceChange> changes) {
+		if (changes.isEmpty()) {
+			System.out.println("No changes.");
+			return;
+		}
+		final Set<String> added = new TreeSet<>();
+		final Set<String> modified = new TreeSet<>();
+		final Set<String> removed = new TreeSet<>();
+		for (final SourceChange change : changes) {
+			if (change.isRemoved()) {
+				removed.add(change.getPath());
+			} else if (change.isAdded()) {
+				added.add(change.getPath());
+			} else {
+				modified.add(change.getPath());
+			}
+		}
+		displayChanges("Added", added);
+		displayChanges("Modified", modified);
+		displayChanges("Removed", removed);
+	}
+
 	private void displayChanges(final String title, final Set<String> filenames) {
 		if (!filenames.isEmpty()) {
 			System.out.println(title + ":");
@@ -82,4 +119,12 @@ public class StatusCommand extends AbstractChangeCommand {
 		}
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected boolean usesDdlCache() {
+		return true;
+	}
+
 }
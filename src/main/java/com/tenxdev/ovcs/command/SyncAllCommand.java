@@ -0,0 +1,300 @@
+/*
+ * Copyright 2015 Abed Tony BenBrahim <tony.benbrahim@10xdev.com> This file is
+ * part of OVCS.
+ *
+ * OVCS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OVCS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OVCS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tenxdev.ovcs.command;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import com.tenxdev.ovcs.OvcsException;
+import com.tenxdev.ovcs.Settings;
+import com.tenxdev.ovcs.UsageException;
+
+/**
+ * Command to synchronize several ovcs repositories concurrently, within a
+ * global limit on database connections and a separate limit on concurrent
+ * pushes. The Oracle driver is loaded once for all repositories, and a
+ * failure in one repository does not stop the others.
+ *
+ * @author Tony BenBrahim <tony.benbrahim@10xdev.com>
+ *
+ */
+public class SyncAllCommand extends AbstractOvcsCommand {
+
+	/**
+	 * The outcome of the synchronization of one repository
+	 */
+	private static final class SyncResult {
+
+		/**
+		 * the working directory of the repository
+		 */
+		private final File directory;
+		/**
+		 * the time taken by the synchronization, in milliseconds
+		 */
+		private final long elapsed;
+		/**
+		 * the error that stopped the synchronization, or null if it succeeded
+		 */
+		private final String error;
+
+		/**
+		 * constructor
+		 *
+		 * @param directory
+		 *            the working directory of the repository
+		 * @param elapsed
+		 *            the time taken by the synchronization, in milliseconds
+		 * @param error
+		 *            the error that stopped the synchronization, or null if it
+		 *            succeeded
+		 */
+		SyncResult(final File directory, final long elapsed, final String error) {
+			this.directory = directory;
+			this.elapsed = elapsed;
+			this.error = error;
+		}
+	}
+
+	/**
+	 * command usage
+	 */
+	private static final String USAGE = "    ovcs sync-all [--full] [--connections n] [--pushes n] directory...";
+
+	/**
+	 * option to fetch all objects instead of only the objects changed since
+	 * the last synchronization
+	 */
+	private static final String FULL_OPTION = "--full";
+
+	/**
+	 * option to set the maximum number of database connections open at once
+	 */
+	private static final String CONNECTIONS_OPTION = "--connections";
+
+	/**
+	 * option to set the maximum number of pushes running at once
+	 */
+	private static final String PUSHES_OPTION = "--pushes";
+
+	/**
+	 * the maximum number of database connections open at once, unless
+	 * specified
+	 */
+	private static final int DEFAULT_CONNECTIONS = 8;
+
+	/**
+	 * the maximum number of pushes running at once, unless specified
+	 */
+	private static final int DEFAULT_PUSHES = 2;
+
+	/**
+	 * selects directories holding a git repository
+	 */
+	private static final FileFilter REPOSITORY_FILTER = new FileFilter() {
+
+		@Override
+		public boolean accept(final File file) {
+			return file.isDirectory() && new File(file, ".git").exists();
+		}
+	};
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void execute(final String... args) throws OvcsException {
+		boolean full = false;
+		int maxConnections = DEFAULT_CONNECTIONS;
+		int maxPushes = DEFAULT_PUSHES;
+		final List<File> directories = new ArrayList<>();
+		for (int i = 1; i < args.length; i++) {
+			if (FULL_OPTION.equals(args[i])) {
+				full = true;
+			} else if (CONNECTIONS_OPTION.equals(args[i]) && i + 1 < args.length) {
+				maxConnections = parseLimit(args[++i]);
+			} else if (PUSHES_OPTION.equals(args[i]) && i + 1 < args.length) {
+				maxPushes = parseLimit(args[++i]);
+			} else if (args[i].startsWith("--")) {
+				throw new UsageException(USAGE);
+			} else {
+				// user.dir is set by the daemon for each command, but is not
+				// used by File to resolve relative paths on every JVM
+				directories.add(Paths.get(System.getProperty("user.dir")).resolve(args[i]).normalize().toFile());
+			}
+		}
+		if (directories.isEmpty()) {
+			throw new UsageException(USAGE);
+		}
+		final List<File> repositories = findRepositories(directories);
+		if (repositories.isEmpty()) {
+			throw new OvcsException("No git repositories found in " + directories);
+		}
+		final int parallelism = getIntSetting(Settings.PARALLELISM, 1);
+		final int connectionsPerSync = Math.min(maxConnections, parallelism <= 1 ? 1 : parallelism + 1);
+		final int concurrentSyncs = Math.min(repositories.size(), maxConnections / connectionsPerSync);
+		System.out.println(String.format("Synchronizing %d repositories, %d at a time", repositories.size(),
+				concurrentSyncs));
+		final long start = System.currentTimeMillis();
+		final List<SyncResult> results = synchronize(repositories, full ? new String[] { "sync", FULL_OPTION }
+				: new String[] { "sync" }, connectionsPerSync, concurrentSyncs, new Semaphore(maxPushes, true));
+		int failures = 0;
+		for (final SyncResult result : results) {
+			if (result.error != null) {
+				failures++;
+			}
+		}
+		System.out.println(String.format("Synchronized %d of %d repositories in %.1fs", results.size() - failures,
+				results.size(), (System.currentTimeMillis() - start) / 1000.0));
+		for (final SyncResult result : results) {
+			System.out.println(String.format("    %-30s %-6s %8.1fs%s", result.directory.getName(),
+					result.error == null ? "OK" : "FAILED", result.elapsed / 1000.0, result.error == null ? ""
+							: "  " + result.error));
+		}
+		if (failures > 0) {
+			throw new OvcsException(String.format("%d of %d repositories failed to synchronize", failures,
+					results.size()));
+		}
+	}
+
+	private List<File> findRepositories(final List<File> directories) {
+		final List<File> repositories = new ArrayList<>();
+		for (final File directory : directories) {
+			if (REPOSITORY_FILTER.accept(directory)) {
+				repositories.add(directory);
+			} else {
+				final File[] children = directory.listFiles(REPOSITORY_FILTER);
+				if (children != null) {
+					Arrays.sort(children);
+					repositories.addAll(Arrays.asList(children));
+				}
+			}
+		}
+		return repositories;
+	}
+
+	private int parseLimit(final String value) throws UsageException {
+		try {
+			final int limit = Integer.parseInt(value);
+			if (limit >= 1) {
+				return limit;
+			}
+		} catch (final NumberFormatException e) {
+			// reported below
+		}
+		throw new UsageException(USAGE);
+	}
+
+	/**
+	 * synchronize repositories concurrently. The output of each
+	 * synchronization is captured, and displayed when it completes.
+	 *
+	 * @param repositories
+	 *            the working directories of the repositories
+	 * @param syncArgs
+	 *            the arguments of the sync command
+	 * @param connectionsPerSync
+	 *            the maximum number of database connections of each
+	 *            synchronization
+	 * @param concurrentSyncs
+	 *            the number of synchronizations running at once
+	 * @param pushPermits
+	 *            the permits limiting the number of pushes running at once
+	 * @return the outcome of each synchronization, in repository order
+	 * @throws OvcsException
+	 *             if the synchronizations were interrupted
+	 */
+	private List<SyncResult> synchronize(final List<File> repositories, final String[] syncArgs,
+			final int connectionsPerSync, final int concurrentSyncs, final Semaphore pushPermits)
+			throws OvcsException {
+		final PrintStream console = System.out;
+		final PrintStream savedErr = System.err;
+		final ThreadOutputStream out = new ThreadOutputStream(console);
+		final ThreadOutputStream err = new ThreadOutputStream(savedErr);
+		System.setOut(new PrintStream(out, true));
+		System.setErr(new PrintStream(err, true));
+		final ExecutorService executor = Executors.newFixedThreadPool(concurrentSyncs);
+		try {
+			final List<Future<SyncResult>> futures = new ArrayList<>();
+			for (final File directory : repositories) {
+				futures.add(executor.submit(new Callable<SyncResult>() {
+
+					@Override
+					public SyncResult call() {
+						final ByteArrayOutputStream log = new ByteArrayOutputStream();
+						out.setTarget(log);
+						err.setTarget(log);
+						final long start = System.currentTimeMillis();
+						String error = null;
+						try {
+							final SyncCommand command = new SyncCommand();
+							command.setWorkingDirectory(directory);
+							command.setConnectionLimit(connectionsPerSync);
+							command.setPushPermits(pushPermits);
+							command.execute(syncArgs);
+						} catch (final OvcsException | RuntimeException e) {
+							error = e.getMessage() == null ? e.toString() : e.getMessage();
+							System.err.println(error);
+						} finally {
+							System.out.flush();
+							System.err.flush();
+							out.setTarget(null);
+							err.setTarget(null);
+						}
+						final SyncResult result = new SyncResult(directory, System.currentTimeMillis() - start, error);
+						synchronized (console) {
+							console.println(String.format("==> %s (%s)", directory, error == null ? "OK" : "FAILED"));
+							console.write(log.toByteArray(), 0, log.size());
+							console.flush();
+						}
+						return result;
+					}
+				}));
+			}
+			final List<SyncResult> results = new ArrayList<>();
+			for (final Future<SyncResult> future : futures) {
+				try {
+					results.add(future.get());
+				} catch (final ExecutionException e) {
+					throw new OvcsException("Unexpected error during synchronization: " + e.getCause().getMessage(),
+							e.getCause());
+				}
+			}
+			return results;
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new OvcsException("Synchronization interrupted", e);
+		} finally {
+			executor.shutdownNow();
+			System.setOut(console);
+			System.setErr(savedErr);
+		}
+	}
+
+}
@@ -18,7 +18,6 @@
 package com.tenxdev.ovcs.command;
 
 import java.io.File;
-import java.sql.Connection;
 import java.sql.SQLException;
 
 import org.eclipse.jgit.api.Git;
@@ -26,6 +25,7 @@ import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.internal.storage.file.FileRepository;
 import org.eclipse.jgit.lib.TextProgressMonitor;
 
+import com.tenxdev.ovcs.Metrics;
 import com.tenxdev.ovcs.OvcsException;
 import com.tenxdev.ovcs.UsageException;
 
@@ -41,25 +41,33 @@ public class SyncCommand extends AbstractSyncCommand {
 	/**
 	 * command usage
 	 */
-	private static final String USAGE = "    ovcs sync";
+	private static final String USAGE = "    ovcs sync [--full]";
+
+	/**
+	 * option to fetch all objects instead of only the objects changed since
+	 * the last synchronization
+	 */
+	private static final String FULL_OPTION = "--full";
 
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
 	public void execute(final String... args) throws OvcsException {
-		if (args.length != 1) {
+		if (args.length != 1 && (args.length != 2 || !FULL_OPTION.equals(args[1]))) {
 			throw new UsageException(USAGE);
 		}
+		final boolean incremental = args.length == 1;
 		final FileRepository repository = getRepoForCurrentDir();
 		try {
 			final File workingDirectory = repository.getWorkTree();
-			new Git(repository).pull().setProgressMonitor(new TextProgressMonitor()).call();
-			try (Connection conn = getDbConnectionForRepo(repository)) {
-				writeSchemaObjects(conn, workingDirectory.toPath());
-				commitAndPush();
+			try (Metrics.Timer timer = getMetrics().start(Metrics.GIT_PULL)) {
+				new Git(repository).pull().setProgressMonitor(new TextProgressMonitor()).call();
+			}
+			try (DatabaseSession session = openSession(repository)) {
+				synchronize(session, workingDirectory.toPath(), incremental);
 			} catch (final SQLException e) {
-				throw new OvcsException("Unable to connect to database: " + e.getMessage(), e);
+				throw new OvcsException("Unable to close database connection: " + e.getMessage(), e);
 			}
 		} catch (final GitAPIException e) {
 			throw new OvcsException("Unable to synchronize with remote repository: " + e.getMessage(), e);
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2015 Abed Tony BenBrahim <tony.benbrahim@10xdev.com> This file is
+ * part of OVCS.
+ *
+ * OVCS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OVCS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OVCS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tenxdev.ovcs.command;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream that sends the output of each thread to the stream set for
+ * that thread, or to a default stream. Threads started by a thread inherit its
+ * stream, so that the output of a command can be captured even when it uses
+ * worker threads.
+ *
+ * @author Tony BenBrahim <tony.benbrahim@10xdev.com>
+ *
+ */
+final class ThreadOutputStream extends OutputStream {
+
+	/**
+	 * the stream receiving the output of threads without a stream of their
+	 * own
+	 */
+	private final OutputStream defaultStream;
+
+	/**
+	 * the stream of the current thread
+	 */
+	private final InheritableThreadLocal<OutputStream> target = new InheritableThreadLocal<>();
+
+	/**
+	 * constructor
+	 *
+	 * @param defaultStream
+	 *            the stream receiving the output of threads without a stream
+	 *            of their own
+	 */
+	ThreadOutputStream(final OutputStream defaultStream) {
+		super();
+		this.defaultStream = defaultStream;
+	}
+
+	/**
+	 * sets the stream of the current thread, and of threads it starts
+	 * afterwards
+	 *
+	 * @param outputStream
+	 *            the stream, or null to use the default stream
+	 */
+	void setTarget(final OutputStream outputStream) {
+		if (outputStream == null) {
+			target.remove();
+		} else {
+			target.set(outputStream);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void flush() throws IOException {
+		getTarget().flush();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void write(final byte[] buffer, final int offset, final int length) throws IOException {
+		getTarget().write(buffer, offset, length);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void write(final int value) throws IOException {
+		getTarget().write(value);
+	}
+
+	private OutputStream getTarget() {
+		final OutputStream outputStream = target.get();
+		return outputStream == null ? defaultStream : outputStream;
+	}
+
+}
@@ -38,7 +38,11 @@ public class UsageCommand implements Command {
 				+ "    status          displays changed objects since start of session.\n"
 				+ "    diff            show detailed changes between database and last commit\n"
 				+ "    sync            synchronize the local repo with the database\n"
+				+ "    sync-all        synchronize several local repos concurrently.\n"
+				+ "    watch           continuously capture and commit database changes.\n"
 				+ "    commit          end a session, commit and send changes to remote repo.\n"
-				+ "    push            send changes to remote repo, if push failed during commit.\n");
+				+ "    push            send changes to remote repo, if push failed during commit.\n"
+				+ "    layout          show or change the directory layout of object files.\n"
+				+ "    daemon          run ovcs commands in a background process, or stop it.\n");
 	}
 }
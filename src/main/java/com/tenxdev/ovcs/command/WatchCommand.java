@@ -0,0 +1,273 @@
+/*
+ * Copyright 2015 Abed Tony BenBrahim <tony.benbrahim@10xdev.com> This file is
+ * part of OVCS.
+ *
+ * OVCS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OVCS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OVCS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tenxdev.ovcs.command;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.internal.storage.file.FileRepository;
+
+import com.tenxdev.ovcs.OvcsException;
+import com.tenxdev.ovcs.Settings;
+import com.tenxdev.ovcs.UsageException;
+import com.tenxdev.ovcs.WatermarkStore;
+
+/**
+ * Command to continuously capture DDL changes: the last DDL time of the schema
+ * objects is polled, changed objects are written to the working directory as
+ * soon as they are seen, and changes are committed once the schema has been
+ * quiet for a while, then pushed in the background.
+ *
+ * @author Tony BenBrahim <tony.benbrahim@10xdev.com>
+ *
+ */
+public class WatchCommand extends AbstractSyncCommand {
+
+	/**
+	 * command usage
+	 */
+	private static final String USAGE = "    ovcs watch";
+
+	/**
+	 * the number of seconds between two checks for DDL changes, unless
+	 * configured
+	 */
+	private static final int DEFAULT_INTERVAL = 10;
+
+	/**
+	 * the number of seconds without DDL changes before changes are committed,
+	 * unless configured
+	 */
+	private static final int DEFAULT_QUIET_PERIOD = 30;
+
+	/**
+	 * the number of milliseconds in a second
+	 */
+	private static final long MILLIS_PER_SECOND = 1000L;
+
+	/**
+	 * the maximum number of object names listed in a commit message
+	 */
+	private static final int MAX_NAMES_IN_MESSAGE = 10;
+
+	/**
+	 * true while a push is waiting to be run by the push executor
+	 */
+	private final AtomicBoolean pushQueued = new AtomicBoolean();
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void execute(final String... args) throws OvcsException {
+		if (args.length != 1) {
+			throw new UsageException(USAGE);
+		}
+		final long interval = getIntSetting(Settings.WATCH_INTERVAL, DEFAULT_INTERVAL) * MILLIS_PER_SECOND;
+		final long quietPeriod = getIntSetting(Settings.WATCH_QUIET_PERIOD, DEFAULT_QUIET_PERIOD)
+				* MILLIS_PER_SECOND;
+		final FileRepository repository = getRepoForCurrentDir();
+		final ExecutorService pushExecutor = Executors.newSingleThreadExecutor();
+		try {
+			final Path workingDir = repository.getWorkTree().toPath();
+			final WatermarkStore watermarkStore = new WatermarkStore(getWatermarkFile(workingDir));
+			if (watermarkStore.load() == null) {
+				try (DatabaseSession session = openSession(repository)) {
+					synchronize(session, workingDir, false);
+				} catch (final SQLException e) {
+					throw new OvcsException("Unable to close database connection: " + e.getMessage(), e);
+				}
+			}
+			final Git git = new Git(repository);
+			if (commitChanges(git, "changes captured by watch")) {
+				push(pushExecutor, git);
+			}
+			System.out.println(String.format("Watching for DDL changes every %d seconds, press Ctrl-C to stop",
+					interval / MILLIS_PER_SECOND));
+			watch(repository, watermarkStore, interval, quietPeriod, pushExecutor);
+		} finally {
+			pushExecutor.shutdown();
+			repository.close();
+		}
+	}
+
+	/**
+	 * polls the database for DDL changes until interrupted. Errors are
+	 * displayed, and the database connection is opened again on the next poll.
+	 *
+	 * @param repository
+	 *            the local git repository
+	 * @param watermarkStore
+	 *            the watermarks of the last objects captured
+	 * @param interval
+	 *            the number of milliseconds between two polls
+	 * @param quietPeriod
+	 *            the number of milliseconds without changes before changes
+	 *            are committed
+	 * @param pushExecutor
+	 *            the executor running pushes in the background
+	 */
+	private void watch(final FileRepository repository, final WatermarkStore watermarkStore, final long interval,
+			final long quietPeriod, final ExecutorService pushExecutor) {
+		final Path workingDir = repository.getWorkTree().toPath();
+		final Git git = new Git(repository);
+		final Set<String> pending = new TreeSet<>();
+		long lastChange = System.currentTimeMillis();
+		DatabaseSession session = null;
+		while (!Thread.currentThread().isInterrupted()) {
+			try {
+				if (session == null) {
+					session = openSession(repository);
+				}
+				if (captureChanges(session, workingDir, watermarkStore, pending)) {
+					lastChange = System.currentTimeMillis();
+				} else if (!pending.isEmpty() && System.currentTimeMillis() - lastChange >= quietPeriod) {
+					if (commitChanges(git, getCommitMessage(pending))) {
+						getDdlCache(repository).clear();
+						push(pushExecutor, git);
+					}
+					pending.clear();
+				}
+			} catch (final OvcsException e) {
+				System.err.println("Error: " + e.getMessage());
+				close(session);
+				session = null;
+			}
+			try {
+				Thread.sleep(interval);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		close(session);
+	}
+
+	/**
+	 * writes the objects changed since the last poll to the working directory,
+	 * and removes the files of dropped objects
+	 *
+	 * @param session
+	 *            the database session
+	 * @param workingDir
+	 *            the working directory of the local git repository
+	 * @param watermarkStore
+	 *            the watermarks of the last objects captured
+	 * @param pending
+	 *            the names of the objects captured since the last commit, to
+	 *            which changed and dropped objects are added
+	 * @return true if objects changed since the last poll, false otherwise
+	 * @throws OvcsException
+	 *             if the changes could not be fetched or written
+	 */
+	private boolean captureChanges(final DatabaseSession session, final Path workingDir,
+			final WatermarkStore watermarkStore, final Set<String> pending) throws OvcsException {
+		Map<String, String> previous = watermarkStore.load();
+		if (previous == null) {
+			System.out.println("No valid watermarks from a previous synchronization, fetching all objects");
+			previous = new HashMap<>();
+		}
+		final Map<String, String> current;
+		try {
+			current = readDdlTimes(session.getMetadataConnection());
+		} catch (final SQLException e) {
+			throw new OvcsException("Unable to read DDL times: " + e.getMessage(), e);
+		}
+		final List<String> changed = getChangedObjects(previous, current);
+		final List<String> dropped = getDroppedObjects(previous, current);
+		if (changed.isEmpty() && dropped.isEmpty()) {
+			return false;
+		}
+		if (!changed.isEmpty()) {
+			// objects captured since the last commit may have been changed back to
+			// their committed source, their files must be rewritten
+			fetchSchemaObjects(session, workingDir, changed, pending);
+		}
+		removeSchemaObjects(workingDir, dropped);
+		try {
+			watermarkStore.store(current);
+		} catch (final IOException e) {
+			throw new OvcsException("Unable to save synchronization watermarks: " + e.getMessage(), e);
+		}
+		pending.addAll(changed);
+		pending.addAll(dropped);
+		return true;
+	}
+
+	private void close(final DatabaseSession session) {
+		if (session != null) {
+			try {
+				session.close();
+			} catch (final SQLException e) {
+				System.err.println("Unable to close database connection: " + e.getMessage());
+			}
+		}
+	}
+
+	private String getCommitMessage(final Set<String> names) {
+		final StringBuilder message = new StringBuilder("changes captured by watch: ");
+		int count = 0;
+		for (final String name : names) {
+			if (count == MAX_NAMES_IN_MESSAGE) {
+				message.append(String.format(" and %d more", names.size() - count));
+				break;
+			}
+			message.append(count == 0 ? "" : ", ").append(name);
+			count++;
+		}
+		return message.toString();
+	}
+
+	/**
+	 * pushes to the remote repository in the background. Commits made while a
+	 * push is waiting are sent by that push.
+	 *
+	 * @param pushExecutor
+	 *            the executor running pushes
+	 * @param git
+	 *            the local git repository
+	 */
+	private void push(final ExecutorService pushExecutor, final Git git) {
+		if (!pushQueued.compareAndSet(false, true)) {
+			return;
+		}
+		pushExecutor.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				pushQueued.set(false);
+				try {
+					doPush(git);
+				} catch (final GitAPIException | RuntimeException e) {
+					System.err.println("Unable to push to the remote repository, will retry after the next commit: "
+							+ e.getMessage());
+				}
+			}
+		});
+	}
+
+}
@@ -0,0 +1,340 @@
+/*
+ * Copyright 2015 Abed Tony BenBrahim <tony.benbrahim@10xdev.com> This file is
+ * part of OVCS.
+ *
+ * OVCS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OVCS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OVCS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tenxdev.ovcs.command;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.tenxdev.ovcs.OvcsException;
+import com.tenxdev.ovcs.SpillBuffer;
+
+/**
+ * Overlaps fetching schema objects from the database with writing them. The
+ * fetching threads copy each source into a spill buffer and queue it, and a
+ * pool of writer threads drains the bounded queue. When the queue is full,
+ * fetching threads wait for the writers to catch up. Queue depth and wait
+ * times are collected for tuning.
+ *
+ * @author Tony BenBrahim <tony.benbrahim@10xdev.com>
+ *
+ */
+final class WritePipeline {
+
+	/**
+	 * Writes a queued object
+	 */
+	interface Sink {
+
+		/**
+		 * write a fetched object
+		 *
+		 * @param objectName
+		 *            the name of the database object
+		 * @param source
+		 *            the source of the database object, released after the
+		 *            sink returns
+		 * @throws OvcsException
+		 *             if the object could not be written
+		 */
+		void write(String objectName, SpillBuffer source) throws OvcsException;
+	}
+
+	/**
+	 * A fetched object waiting to be written
+	 */
+	private static final class QueuedObject {
+
+		/**
+		 * the name of the database object, null to stop a writer
+		 */
+		private final String objectName;
+		/**
+		 * the source of the database object
+		 */
+		private final SpillBuffer source;
+
+		/**
+		 * constructor
+		 *
+		 * @param objectName
+		 *            the name of the database object, null to stop a writer
+		 * @param source
+		 *            the source of the database object
+		 */
+		QueuedObject(final String objectName, final SpillBuffer source) {
+			this.objectName = objectName;
+			this.source = source;
+		}
+	}
+
+	/**
+	 * Takes objects from the queue and writes them, until stopped
+	 */
+	private final class Writer implements Runnable {
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void run() {
+			while (true) {
+				final QueuedObject queued;
+				try {
+					final long start = System.nanoTime();
+					queued = queue.take();
+					writerWait.addAndGet(System.nanoTime() - start);
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+				if (queued.objectName == null) {
+					return;
+				}
+				try {
+					if (failure == null) {
+						sink.write(queued.objectName, queued.source);
+					}
+				} catch (final OvcsException | RuntimeException e) {
+					fail(e);
+				} finally {
+					release(queued.source);
+				}
+			}
+		}
+	}
+
+	/**
+	 * the number of nanoseconds in a millisecond
+	 */
+	private static final long NANOS_PER_MILLI = 1000000L;
+
+	/**
+	 * objects fetched and not yet written
+	 */
+	private final BlockingQueue<QueuedObject> queue;
+
+	/**
+	 * the capacity of the queue
+	 */
+	private final int capacity;
+
+	/**
+	 * the writer threads
+	 */
+	private final ExecutorService writers;
+
+	/**
+	 * the completion of each writer thread
+	 */
+	private final List<Future<?>> writerFutures = new ArrayList<>();
+
+	/**
+	 * writes the queued objects
+	 */
+	private final Sink sink;
+
+	/**
+	 * the first exception thrown by a writer, null if none
+	 */
+	private volatile Exception failure;
+
+	/**
+	 * the number of objects queued
+	 */
+	private final AtomicLong queued = new AtomicLong();
+
+	/**
+	 * the sum of the queue depths seen when queuing objects
+	 */
+	private final AtomicLong depthTotal = new AtomicLong();
+
+	/**
+	 * the largest queue depth seen when queuing objects
+	 */
+	private final AtomicLong maxDepth = new AtomicLong();
+
+	/**
+	 * the time fetching threads waited on a full queue, in nanoseconds
+	 */
+	private final AtomicLong fetchWait = new AtomicLong();
+
+	/**
+	 * the time writer threads waited on an empty queue, in nanoseconds
+	 */
+	private final AtomicLong writerWait = new AtomicLong();
+
+	/**
+	 * constructor, starts the writer threads
+	 *
+	 * @param writerCount
+	 *            the number of writer threads
+	 * @param capacity
+	 *            the number of fetched objects that can wait to be written
+	 * @param sink
+	 *            writes the queued objects
+	 */
+	WritePipeline(final int writerCount, final int capacity, final Sink sink) {
+		this.capacity = capacity;
+		this.sink = sink;
+		queue = new ArrayBlockingQueue<>(capacity);
+		writers = Executors.newFixedThreadPool(writerCount);
+		for (int i = 0; i < writerCount; ++i) {
+			writerFutures.add(writers.submit(new Writer()));
+		}
+	}
+
+	/**
+	 * stop the writer threads and release objects not yet written. Does
+	 * nothing if the pipeline finished normally.
+	 */
+	void close() {
+		writers.shutdownNow();
+		QueuedObject remaining = queue.poll();
+		while (remaining != null) {
+			release(remaining.source);
+			remaining = queue.poll();
+		}
+	}
+
+	/**
+	 * wait for all queued objects to be written and stop the writer threads
+	 *
+	 * @throws OvcsException
+	 *             if an object could not be written
+	 */
+	void finish() throws OvcsException {
+		try {
+			for (int i = 0; i < writerFutures.size(); ++i) {
+				queue.put(new QueuedObject(null, null));
+			}
+			for (final Future<?> future : writerFutures) {
+				future.get();
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new OvcsException("Interrupted while writing schema objects", e);
+		} catch (final ExecutionException e) {
+			throw new OvcsException("Unable to write schema objects: " + e.getCause().getMessage(), e.getCause());
+		} finally {
+			writers.shutdown();
+		}
+		checkFailure();
+	}
+
+	/**
+	 * gets a summary of the queue statistics
+	 *
+	 * @return the number of objects queued, the average and largest queue
+	 *         depth, and the time spent waiting by each stage
+	 */
+	String getStatistics() {
+		final long count = queued.get();
+		return String.format("Write pipeline: %d objects, queue depth average %.1f, maximum %d of %d, "
+				+ "fetch waited %d ms on a full queue, writers waited %d ms on an empty queue", count,
+				count == 0 ? 0.0 : (double) depthTotal.get() / count, maxDepth.get(), capacity, fetchWait.get()
+						/ NANOS_PER_MILLI, writerWait.get() / NANOS_PER_MILLI);
+	}
+
+	/**
+	 * copy the source of an object and queue it to be written, waiting if the
+	 * queue is full
+	 *
+	 * @param objectName
+	 *            the name of the database object
+	 * @param source
+	 *            the source of the database object, only valid during the call.
+	 *            A null source is queued as an empty source.
+	 * @throws OvcsException
+	 *             if the source could not be read, or a previous object could
+	 *             not be written
+	 */
+	void submit(final String objectName, final Reader source) throws OvcsException {
+		checkFailure();
+		final SpillBuffer buffer = new SpillBuffer(SpillBuffer.DEFAULT_THRESHOLD);
+		try {
+			buffer.write(source == null ? new StringReader("") : source);
+			final QueuedObject queuedObject = new QueuedObject(objectName, buffer);
+			final int depth = queue.size();
+			if (!queue.offer(queuedObject)) {
+				final long start = System.nanoTime();
+				while (!queue.offer(queuedObject, 1, TimeUnit.SECONDS)) {
+					checkFailure();
+				}
+				fetchWait.addAndGet(System.nanoTime() - start);
+			}
+			queued.incrementAndGet();
+			depthTotal.addAndGet(depth);
+			updateMaxDepth(depth);
+		} catch (final IOException e) {
+			release(buffer);
+			throw new OvcsException(String.format("Unable to read %s: %s", objectName, e.getMessage()), e);
+		} catch (final InterruptedException e) {
+			release(buffer);
+			Thread.currentThread().interrupt();
+			throw new OvcsException("Interrupted while fetching schema objects", e);
+		} catch (final OvcsException e) {
+			release(buffer);
+			throw e;
+		}
+	}
+
+	private void checkFailure() throws OvcsException {
+		final Exception exception = failure;
+		if (exception instanceof OvcsException) {
+			throw (OvcsException) exception;
+		}
+		if (exception != null) {
+			throw new OvcsException("Unable to write schema objects: " + exception.getMessage(), exception);
+		}
+	}
+
+	private synchronized void fail(final Exception exception) {
+		if (failure == null) {
+			failure = exception;
+		}
+	}
+
+	private void release(final SpillBuffer buffer) {
+		if (buffer == null) {
+			return;
+		}
+		try {
+			buffer.close();
+		} catch (final IOException e) {
+			System.err.println("Unable to delete temporary file: " + e.getMessage());
+		}
+	}
+
+	private void updateMaxDepth(final long depth) {
+		long current = maxDepth.get();
+		while (depth > current && !maxDepth.compareAndSet(current, depth)) {
+			current = maxDepth.get();
+		}
+	}
+
+}
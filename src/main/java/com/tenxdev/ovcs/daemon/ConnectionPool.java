@@ -0,0 +1,282 @@
+/*
+ * Copyright 2015 Abed Tony BenBrahim <tony.benbrahim@10xdev.com> This file is
+ * part of OVCS.
+ *
+ * OVCS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OVCS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OVCS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tenxdev.ovcs.daemon;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Keeps database connections open between commands run by the ovcs daemon.
+ * Connections are keyed by connection string, validated before reuse, and
+ * closed after being idle for longer than the idle timeout. Package state is
+ * reset when a connection is returned, so each command starts with a clean
+ * session.
+ *
+ * @author Tony BenBrahim <tony.benbrahim@10xdev.com>
+ *
+ */
+public final class ConnectionPool {
+
+	/**
+	 * An idle connection and the time it was returned to the pool
+	 */
+	private static final class IdleConnection {
+
+		/**
+		 * the physical connection
+		 */
+		private final Connection connection;
+		/**
+		 * the time the connection was returned to the pool, in milliseconds
+		 */
+		private final long releasedAt;
+
+		/**
+		 * constructor
+		 *
+		 * @param connection
+		 *            the physical connection
+		 * @param releasedAt
+		 *            the time the connection was returned to the pool
+		 */
+		IdleConnection(final Connection connection, final long releasedAt) {
+			this.connection = connection;
+			this.releasedAt = releasedAt;
+		}
+	}
+
+	/**
+	 * Returns the physical connection to the pool when the connection handed
+	 * to a command is closed
+	 */
+	private final class PooledConnectionHandler implements InvocationHandler {
+
+		/**
+		 * the connection string the connection was opened with
+		 */
+		private final String connectionString;
+		/**
+		 * the physical connection
+		 */
+		private final Connection connection;
+		/**
+		 * true once the command closed the connection
+		 */
+		private boolean closed;
+
+		/**
+		 * constructor
+		 *
+		 * @param connectionString
+		 *            the connection string the connection was opened with
+		 * @param connection
+		 *            the physical connection
+		 */
+		PooledConnectionHandler(final String connectionString, final Connection connection) {
+			this.connectionString = connectionString;
+			this.connection = connection;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+			final boolean noArgs = args == null || args.length == 0;
+			if ("close".equals(method.getName()) && noArgs) {
+				if (!closed) {
+					closed = true;
+					release(connectionString, connection);
+				}
+				return null;
+			}
+			if ("isClosed".equals(method.getName()) && noArgs) {
+				return closed || connection.isClosed();
+			}
+			if (closed) {
+				throw new SQLException("Connection is closed");
+			}
+			try {
+				return method.invoke(connection, args);
+			} catch (final InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+	}
+
+	/**
+	 * the pool used by the running daemon, null when not running as a daemon
+	 */
+	private static volatile ConnectionPool instance;
+
+	/**
+	 * time allowed to validate an idle connection before reuse, in seconds
+	 */
+	private static final int VALIDATION_TIMEOUT = 5;
+
+	/**
+	 * gets the pool of the running daemon
+	 *
+	 * @return the pool, or null if not running as a daemon
+	 */
+	public static ConnectionPool getInstance() {
+		return instance;
+	}
+
+	/**
+	 * sets the pool of the running daemon
+	 *
+	 * @param pool
+	 *            the pool, or null when the daemon stops
+	 */
+	static void setInstance(final ConnectionPool pool) {
+		instance = pool;
+	}
+
+	/**
+	 * idle connections, by connection string
+	 */
+	private final Map<String, Deque<IdleConnection>> idle = new HashMap<>();
+
+	/**
+	 * the time after which an idle connection is closed, in milliseconds
+	 */
+	private final long idleTimeout;
+
+	/**
+	 * constructor
+	 *
+	 * @param idleTimeout
+	 *            the time after which an idle connection is closed, in
+	 *            milliseconds
+	 */
+	ConnectionPool(final long idleTimeout) {
+		this.idleTimeout = idleTimeout;
+	}
+
+	/**
+	 * take an idle connection from the pool
+	 *
+	 * @param connectionString
+	 *            the connection string of the schema
+	 * @return a valid connection, or null if there is no idle connection for
+	 *         the schema
+	 */
+	public Connection borrow(final String connectionString) {
+		while (true) {
+			final Connection connection;
+			synchronized (this) {
+				evictIdle();
+				final Deque<IdleConnection> connections = idle.get(connectionString);
+				if (connections == null || connections.isEmpty()) {
+					return null;
+				}
+				connection = connections.pop().connection;
+			}
+			try {
+				if (connection.isValid(VALIDATION_TIMEOUT)) {
+					return wrap(connectionString, connection);
+				}
+			} catch (final SQLException e) {
+				// discarded below
+			}
+			closeQuietly(connection);
+		}
+	}
+
+	/**
+	 * close all idle connections
+	 */
+	public synchronized void closeAll() {
+		for (final Deque<IdleConnection> connections : idle.values()) {
+			for (final IdleConnection idleConnection : connections) {
+				closeQuietly(idleConnection.connection);
+			}
+		}
+		idle.clear();
+	}
+
+	/**
+	 * wrap a newly opened connection, so that closing it returns it to the
+	 * pool
+	 *
+	 * @param connectionString
+	 *            the connection string the connection was opened with
+	 * @param connection
+	 *            the physical connection
+	 * @return the connection to hand to the command
+	 */
+	public Connection wrap(final String connectionString, final Connection connection) {
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, new PooledConnectionHandler(connectionString, connection));
+	}
+
+	private void closeQuietly(final Connection connection) {
+		try {
+			connection.close();
+		} catch (final SQLException e) {
+			System.err.println("Unable to close database connection: " + e.getMessage());
+		}
+	}
+
+	private void evictIdle() {
+		final long now = System.currentTimeMillis();
+		for (final Deque<IdleConnection> connections : idle.values()) {
+			final Iterator<IdleConnection> iterator = connections.iterator();
+			while (iterator.hasNext()) {
+				final IdleConnection idleConnection = iterator.next();
+				if (now - idleConnection.releasedAt > idleTimeout) {
+					iterator.remove();
+					closeQuietly(idleConnection.connection);
+				}
+			}
+		}
+	}
+
+	private void release(final String connectionString, final Connection connection) {
+		try {
+			if (!connection.getAutoCommit()) {
+				connection.rollback();
+			}
+			try (CallableStatement stmt = connection.prepareCall("begin dbms_session.reset_package; end;")) {
+				stmt.execute();
+			}
+		} catch (final SQLException e) {
+			closeQuietly(connection);
+			return;
+		}
+		synchronized (this) {
+			Deque<IdleConnection> connections = idle.get(connectionString);
+			if (connections == null) {
+				connections = new ArrayDeque<>();
+				idle.put(connectionString, connections);
+			}
+			connections.push(new IdleConnection(connection, System.currentTimeMillis()));
+		}
+	}
+
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2015 Abed Tony BenBrahim <tony.benbrahim@10xdev.com> This file is
+ * part of OVCS.
+ *
+ * OVCS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OVCS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OVCS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tenxdev.ovcs.daemon;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Properties;
+
+/**
+ * Forwards a command to the running ovcs daemon, relaying standard input,
+ * output and error.
+ *
+ * @author Tony BenBrahim <tony.benbrahim@10xdev.com>
+ *
+ */
+public final class DaemonClient {
+
+	/**
+	 * the size of the buffer used to relay standard input and output
+	 */
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * forwards a command to the running daemon. Daemon and watch commands are
+	 * never forwarded.
+	 *
+	 * @param configFolderName
+	 *            the name of the ovcs settings folder under the user home
+	 *            directory
+	 * @param args
+	 *            the command line arguments
+	 * @return the exit code of the command, or null if no daemon is running
+	 *         and the command must run in this process
+	 */
+	public static Integer forward(final String configFolderName, final String... args) {
+		if (DaemonProtocol.isLocalCommand(args)) {
+			return null;
+		}
+		final Socket socket = connect(configFolderName);
+		if (socket == null) {
+			return null;
+		}
+		try {
+			return send(socket, args);
+		} catch (final IOException e) {
+			System.err.println("Lost connection to the ovcs daemon: " + e.getMessage());
+			return -1;
+		} finally {
+			closeQuietly(socket);
+		}
+	}
+
+	/**
+	 * asks the running daemon to stop
+	 *
+	 * @param configFolderName
+	 *            the name of the ovcs settings folder under the user home
+	 *            directory
+	 * @return true if a daemon was running and has been asked to stop
+	 */
+	public static boolean stop(final String configFolderName) {
+		final Socket socket = connect(configFolderName);
+		if (socket == null) {
+			return false;
+		}
+		try {
+			send(socket, DaemonProtocol.DAEMON_COMMAND, DaemonProtocol.STOP_ARGUMENT);
+			return true;
+		} catch (final IOException e) {
+			return false;
+		} finally {
+			closeQuietly(socket);
+		}
+	}
+
+	private static void closeQuietly(final Socket socket) {
+		try {
+			socket.close();
+		} catch (final IOException e) {
+			// nothing more can be done
+		}
+	}
+
+	private static Socket connect(final String configFolderName) {
+		final File daemonFile = DaemonProtocol.getDaemonFile(configFolderName);
+		final Properties properties = DaemonProtocol.readDaemonFile(daemonFile);
+		if (properties == null) {
+			return null;
+		}
+		try {
+			final int port = Integer.parseInt(properties.getProperty(DaemonProtocol.PORT_PROPERTY));
+			@SuppressWarnings("resource")
+			final Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+			final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			output.writeUTF(properties.getProperty(DaemonProtocol.TOKEN_PROPERTY));
+			output.flush();
+			return socket;
+		} catch (final NumberFormatException | IOException e) {
+			// stale daemon file, the daemon is no longer running
+			return null;
+		}
+	}
+
+	private static int send(final Socket socket, final String... args) throws IOException {
+		final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		final DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		output.writeUTF(System.getProperty("user.dir"));
+		output.writeInt(args.length);
+		for (final String arg : args) {
+			output.writeUTF(arg);
+		}
+		output.flush();
+		final byte[] buffer = new byte[BUFFER_SIZE];
+		while (true) {
+			final int frameType = input.readByte();
+			switch (frameType) {
+			case DaemonProtocol.EXIT:
+				System.out.flush();
+				System.err.flush();
+				return input.readInt();
+			case DaemonProtocol.OUT:
+				relay(input, System.out, buffer);
+				break;
+			case DaemonProtocol.ERR:
+				relay(input, System.err, buffer);
+				break;
+			case DaemonProtocol.INPUT:
+				final int count = System.in.read(buffer, 0, Math.min(input.readInt(), buffer.length));
+				output.writeInt(count);
+				if (count > 0) {
+					output.write(buffer, 0, count);
+				}
+				output.flush();
+				break;
+			default:
+				throw new IOException("Unexpected response from the ovcs daemon");
+			}
+		}
+	}
+
+	private static void relay(final DataInputStream input, final PrintStream target, final byte[] buffer)
+			throws IOException {
+		int remaining = input.readInt();
+		while (remaining > 0) {
+			final int count = Math.min(remaining, buffer.length);
+			input.readFully(buffer, 0, count);
+			target.write(buffer, 0, count);
+			remaining -= count;
+		}
+		target.flush();
+	}
+
+	private DaemonClient() {
+	}
+}
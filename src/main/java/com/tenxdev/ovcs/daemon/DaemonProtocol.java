@@ -0,0 +1,150 @@
+/*
+ * Copyright 2015 Abed Tony BenBrahim <tony.benbrahim@10xdev.com> This file is
+ * part of OVCS.
+ *
+ * OVCS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OVCS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OVCS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tenxdev.ovcs.daemon;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+/**
+ * Constants and helpers shared by the ovcs daemon and its client.
+ *
+ * A request is the authentication token, the client's working directory, the
+ * argument count and the arguments. The daemon answers with frames, each
+ * starting with a frame type: standard output and standard error frames carry
+ * a length and bytes, an input frame asks the client for up to the given
+ * number of bytes of standard input (the client answers with a length, -1 at
+ * end of input, and the bytes), and the exit frame carries the exit code and
+ * ends the request.
+ *
+ * @author Tony BenBrahim <tony.benbrahim@10xdev.com>
+ *
+ */
+final class DaemonProtocol {
+
+	/**
+	 * frame carrying the exit code of the command
+	 */
+	static final int EXIT = 0;
+	/**
+	 * frame carrying standard output
+	 */
+	static final int OUT = 1;
+	/**
+	 * frame carrying standard error
+	 */
+	static final int ERR = 2;
+	/**
+	 * frame requesting standard input from the client
+	 */
+	static final int INPUT = 3;
+
+	/**
+	 * the name of the file, in the ovcs settings folder, where the running
+	 * daemon publishes its port and authentication token
+	 */
+	static final String DAEMON_FILE_NAME = "daemon";
+	/**
+	 * property holding the port of the daemon
+	 */
+	static final String PORT_PROPERTY = "port";
+	/**
+	 * property holding the authentication token of the daemon
+	 */
+	static final String TOKEN_PROPERTY = "token";
+
+	/**
+	 * the first command line argument of the daemon command
+	 */
+	static final String DAEMON_COMMAND = "daemon";
+	/**
+	 * the second command line argument of the daemon command, to stop the
+	 * daemon
+	 */
+	static final String STOP_ARGUMENT = "stop";
+	/**
+	 * the first command line argument of the watch command, which runs until
+	 * stopped and would block the daemon
+	 */
+	static final String WATCH_COMMAND = "watch";
+
+	/**
+	 * gets the file where the running daemon publishes its port and token
+	 *
+	 * @param configFolderName
+	 *            the name of the ovcs settings folder under the user home
+	 *            directory
+	 * @return the daemon file
+	 */
+	static File getDaemonFile(final String configFolderName) {
+		return Paths.get(System.getProperty("user.home"), configFolderName, DAEMON_FILE_NAME).toFile();
+	}
+
+	/**
+	 * reads the port and token published by the running daemon
+	 *
+	 * @param daemonFile
+	 *            the daemon file
+	 * @return the port and token, or null if no daemon is running or the file
+	 *         cannot be read
+	 */
+	static Properties readDaemonFile(final File daemonFile) {
+		if (!daemonFile.exists()) {
+			return null;
+		}
+		final Properties properties = new Properties();
+		try (InputStream inputStream = new FileInputStream(daemonFile)) {
+			properties.load(inputStream);
+		} catch (final IOException e) {
+			return null;
+		}
+		if (properties.getProperty(PORT_PROPERTY) == null || properties.getProperty(TOKEN_PROPERTY) == null) {
+			return null;
+		}
+		return properties;
+	}
+
+	/**
+	 * checks whether the arguments are a daemon command, which always runs in
+	 * the invoking process
+	 *
+	 * @param args
+	 *            the command line arguments
+	 * @return true if the arguments are a daemon command
+	 */
+	static boolean isDaemonCommand(final String... args) {
+		return args.length > 0 && DAEMON_COMMAND.equalsIgnoreCase(args[0]);
+	}
+
+	/**
+	 * checks whether the arguments are a command that always runs in the
+	 * invoking process: a daemon command, or the long running watch command
+	 *
+	 * @param args
+	 *            the command line arguments
+	 * @return true if the command must not be forwarded to the daemon
+	 */
+	static boolean isLocalCommand(final String... args) {
+		return isDaemonCommand(args) || args.length > 0 && WATCH_COMMAND.equalsIgnoreCase(args[0]);
+	}
+
+	private DaemonProtocol() {
+	}
+}
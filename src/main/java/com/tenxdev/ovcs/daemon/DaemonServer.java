@@ -0,0 +1,356 @@
+/*
+ * Copyright 2015 Abed Tony BenBrahim <tony.benbrahim@10xdev.com> This file is
+ * part of OVCS.
+ *
+ * OVCS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OVCS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OVCS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tenxdev.ovcs.daemon;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.security.SecureRandom;
+import java.util.EnumSet;
+import java.util.Properties;
+
+import com.tenxdev.ovcs.Application;
+
+/**
+ * Runs ovcs commands on behalf of {@link DaemonClient}, in a long lived JVM
+ * that keeps the Oracle driver, database connections and git repositories
+ * open between commands. The daemon only listens on the loopback interface,
+ * requires the token it publishes in a file only readable by its owner, runs
+ * one command at a time, and stops after being idle for the configured time.
+ *
+ * @author Tony BenBrahim <tony.benbrahim@10xdev.com>
+ *
+ */
+public final class DaemonServer {
+
+	/**
+	 * Sends output written by a command to the client
+	 */
+	private static final class FrameOutputStream extends OutputStream {
+
+		/**
+		 * the connection to the client
+		 */
+		private final DataOutputStream output;
+		/**
+		 * the frame type, standard output or standard error
+		 */
+		private final int frameType;
+
+		/**
+		 * constructor
+		 *
+		 * @param output
+		 *            the connection to the client
+		 * @param frameType
+		 *            the frame type, standard output or standard error
+		 */
+		FrameOutputStream(final DataOutputStream output, final int frameType) {
+			this.output = output;
+			this.frameType = frameType;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void flush() throws IOException {
+			synchronized (output) {
+				output.flush();
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+			if (length == 0) {
+				return;
+			}
+			synchronized (output) {
+				output.writeByte(frameType);
+				output.writeInt(length);
+				output.write(bytes, offset, length);
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void write(final int value) throws IOException {
+			write(new byte[] { (byte) value }, 0, 1);
+		}
+	}
+
+	/**
+	 * Reads the standard input of the client, on demand
+	 */
+	private static final class FrameInputStream extends InputStream {
+
+		/**
+		 * the connection from the client
+		 */
+		private final DataInputStream input;
+		/**
+		 * the connection to the client
+		 */
+		private final DataOutputStream output;
+		/**
+		 * the standard output of the command, flushed before input is
+		 * requested so the client sees any prompt
+		 */
+		private final PrintStream prompt;
+		/**
+		 * true once the client reached the end of its standard input
+		 */
+		private boolean endOfInput;
+
+		/**
+		 * constructor
+		 *
+		 * @param input
+		 *            the connection from the client
+		 * @param output
+		 *            the connection to the client
+		 * @param prompt
+		 *            the standard output of the command
+		 */
+		FrameInputStream(final DataInputStream input, final DataOutputStream output, final PrintStream prompt) {
+			this.input = input;
+			this.output = output;
+			this.prompt = prompt;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int read() throws IOException {
+			final byte[] bytes = new byte[1];
+			return read(bytes, 0, 1) == -1 ? -1 : bytes[0] & 0xff;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+			if (endOfInput) {
+				return -1;
+			}
+			if (length == 0) {
+				return 0;
+			}
+			prompt.flush();
+			synchronized (output) {
+				output.writeByte(DaemonProtocol.INPUT);
+				output.writeInt(length);
+				output.flush();
+			}
+			final int count = input.readInt();
+			if (count < 0) {
+				endOfInput = true;
+				return -1;
+			}
+			input.readFully(bytes, offset, count);
+			return count;
+		}
+	}
+
+	/**
+	 * the number of random bytes in the authentication token
+	 */
+	private static final int TOKEN_BYTES = 16;
+
+	/**
+	 * the name of the ovcs settings folder under the user home directory
+	 */
+	private final String configFolderName;
+	/**
+	 * the time after which the idle daemon stops, in milliseconds
+	 */
+	private final long idleTimeout;
+	/**
+	 * the authentication token clients must send with each request
+	 */
+	private final String token;
+	/**
+	 * true when a client asked the daemon to stop
+	 */
+	private boolean stopRequested;
+
+	/**
+	 * constructor
+	 *
+	 * @param configFolderName
+	 *            the name of the ovcs settings folder under the user home
+	 *            directory
+	 * @param idleTimeout
+	 *            the time after which the idle daemon stops, in milliseconds
+	 */
+	public DaemonServer(final String configFolderName, final long idleTimeout) {
+		this.configFolderName = configFolderName;
+		this.idleTimeout = idleTimeout;
+		final byte[] tokenBytes = new byte[TOKEN_BYTES];
+		new SecureRandom().nextBytes(tokenBytes);
+		final StringBuilder stringBuilder = new StringBuilder();
+		for (final byte tokenByte : tokenBytes) {
+			stringBuilder.append(String.format("%02x", tokenByte));
+		}
+		token = stringBuilder.toString();
+	}
+
+	/**
+	 * runs the daemon until it is stopped or has been idle for the idle
+	 * timeout
+	 *
+	 * @throws IOException
+	 *             if the daemon cannot listen for requests or publish its
+	 *             port
+	 */
+	public void run() throws IOException {
+		final File daemonFile = DaemonProtocol.getDaemonFile(configFolderName);
+		if (DaemonClient.stop(configFolderName)) {
+			System.out.println("Replaced the ovcs daemon that was already running");
+		}
+		final ConnectionPool connectionPool = new ConnectionPool(idleTimeout);
+		final RepositoryCache repositoryCache = new RepositoryCache();
+		ConnectionPool.setInstance(connectionPool);
+		RepositoryCache.setInstance(repositoryCache);
+		try (ServerSocket serverSocket = new ServerSocket(0, 0, InetAddress.getLoopbackAddress())) {
+			serverSocket.setSoTimeout((int) Math.min(idleTimeout, Integer.MAX_VALUE));
+			publish(daemonFile, serverSocket.getLocalPort());
+			System.out.println(String.format("ovcs daemon listening on port %d", serverSocket.getLocalPort()));
+			while (!stopRequested) {
+				try (Socket socket = serverSocket.accept()) {
+					handle(socket);
+				} catch (final SocketTimeoutException e) {
+					System.out.println("ovcs daemon idle, stopping");
+					break;
+				} catch (final IOException e) {
+					System.err.println("Lost connection to ovcs client: " + e.getMessage());
+				}
+			}
+		} finally {
+			ConnectionPool.setInstance(null);
+			RepositoryCache.setInstance(null);
+			connectionPool.closeAll();
+			repositoryCache.closeAll();
+			final Properties published = DaemonProtocol.readDaemonFile(daemonFile);
+			if (published != null && token.equals(published.getProperty(DaemonProtocol.TOKEN_PROPERTY))) {
+				Files.deleteIfExists(daemonFile.toPath());
+			}
+		}
+	}
+
+	private void handle(final Socket socket) throws IOException {
+		final DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		if (!token.equals(input.readUTF())) {
+			return;
+		}
+		final String workingDir = input.readUTF();
+		final String[] args = new String[input.readInt()];
+		for (int i = 0; i < args.length; ++i) {
+			args[i] = input.readUTF();
+		}
+		final int exitCode;
+		if (DaemonProtocol.isDaemonCommand(args)) {
+			stopRequested = args.length == 2 && DaemonProtocol.STOP_ARGUMENT.equalsIgnoreCase(args[1]);
+			exitCode = stopRequested ? 0 : -1;
+		} else {
+			exitCode = runCommand(input, output, workingDir, args);
+		}
+		synchronized (output) {
+			output.writeByte(DaemonProtocol.EXIT);
+			output.writeInt(exitCode);
+			output.flush();
+		}
+	}
+
+	private void publish(final File daemonFile, final int port) throws IOException {
+		final Properties properties = new Properties();
+		properties.setProperty(DaemonProtocol.PORT_PROPERTY, Integer.toString(port));
+		properties.setProperty(DaemonProtocol.TOKEN_PROPERTY, token);
+		daemonFile.getParentFile().mkdirs();
+		final File tempFile = new File(daemonFile.getParentFile(), daemonFile.getName() + ".tmp");
+		try (OutputStream outputStream = new FileOutputStream(tempFile)) {
+			try {
+				Files.setPosixFilePermissions(tempFile.toPath(),
+						EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE));
+			} catch (final UnsupportedOperationException e) {
+				tempFile.setReadable(false, false);
+				tempFile.setReadable(true, true);
+			}
+			properties.store(outputStream, "ovcs daemon");
+		}
+		Files.move(tempFile.toPath(), daemonFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private int runCommand(final DataInputStream input, final DataOutputStream output, final String workingDir,
+			final String... args) {
+		final PrintStream savedOut = System.out;
+		final PrintStream savedErr = System.err;
+		final InputStream savedIn = System.in;
+		final String savedWorkingDir = System.getProperty("user.dir");
+		final Charset charset = Charset.defaultCharset();
+		try (PrintStream out = new PrintStream(new FrameOutputStream(output, DaemonProtocol.OUT), true,
+				charset.name());
+				PrintStream err = new PrintStream(new FrameOutputStream(output, DaemonProtocol.ERR), true,
+						charset.name())) {
+			System.setOut(out);
+			System.setErr(err);
+			System.setIn(new FrameInputStream(input, output, out));
+			System.setProperty("user.dir", workingDir);
+			try {
+				return Application.run(args);
+			} catch (final RuntimeException e) {
+				e.printStackTrace();
+				return -1;
+			} finally {
+				out.flush();
+				err.flush();
+			}
+		} catch (final IOException e) {
+			savedErr.println("Unable to run command: " + e.getMessage());
+			return -1;
+		} finally {
+			System.setOut(savedOut);
+			System.setErr(savedErr);
+			System.setIn(savedIn);
+			System.setProperty("user.dir", savedWorkingDir);
+		}
+	}
+}
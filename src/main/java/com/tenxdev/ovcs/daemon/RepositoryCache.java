@@ -0,0 +1,95 @@
+/*
+ * Copyright 2015 Abed Tony BenBrahim <tony.benbrahim@10xdev.com> This file is
+ * part of OVCS.
+ *
+ * OVCS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OVCS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OVCS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tenxdev.ovcs.daemon;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.jgit.internal.storage.file.FileRepository;
+
+/**
+ * Keeps git repositories open between commands run by the ovcs daemon, so that
+ * pack indexes and references do not have to be read again by every command.
+ *
+ * @author Tony BenBrahim <tony.benbrahim@10xdev.com>
+ *
+ */
+public final class RepositoryCache {
+
+	/**
+	 * the cache used by the running daemon, null when not running as a daemon
+	 */
+	private static volatile RepositoryCache instance;
+
+	/**
+	 * gets the cache of the running daemon
+	 *
+	 * @return the cache, or null if not running as a daemon
+	 */
+	public static RepositoryCache getInstance() {
+		return instance;
+	}
+
+	/**
+	 * sets the cache of the running daemon
+	 *
+	 * @param cache
+	 *            the cache, or null when the daemon stops
+	 */
+	static void setInstance(final RepositoryCache cache) {
+		instance = cache;
+	}
+
+	/**
+	 * open repositories, by canonical git directory
+	 */
+	private final Map<File, FileRepository> repositories = new HashMap<>();
+
+	/**
+	 * close all cached repositories
+	 */
+	public synchronized void closeAll() {
+		for (final FileRepository repository : repositories.values()) {
+			repository.close();
+		}
+		repositories.clear();
+	}
+
+	/**
+	 * open a repository. The caller must close the returned repository when
+	 * done; the cache keeps its own reference open.
+	 *
+	 * @param gitDir
+	 *            the git directory of the repository
+	 * @return the repository
+	 * @throws IOException
+	 *             if the repository cannot be opened
+	 */
+	public synchronized FileRepository open(final File gitDir) throws IOException {
+		final File key = gitDir.getCanonicalFile();
+		FileRepository repository = repositories.get(key);
+		if (repository == null) {
+			repository = new FileRepository(key);
+			repositories.put(key, repository);
+		}
+		repository.incrementOpen();
+		return repository;
+	}
+
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2015 Abed Tony BenBrahim <tony.benbrahim@10xdev.com> This file is
+ * part of OVCS.
+ *
+ * OVCS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OVCS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OVCS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tenxdev.ovcs.model;
+
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * Difference between the current source of a database object and its last
+ * committed source
+ *
+ * @author Tony BenBrahim <tony.benbrahim@10xdev.com>
+ *
+ */
+public class SourceChange {
+	/**
+	 * the path of the object source file, relative to the working tree
+	 */
+	private final String path;
+	/**
+	 * the blob id of the committed source, or null if the object was never
+	 * committed
+	 */
+	private final ObjectId committedId;
+	/**
+	 * the current source, UTF-8 encoded, or null if the object was dropped
+	 */
+	private final byte[] currentSource;
+
+	/**
+	 * constructor
+	 *
+	 * @param path
+	 *            the path of the object source file, relative to the working
+	 *            tree
+	 * @param committedId
+	 *            the blob id of the committed source, or null if the object
+	 *            was never committed
+	 * @param currentSource
+	 *            the current source, UTF-8 encoded, or null if the object was
+	 *            dropped
+	 */
+	public SourceChange(final String path, final ObjectId committedId, final byte[] currentSource) {
+		super();
+		this.path = path;
+		this.committedId = committedId;
+		this.currentSource = currentSource;
+	}
+
+	/**
+	 * gets the path of the object source file
+	 *
+	 * @return the path of the object source file, relative to the working tree
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * gets the blob id of the committed source
+	 *
+	 * @return the blob id of the committed source, or null if the object was
+	 *         never committed
+	 */
+	public ObjectId getCommittedId() {
+		return committedId;
+	}
+
+	/**
+	 * gets the current source
+	 *
+	 * @return the current source, UTF-8 encoded, or null if the object was
+	 *         dropped
+	 */
+	public byte[] getCurrentSource() {
+		return currentSource;
+	}
+
+	/**
+	 * determines if the object was created since the last commit
+	 *
+	 * @return true if the object was never committed, false otherwise
+	 */
+	public boolean isAdded() {
+		return committedId == null;
+	}
+
+	/**
+	 * determines if the object was dropped since the last commit
+	 *
+	 * @return true if the object was dropped from the database, false otherwise
+	 */
+	public boolean isRemoved() {
+		return currentSource == null;
+	}
+
+}
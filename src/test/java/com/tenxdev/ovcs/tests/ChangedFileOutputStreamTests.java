@@ -0,0 +1,206 @@
+/*
+ * Copyright 2015 Abed Tony BenBrahim <tony.benbrahim@10xdev.com> This file is
+ * part of OVCS.
+ *
+ * OVCS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OVCS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OVCS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tenxdev.ovcs.tests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.tenxdev.ovcs.ChangedFileOutputStream;
+import com.tenxdev.ovcs.OvcsException;
+import com.tenxdev.ovcs.command.AbstractOvcsCommand;
+
+public class ChangedFileOutputStreamTests {
+
+	private static final class WritingCommand extends AbstractOvcsCommand {
+
+		@Override
+		public void execute(final String... args) {
+			// not run
+		}
+
+		boolean write(final Path workingDirectory, final String objectName, final Reader source)
+				throws OvcsException {
+			return writeSchemaObject(workingDirectory, objectName, source, -1, false);
+		}
+	}
+
+	private Path directory;
+
+	private File file;
+
+	@After
+	public void cleanup() throws IOException {
+		Files.deleteIfExists(file.toPath());
+		final String[] remaining = directory.toFile().list();
+		assertEquals(0, remaining.length);
+		Files.delete(directory);
+	}
+
+	@Before
+	public void setup() throws IOException {
+		directory = Files.createTempDirectory("ovcs");
+		file = directory.resolve("EMP.sql").toFile();
+	}
+
+	@Test
+	public void testChangedContent() throws IOException {
+		Files.write(file.toPath(), "create table emp (id number)".getBytes(StandardCharsets.UTF_8));
+		assertTrue(write("create table emp (id number, name varchar2(30))", -1));
+		assertEquals("create table emp (id number, name varchar2(30))", read());
+	}
+
+	@Test
+	public void testAbort() throws IOException {
+		Files.write(file.toPath(), "create table emp (id number)".getBytes(StandardCharsets.UTF_8));
+		final ChangedFileOutputStream outputStream = new ChangedFileOutputStream(file, -1);
+		outputStream.write("create table dept".getBytes(StandardCharsets.UTF_8));
+		outputStream.abort();
+		outputStream.close();
+		assertEquals("create table emp (id number)", read());
+	}
+
+	@Test
+	public void testFailedSource() throws IOException {
+		Files.write(file.toPath(), "create table emp (id number)".getBytes(StandardCharsets.UTF_8));
+		final Reader source = new Reader() {
+
+			private boolean read;
+
+			@Override
+			public void close() {
+				// nothing to close
+			}
+
+			@Override
+			public int read(final char[] buffer, final int offset, final int length) throws IOException {
+				if (read) {
+					throw new IOException("ORA-03113: end-of-file on communication channel");
+				}
+				read = true;
+				"create table dept".getChars(0, 17, buffer, offset);
+				return 17;
+			}
+		};
+		try {
+			new WritingCommand().write(directory, "EMP", source);
+			fail("the failed read was not reported");
+		} catch (final OvcsException e) {
+			assertTrue(e.getMessage().contains("ORA-03113"));
+		}
+		assertEquals("create table emp (id number)", read());
+	}
+
+	@Test
+	public void testDifferentLength() throws IOException {
+		Files.write(file.toPath(), "create table emp (id number)".getBytes(StandardCharsets.UTF_8));
+		assertTrue(write("create table emp (id integer)", 29));
+		assertEquals("create table emp (id integer)", read());
+	}
+
+	@Test
+	public void testIsTempFile() {
+		assertTrue(ChangedFileOutputStream.isTempFile("0a/.EMP.sql1234.tmp"));
+		assertFalse(ChangedFileOutputStream.isTempFile("EMP.sql"));
+		assertFalse(ChangedFileOutputStream.isTempFile("TMP.tmp"));
+	}
+
+	@Test
+	public void testLargeChangedContent() throws IOException {
+		final StringBuilder source = new StringBuilder();
+		for (int i = 0; i < 10000; ++i) {
+			source.append("partition p").append(i).append(" values less than (").append(i).append("),\n");
+		}
+		Files.write(file.toPath(), source.toString().getBytes(StandardCharsets.UTF_8));
+		final String changed = source.toString().replace("p9999", "p0000");
+		assertTrue(write(changed, -1));
+		assertArrayEquals(changed.getBytes(StandardCharsets.UTF_8), Files.readAllBytes(file.toPath()));
+	}
+
+	@Test
+	public void testNewFile() throws IOException {
+		assertTrue(write("create table emp (id number)", -1));
+		assertEquals("create table emp (id number)", read());
+	}
+
+	@Test
+	public void testObjectId() throws IOException {
+		final byte[] content = "create table emp (id number)".getBytes(StandardCharsets.UTF_8);
+		final ObjectId expected = new ObjectInserter.Formatter().idFor(Constants.OBJ_BLOB, content);
+		assertEquals(expected, writeObjectId("create table emp (id number)", -1));
+		assertEquals(expected, writeObjectId("create table emp (id number)", -1));
+		assertEquals(expected, writeObjectId("create table emp (id number)", content.length));
+		Files.write(file.toPath(), "create table emp".getBytes(StandardCharsets.UTF_8));
+		assertEquals(expected, writeObjectId("create table emp (id number)", -1));
+	}
+
+	@Test
+	public void testShorterContent() throws IOException {
+		Files.write(file.toPath(), "create table emp (id number)".getBytes(StandardCharsets.UTF_8));
+		assertTrue(write("create table emp", -1));
+		assertEquals("create table emp", read());
+	}
+
+	@Test
+	public void testUnchangedContent() throws IOException {
+		Files.write(file.toPath(), "create table emp (id number)".getBytes(StandardCharsets.UTF_8));
+		assertTrue(file.setLastModified(1000L));
+		assertFalse(write("create table emp (id number)", -1));
+		assertEquals(1000L, file.lastModified());
+		assertEquals("create table emp (id number)", read());
+	}
+
+	private String read() throws IOException {
+		return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+	}
+
+	private ObjectId writeObjectId(final String content, final long expectedLength) throws IOException {
+		final ChangedFileOutputStream outputStream = new ChangedFileOutputStream(file, expectedLength);
+		try {
+			outputStream.write(content.getBytes(StandardCharsets.UTF_8));
+		} finally {
+			outputStream.close();
+		}
+		return outputStream.getObjectId();
+	}
+
+	private boolean write(final String content, final long expectedLength) throws IOException {
+		final ChangedFileOutputStream outputStream = new ChangedFileOutputStream(file, expectedLength);
+		try {
+			outputStream.write(content.getBytes(StandardCharsets.UTF_8));
+		} finally {
+			outputStream.close();
+		}
+		return outputStream.isChanged();
+	}
+}
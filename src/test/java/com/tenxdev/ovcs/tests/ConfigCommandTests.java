@@ -0,0 +1,75 @@
+/*
+ * Copyright 2015 Abed Tony BenBrahim <tony.benbrahim@10xdev.com> This file is
+ * part of OVCS.
+ *
+ * OVCS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OVCS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OVCS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tenxdev.ovcs.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.tenxdev.ovcs.OvcsException;
+import com.tenxdev.ovcs.Settings;
+import com.tenxdev.ovcs.SettingsStore;
+import com.tenxdev.ovcs.SettingsStore.SettingsStoreException;
+import com.tenxdev.ovcs.command.ConfigCommand;
+
+public class ConfigCommandTests {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private String userHome;
+
+	@After
+	public void after() {
+		System.setProperty("user.home", userHome);
+	}
+
+	@Before
+	public void before() {
+		userHome = System.getProperty("user.home");
+		System.setProperty("user.home", folder.getRoot().getPath());
+	}
+
+	@Test(expected = OvcsException.class)
+	public void testInvalidMetricsSummary() throws OvcsException {
+		new ConfigCommand().execute("config", Settings.METRICS_SUMMARY, "yes");
+	}
+
+	@Test
+	public void testMetricsSettings() throws OvcsException, SettingsStoreException {
+		new ConfigCommand().execute("config", Settings.METRICS_SUMMARY, "true");
+		new ConfigCommand().execute("config", Settings.METRICS_REPORT, "metrics.json");
+		final SettingsStore store = new SettingsStore(".ovcs").load();
+		assertEquals("true", store.getSetting(Settings.METRICS_SUMMARY));
+		assertEquals("metrics.json", store.getSetting(Settings.METRICS_REPORT));
+	}
+
+	@Test(expected = OvcsException.class)
+	public void testInvalidSessionStatistics() throws OvcsException {
+		new ConfigCommand().execute("config", Settings.SESSION_STATISTICS, "on");
+	}
+
+	@Test
+	public void testSessionStatistics() throws OvcsException, SettingsStoreException {
+		new ConfigCommand().execute("config", Settings.SESSION_STATISTICS, "true");
+		assertEquals("true", new SettingsStore(".ovcs").load().getSetting(Settings.SESSION_STATISTICS));
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2015 Abed Tony BenBrahim <tony.benbrahim@10xdev.com> This file is
+ * part of OVCS.
+ *
+ * OVCS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OVCS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OVCS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tenxdev.ovcs.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.tenxdev.ovcs.DdlCache;
+
+public class DdlCacheTests {
+
+	private static final long DDL_TIME = 1420070400000L;
+
+	private static final String SOURCE = "CREATE TABLE EMP (ID NUMBER)\n";
+
+	private static final long TIME_TO_LIVE = 60 * 1000L;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File directory;
+
+	@Before
+	public void before() {
+		directory = new File(folder.getRoot(), "cache");
+	}
+
+	@Test
+	public void testChangedDdlTime() throws IOException {
+		final DdlCache cache = new DdlCache(directory, TIME_TO_LIVE, 1024);
+		cache.put("EMP", DDL_TIME, SOURCE);
+		assertNull(cache.get("EMP", DDL_TIME + 1000));
+	}
+
+	@Test
+	public void testClear() throws IOException {
+		final DdlCache cache = new DdlCache(directory, TIME_TO_LIVE, 1024);
+		cache.put("EMP", DDL_TIME, SOURCE);
+		cache.clear();
+		assertNull(cache.get("EMP", DDL_TIME));
+	}
+
+	@Test
+	public void testDisabled() throws IOException {
+		final DdlCache cache = new DdlCache(directory, 0, 1024);
+		cache.put("EMP", DDL_TIME, SOURCE);
+		assertNull(cache.get("EMP", DDL_TIME));
+		assertTrue(!directory.exists());
+	}
+
+	@Test
+	public void testExpired() throws IOException {
+		final DdlCache cache = new DdlCache(directory, TIME_TO_LIVE, 1024);
+		cache.put("EMP", DDL_TIME, SOURCE);
+		final File entry = new File(directory, "EMP.ddl");
+		assertTrue(entry.setLastModified(System.currentTimeMillis() - 2 * TIME_TO_LIVE));
+		assertNull(cache.get("EMP", DDL_TIME));
+		assertTrue(!entry.exists());
+	}
+
+	@Test
+	public void testStoringAndRetrieving() throws IOException {
+		final DdlCache cache = new DdlCache(directory, TIME_TO_LIVE, 1024);
+		cache.put("EMP", DDL_TIME, SOURCE);
+		assertEquals(SOURCE, cache.get("EMP", DDL_TIME));
+		assertNull(cache.get("DEPT", DDL_TIME));
+	}
+
+	@Test
+	public void testStoringFromStream() throws IOException {
+		final StringBuilder source = new StringBuilder();
+		while (source.length() < 100000) {
+			source.append(SOURCE).append("-- caf\u00e9\n");
+		}
+		final DdlCache cache = new DdlCache(directory, TIME_TO_LIVE, 1024 * 1024);
+		cache.put("EMP", DDL_TIME, new ByteArrayInputStream(source.toString().getBytes(StandardCharsets.UTF_8)));
+		assertEquals(source.toString(), cache.get("EMP", DDL_TIME));
+	}
+
+	@Test
+	public void testTrim() throws IOException {
+		final DdlCache cache = new DdlCache(directory, TIME_TO_LIVE, 2 * (SOURCE.length() + 15));
+		cache.put("EMP", DDL_TIME, SOURCE);
+		cache.put("DEPT", DDL_TIME, SOURCE);
+		cache.put("BONUS", DDL_TIME, SOURCE);
+		assertTrue(new File(directory, "EMP.ddl").setLastModified(System.currentTimeMillis() - 2000));
+		cache.trim();
+		assertNull(cache.get("EMP", DDL_TIME));
+		assertEquals(SOURCE, cache.get("DEPT", DDL_TIME));
+		assertEquals(SOURCE, cache.get("BONUS", DDL_TIME));
+	}
+
+}
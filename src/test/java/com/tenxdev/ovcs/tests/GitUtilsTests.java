@@ -0,0 +1,93 @@
+/*
+ * Copyright 2015 Abed Tony BenBrahim <tony.benbrahim@10xdev.com> This file is
+ * part of OVCS.
+ *
+ * OVCS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OVCS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OVCS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tenxdev.ovcs.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.tenxdev.ovcs.GitUtils;
+
+public class GitUtilsTests {
+
+	private static final String PACKAGE_PATH = "PAC_0000003.sql";
+
+	private static final String TABLE_PATH = "TAB_0000000.sql";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Git git;
+
+	@Before
+	public void before() throws GitAPIException {
+		git = Git.init().setDirectory(folder.getRoot()).call();
+	}
+
+	@Test
+	public void testRemovalWins() throws IOException, GitAPIException {
+		write(TABLE_PATH, "CREATE TABLE");
+		GitUtils.updateIndex(git.getRepository(), Collections.singletonList(TABLE_PATH),
+				Collections.<String> emptyList());
+		git.commit().setMessage("initial").call();
+		GitUtils.updateIndex(git.getRepository(), Collections.singletonList(TABLE_PATH),
+				Arrays.asList(TABLE_PATH, TABLE_PATH));
+		final RevCommit commit = git.commit().setMessage("drop").call();
+		assertNull(git.getRepository().readDirCache().getEntry(TABLE_PATH));
+		assertNull(TreeWalk.forPath(git.getRepository(), TABLE_PATH, commit.getTree()));
+	}
+
+	@Test
+	public void testStagePackageWithBody() throws IOException, GitAPIException {
+		write(TABLE_PATH, "CREATE TABLE");
+		write(PACKAGE_PATH, "CREATE OR REPLACE PACKAGE");
+		// the changes query returns a row for the package and one for its body
+		GitUtils.updateIndex(git.getRepository(), Arrays.asList(PACKAGE_PATH, TABLE_PATH, PACKAGE_PATH),
+				Collections.<String> emptyList());
+		final RevCommit commit = git.commit().setMessage("package and body").call();
+		final Repository repository = git.getRepository();
+		final DirCache dirCache = repository.readDirCache();
+		assertEquals(2, dirCache.getEntryCount());
+		assertNotNull(dirCache.getEntry(PACKAGE_PATH));
+		assertNotNull(TreeWalk.forPath(repository, PACKAGE_PATH, commit.getTree()));
+		assertFalse(git.status().call().hasUncommittedChanges());
+	}
+
+	private void write(final String path, final String content) throws IOException {
+		Files.write(new File(folder.getRoot(), path).toPath(), content.getBytes(StandardCharsets.UTF_8));
+	}
+
+}
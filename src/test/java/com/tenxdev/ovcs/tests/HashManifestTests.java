@@ -0,0 +1,82 @@
+/*
+ * Copyright 2015 Abed Tony BenBrahim <tony.benbrahim@10xdev.com> This file is
+ * part of OVCS.
+ *
+ * OVCS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OVCS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OVCS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tenxdev.ovcs.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.tenxdev.ovcs.HashManifest;
+
+public class HashManifestTests {
+
+	private static final String BLOB_ID = "e69de29bb2d1d6434b8b29ae775ad8c2e48c5391";
+
+	private static final String CONTENT_HASH = "da39a3ee5e6b4b0d3255bfef95601890afd80709";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File file;
+
+	@Before
+	public void before() {
+		file = new File(folder.getRoot(), "hashes");
+	}
+
+	@Test
+	public void testInvalidEntry() throws IOException {
+		write(BLOB_ID + "=" + CONTENT_HASH + "\nEMP=" + CONTENT_HASH + "\n" + CONTENT_HASH + "=2015\n");
+		final Map<String, String> hashes = new HashManifest(file).load();
+		assertEquals(1, hashes.size());
+		assertEquals(CONTENT_HASH, hashes.get(BLOB_ID));
+	}
+
+	@Test
+	public void testMissing() {
+		assertTrue(new HashManifest(file).load().isEmpty());
+	}
+
+	@Test
+	public void testStoringAndRetrieving() throws IOException {
+		final Map<String, String> hashes = new HashMap<>();
+		hashes.put(BLOB_ID, CONTENT_HASH);
+		hashes.put(CONTENT_HASH, BLOB_ID);
+		new HashManifest(file).store(hashes);
+		assertEquals(hashes, new HashManifest(file).load());
+	}
+
+	private void write(final String contents) throws IOException {
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+			writer.write(contents);
+		}
+	}
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2015 Abed Tony BenBrahim <tony.benbrahim@10xdev.com> This file is
+ * part of OVCS.
+ *
+ * OVCS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OVCS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OVCS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tenxdev.ovcs.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.tenxdev.ovcs.Layout;
+
+public class LayoutTests {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testFlat() {
+		final Layout layout = new Layout(Layout.FLAT, 0);
+		assertEquals("EMP.sql", layout.getPath("EMP"));
+		assertEquals("EMP", layout.getObjectName("EMP.sql"));
+		assertNull(layout.getObjectName("E/EMP.sql"));
+		assertNull(layout.getObjectName(Layout.FILE_NAME));
+	}
+
+	@Test
+	public void testHash() {
+		final Layout layout = new Layout(Layout.HASH, 256);
+		final String path = layout.getPath("EMP");
+		assertTrue(path.matches("[0-9a-f]{2}/EMP\\.sql"));
+		assertEquals(path, layout.getPath("EMP"));
+		assertEquals("EMP", layout.getObjectName(path));
+		assertNull(layout.getObjectName("EMP.sql"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidSize() {
+		new Layout(Layout.PREFIX, 0);
+	}
+
+	@Test
+	public void testMissing() throws IOException {
+		assertEquals(new Layout(Layout.FLAT, 0), Layout.load(folder.getRoot()));
+	}
+
+	@Test
+	public void testPrefix() {
+		final Layout layout = new Layout(Layout.PREFIX, 2);
+		assertEquals("EM/EMP.sql", layout.getPath("EMP"));
+		assertEquals("X/X.sql", layout.getPath("X"));
+		assertEquals("EMP", layout.getObjectName("EM/EMP.sql"));
+		assertNull(layout.getObjectName("EMP.sql"));
+		assertNull(layout.getObjectName("DE/EMP.sql"));
+	}
+
+	@Test
+	public void testStoringAndRetrieving() throws IOException {
+		final Layout layout = new Layout(Layout.HASH, 64);
+		layout.store(folder.getRoot());
+		assertEquals(layout, Layout.load(folder.getRoot()));
+	}
+
+}
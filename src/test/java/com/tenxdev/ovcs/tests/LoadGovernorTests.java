@@ -0,0 +1,126 @@
+/*
+ * Copyright 2015 Abed Tony BenBrahim <tony.benbrahim@10xdev.com> This file is
+ * part of OVCS.
+ *
+ * OVCS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OVCS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OVCS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tenxdev.ovcs.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.tenxdev.ovcs.LoadGovernor;
+import com.tenxdev.ovcs.OvcsException;
+
+public class LoadGovernorTests {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testBackoff() {
+		final LoadGovernor governor = new LoadGovernor(4, 0, 2.0, null);
+		for (int i = 0; i < 5; ++i) {
+			governor.adjust(1000, 1);
+		}
+		assertEquals(4.0, governor.getLimit(), 0.0);
+		governor.adjust(10000, 1);
+		assertEquals(2.0, governor.getLimit(), 0.0);
+		assertEquals(1, governor.getBackoffs());
+		for (int i = 0; i < 10; ++i) {
+			governor.adjust(100000, 1);
+		}
+		assertEquals(0.1, governor.getLimit(), 0.0);
+	}
+
+	@Test
+	public void testConcurrency() throws Exception {
+		final LoadGovernor governor = new LoadGovernor(4, 0, 2.0, null);
+		final CountDownLatch acquired = new CountDownLatch(1);
+		final Thread thread;
+		try (LoadGovernor.Permit permit = governor.acquire()) {
+			thread = new Thread() {
+
+				@Override
+				public void run() {
+					try (LoadGovernor.Permit second = governor.acquire()) {
+						acquired.countDown();
+					} catch (final OvcsException e) {
+						e.printStackTrace();
+					}
+				}
+			};
+			thread.start();
+			assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+		}
+		assertTrue(acquired.await(5, TimeUnit.SECONDS));
+		thread.join();
+	}
+
+	@Test
+	public void testInvalid() throws IOException {
+		write("max-sessions=0\n");
+		try {
+			LoadGovernor.load(folder.getRoot(), 4, null);
+		} catch (final IOException e) {
+			assertTrue(e.getMessage().contains("max-sessions"));
+			return;
+		}
+		throw new AssertionError("invalid limits were accepted");
+	}
+
+	@Test
+	public void testLoad() throws IOException {
+		write("max-sessions=2\nmax-objects-per-second=50\n");
+		final LoadGovernor governor = LoadGovernor.load(folder.getRoot(), 4, null);
+		assertTrue(governor.isLimited());
+		assertEquals(2, governor.getMaxSessions());
+		assertEquals(1, LoadGovernor.load(folder.getRoot(), 1, null).getMaxSessions());
+	}
+
+	@Test
+	public void testMissing() throws IOException {
+		assertSame(LoadGovernor.UNLIMITED, LoadGovernor.load(folder.getRoot(), 4, null));
+		assertFalse(LoadGovernor.UNLIMITED.isLimited());
+	}
+
+	@Test
+	public void testRate() throws OvcsException {
+		final LoadGovernor governor = new LoadGovernor(1, 100, 2.0, null);
+		try (LoadGovernor.Permit permit = governor.acquire()) {
+			permit.add(10);
+		}
+		final long start = System.nanoTime();
+		try (LoadGovernor.Permit permit = governor.acquire()) {
+			permit.add(1);
+		}
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(80));
+	}
+
+	private void write(final String limits) throws IOException {
+		Files.write(new File(folder.getRoot(), LoadGovernor.FILE_NAME).toPath(), limits.getBytes(StandardCharsets.UTF_8));
+	}
+}
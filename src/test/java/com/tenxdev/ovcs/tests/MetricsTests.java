@@ -0,0 +1,93 @@
+/*
+ * Copyright 2015 Abed Tony BenBrahim <tony.benbrahim@10xdev.com> This file is
+ * part of OVCS.
+ *
+ * OVCS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OVCS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OVCS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tenxdev.ovcs.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.tenxdev.ovcs.Metrics;
+
+public class MetricsTests {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File file;
+
+	@Before
+	public void before() {
+		file = new File(new File(folder.getRoot(), "reports"), "metrics.json");
+	}
+
+	@Test
+	public void testCounters() {
+		final Metrics metrics = new Metrics();
+		metrics.add(Metrics.OBJECTS_FETCHED, 2);
+		metrics.add(Metrics.OBJECTS_FETCHED, 3);
+		assertEquals(5, metrics.getCount(Metrics.OBJECTS_FETCHED));
+		assertEquals(0, metrics.getCount(Metrics.BYTES_WRITTEN));
+	}
+
+	@Test
+	public void testPercentiles() {
+		final Metrics metrics = new Metrics();
+		for (int i = 0; i < 99; i++) {
+			metrics.record(Metrics.OBJECT_LATENCY, TimeUnit.MICROSECONDS.toNanos(100));
+		}
+		metrics.record(Metrics.OBJECT_LATENCY, TimeUnit.MILLISECONDS.toNanos(50));
+		assertEquals(TimeUnit.MICROSECONDS.toNanos(128), metrics.getPercentile(Metrics.OBJECT_LATENCY, 50));
+		assertEquals(TimeUnit.MICROSECONDS.toNanos(128), metrics.getPercentile(Metrics.OBJECT_LATENCY, 99));
+		assertEquals(TimeUnit.MILLISECONDS.toNanos(50), metrics.getPercentile(Metrics.OBJECT_LATENCY, 100));
+	}
+
+	@Test
+	public void testReport() throws IOException {
+		final Metrics metrics = new Metrics();
+		metrics.addTime(Metrics.QUERY, TimeUnit.MILLISECONDS.toNanos(3));
+		metrics.addTime(Metrics.QUERY, TimeUnit.MILLISECONDS.toNanos(2));
+		metrics.add(Metrics.BYTES_FETCHED, 1024);
+		metrics.record(Metrics.OBJECT_LATENCY, TimeUnit.MILLISECONDS.toNanos(1));
+		metrics.writeReport(file, Collections.singletonMap("repository", "C:\\schemas\\\"hr\""));
+		final String report = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+		assertTrue(report.contains("\"repository\": \"C:\\\\schemas\\\\\\\"hr\\\"\""));
+		assertTrue(report.contains("\"query\": {\"millis\": 5.000, \"count\": 2}"));
+		assertTrue(report.contains("\"bytesFetched\": 1024"));
+		assertTrue(report.contains("\"objectLatency\": {\"count\": 1"));
+		assertEquals(1, file.getParentFile().list().length);
+	}
+
+	@Test
+	public void testTimer() {
+		final Metrics metrics = new Metrics();
+		try (Metrics.Timer timer = metrics.start(Metrics.PUSH)) {
+			assertEquals(0, metrics.getTime(Metrics.PUSH));
+		}
+		assertTrue(metrics.getTime(Metrics.PUSH) > 0);
+	}
+}
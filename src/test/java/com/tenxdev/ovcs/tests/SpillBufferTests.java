@@ -0,0 +1,70 @@
+/*
+ * Copyright 2015 Abed Tony BenBrahim <tony.benbrahim@10xdev.com> This file is
+ * part of OVCS.
+ *
+ * OVCS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OVCS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OVCS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tenxdev.ovcs.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import com.tenxdev.ovcs.SpillBuffer;
+
+public class SpillBufferTests {
+
+	private static String read(final SpillBuffer buffer) throws IOException {
+		final StringBuilder builder = new StringBuilder();
+		try (Reader reader = buffer.openReader()) {
+			int value = reader.read();
+			while (value != -1) {
+				builder.append((char) value);
+				value = reader.read();
+			}
+		}
+		return builder.toString();
+	}
+
+	@Test
+	public void testInMemory() throws IOException {
+		try (SpillBuffer buffer = new SpillBuffer(1024)) {
+			buffer.write(new StringReader("create table emp (id number)"));
+			assertFalse(buffer.isSpilled());
+			assertEquals("create table emp (id number)", read(buffer));
+			assertEquals(28, buffer.getLength());
+		}
+	}
+
+	@Test
+	public void testSpilled() throws IOException {
+		final StringBuilder source = new StringBuilder();
+		for (int i = 0; i < 10000; ++i) {
+			source.append("partition p").append(i).append(" values less than (").append(i).append("),\u00e9\n");
+		}
+		try (SpillBuffer buffer = new SpillBuffer(1024)) {
+			buffer.write(new StringReader(source.toString()));
+			assertTrue(buffer.isSpilled());
+			assertEquals(source.toString(), read(buffer));
+			assertEquals(source.toString().getBytes(StandardCharsets.UTF_8).length, buffer.getLength());
+		}
+	}
+
+}
@@ -0,0 +1,312 @@
+/*
+ * Copyright 2015 Abed Tony BenBrahim <tony.benbrahim@10xdev.com> This file is
+ * part of OVCS.
+ *
+ * OVCS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OVCS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OVCS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tenxdev.ovcs.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.tenxdev.ovcs.LoadGovernor;
+import com.tenxdev.ovcs.OvcsException;
+import com.tenxdev.ovcs.Settings;
+import com.tenxdev.ovcs.SettingsStore;
+import com.tenxdev.ovcs.SettingsStore.SettingsStoreException;
+import com.tenxdev.ovcs.command.CommitCommand;
+import com.tenxdev.ovcs.command.InitCommand;
+import com.tenxdev.ovcs.command.StartCommand;
+import com.tenxdev.ovcs.command.StatusCommand;
+import com.tenxdev.ovcs.command.SyncAllCommand;
+import com.tenxdev.ovcs.command.SyncCommand;
+import com.tenxdev.ovcs.tests.synthetic.SyntheticDatabase;
+import com.tenxdev.ovcs.tests.synthetic.SyntheticSchema;
+
+/**
+ * Runs ovcs commands end to end against a synthetic schema, through the
+ * stand-in Oracle driver. The size of the schema can be raised with the
+ * ovcs.synthetic.* system properties to run the tests as load tests.
+ */
+public class SyntheticDatabaseTests {
+
+	private static final String CONNECTION_STRING = "scott/tiger@localhost:1521:XE";
+
+	private static final String USER = "scott";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File directory;
+
+	private File workingDirectory;
+
+	private String userDir;
+
+	private String userHome;
+
+	private SyntheticSchema schema;
+
+	@After
+	public void after() {
+		SyntheticDatabase.unregister(USER);
+		System.setProperty("user.dir", userDir);
+		System.setProperty("user.home", userHome);
+	}
+
+	@Before
+	public void before() throws GitAPIException {
+		directory = folder.getRoot();
+		workingDirectory = new File(directory, "work");
+		assertTrue(workingDirectory.mkdirs());
+		Git.init().setBare(true).setDirectory(new File(directory, "remote.git")).call().getRepository().close();
+		userDir = System.getProperty("user.dir");
+		userHome = System.getProperty("user.home");
+		System.setProperty("user.dir", workingDirectory.getPath());
+		System.setProperty("user.home", directory.getPath());
+		schema = SyntheticSchema.fromSystemProperties(300);
+		SyntheticDatabase.register(USER, schema);
+	}
+
+	@Test
+	public void testBulkFetch() throws Exception {
+		configure(Settings.BULK_FETCH_SIZE, "50", Settings.PARALLELISM, "4");
+		init();
+		assertMatchesSchema();
+	}
+
+	@Test
+	public void testCommit() throws Exception {
+		configure(Settings.BULK_FETCH_SIZE, "0");
+		init();
+		new StartCommand().execute("start");
+		final int changes = schema.applyChanges();
+		final InputStream stdin = System.in;
+		System.setIn(new ByteArrayInputStream("synthetic changes\n.\n".getBytes(StandardCharsets.UTF_8)));
+		final long start = System.nanoTime();
+		try {
+			new CommitCommand().execute("commit");
+		} finally {
+			System.setIn(stdin);
+		}
+		report("commit", changes, start);
+		assertMatchesSchema();
+		try (Repository repository = Git.open(workingDirectory).getRepository()) {
+			final RevCommit head = new Git(repository).log().setMaxCount(1).call().iterator().next();
+			assertEquals("synthetic changes", head.getFullMessage());
+		}
+	}
+
+	@Test
+	public void testCommitPackageWithBody() throws Exception {
+		configure(Settings.BULK_FETCH_SIZE, "0");
+		init();
+		new StartCommand().execute("start");
+		String packageName = null;
+		for (final String name : schema.getObjectNames()) {
+			if (name.startsWith("PAC_") && packageName == null) {
+				packageName = name;
+			}
+		}
+		schema.alterObject(packageName);
+		final InputStream stdin = System.in;
+		System.setIn(new ByteArrayInputStream("package and body\n.\n".getBytes(StandardCharsets.UTF_8)));
+		try {
+			new CommitCommand().execute("commit");
+		} finally {
+			System.setIn(stdin);
+		}
+		assertMatchesSchema();
+		try (Repository repository = Git.open(workingDirectory).getRepository()) {
+			final Git git = new Git(repository);
+			assertEquals("package and body", git.log().setMaxCount(1).call().iterator().next().getFullMessage());
+			assertEquals(schema.getObjectCount(), repository.readDirCache().getEntryCount());
+			assertFalse(git.status().call().hasUncommittedChanges());
+		}
+	}
+
+	@Test
+	public void testLoadLimits() throws Exception {
+		configure(Settings.BULK_FETCH_SIZE, "20", Settings.PARALLELISM, "4");
+		init();
+		Files.write(new File(workingDirectory, LoadGovernor.FILE_NAME).toPath(),
+				"max-sessions=2\nmax-objects-per-second=2000\n".getBytes(StandardCharsets.UTF_8));
+		final int changes = schema.applyChanges();
+		final long start = System.nanoTime();
+		new SyncCommand().execute("sync", "--full");
+		report("sync", changes, start);
+		assertMatchesSchema();
+	}
+
+	@Test
+	public void testSessionStatistics() throws Exception {
+		configure(Settings.SESSION_STATISTICS, "true", Settings.METRICS_REPORT, "metrics.json", Settings.PARALLELISM,
+				"2");
+		init();
+		final String report = new String(Files.readAllBytes(new File(workingDirectory, ".git/ovcs/metrics.json")
+				.toPath()), StandardCharsets.UTF_8);
+		assertEquals(3, getCounter(report, "dbSessions"));
+		final long roundTrips = getCounter(report, "dbRoundTrips");
+		assertTrue(roundTrips > 0);
+		assertTrue(roundTrips < schema.getRoundTrips());
+	}
+
+	@Test
+	public void testStatusWithDdlCache() throws Exception {
+		configure(Settings.DDL_CACHE_TTL, "600", Settings.BULK_FETCH_SIZE, "0");
+		init();
+		new StartCommand().execute("start");
+		schema.applyChanges();
+		new StatusCommand().execute("status");
+		final File[] entries = new File(workingDirectory, ".git/ovcs/cache").listFiles();
+		assertTrue(entries.length > 0);
+		for (final File entry : entries) {
+			assertTrue(entry.getName().endsWith(".ddl"));
+		}
+		new StatusCommand().execute("status");
+		assertMatchesSchema();
+	}
+
+	@Test
+	public void testSyncAllRelativeDirectory() throws Exception {
+		configure(Settings.BULK_FETCH_SIZE, "0");
+		init();
+		final int changes = schema.applyChanges();
+		System.setProperty("user.dir", directory.getPath());
+		final long start = System.nanoTime();
+		new SyncAllCommand().execute("sync-all", workingDirectory.getName());
+		report("sync-all", changes, start);
+		assertMatchesSchema();
+	}
+
+	@Test
+	public void testSync() throws Exception {
+		configure(Settings.HASH_COMPARE, "true");
+		init();
+		final int changes = schema.applyChanges();
+		final long roundTrips = schema.getRoundTrips();
+		final long start = System.nanoTime();
+		new SyncCommand().execute("sync");
+		report("sync", changes, start);
+		for (final String name : schema.getObjectNames()) {
+			assertEquals(schema.getDdl(name), read(name));
+		}
+		assertTrue(schema.getRoundTrips() - roundTrips < schema.getObjectCount());
+	}
+
+	@Test
+	public void testSyncDroppedObject() throws Exception {
+		configure(Settings.BULK_FETCH_SIZE, "0");
+		init();
+		final String name = schema.getObjectNames().get(0);
+		schema.dropObject(name);
+		new SyncCommand().execute("sync");
+		assertMatchesSchema();
+		assertDroppedFromHead(name);
+	}
+
+	@Test
+	public void testSyncDroppedObjectDirectCommit() throws Exception {
+		configure(Settings.DIRECT_COMMIT, "true");
+		init();
+		final String name = schema.getObjectNames().get(0);
+		schema.dropObject(name);
+		new SyncCommand().execute("sync");
+		assertMatchesSchema();
+		assertDroppedFromHead(name);
+	}
+
+	private void assertDroppedFromHead(final String name) throws IOException {
+		try (Repository repository = Git.open(workingDirectory).getRepository()) {
+			final RevWalk walk = new RevWalk(repository);
+			try {
+				final RevCommit head = walk.parseCommit(repository.resolve(Constants.HEAD));
+				assertNull(TreeWalk.forPath(repository, name + ".sql", head.getTree()));
+			} finally {
+				walk.dispose();
+			}
+			assertNull(repository.readDirCache().getEntry(name + ".sql"));
+		}
+	}
+
+	private void assertMatchesSchema() throws IOException {
+		for (final String name : schema.getObjectNames()) {
+			assertEquals(schema.getDdl(name), read(name));
+		}
+		final String[] files = workingDirectory.list();
+		int objectFiles = 0;
+		for (final String file : files) {
+			if (file.endsWith(".sql")) {
+				objectFiles++;
+			}
+		}
+		assertEquals(schema.getObjectCount(), objectFiles);
+		assertFalse(new File(workingDirectory, "OVCS#.sql").exists());
+	}
+
+	private void configure(final String... settings) throws SettingsStoreException {
+		final SettingsStore store = new SettingsStore(".ovcs").load();
+		store.setSetting(Settings.ORACLE_DRIVER, directory.getPath());
+		for (int i = 0; i < settings.length; i += 2) {
+			store.setSetting(settings[i], settings[i + 1]);
+		}
+		store.store();
+	}
+
+	private long getCounter(final String report, final String counter) {
+		final Matcher matcher = Pattern.compile("\"" + counter + "\"\\s*:\\s*(\\d+)").matcher(report);
+		assertTrue(counter, matcher.find());
+		return Long.parseLong(matcher.group(1));
+	}
+
+	private void init() throws OvcsException {
+		final long start = System.nanoTime();
+		new InitCommand().execute("init", CONNECTION_STRING, new File(directory, "remote.git").toURI().toString());
+		report("init", schema.getObjectCount(), start);
+	}
+
+	private String read(final String objectName) throws IOException {
+		return new String(Files.readAllBytes(new File(workingDirectory, objectName + ".sql").toPath()),
+				StandardCharsets.UTF_8);
+	}
+
+	private void report(final String command, final int objects, final long start) {
+		final double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.println(String.format("%s: %d objects in %.2f s, %.0f objects/s, %d round trips", command,
+				objects, seconds, objects / seconds, schema.getRoundTrips()));
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2015 Abed Tony BenBrahim <tony.benbrahim@10xdev.com> This file is
+ * part of OVCS.
+ *
+ * OVCS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OVCS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OVCS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tenxdev.ovcs.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.tenxdev.ovcs.WatermarkStore;
+
+public class WatermarkStoreTests {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File file;
+
+	@Before
+	public void before() {
+		file = new File(folder.getRoot(), "watermarks");
+	}
+
+	@Test
+	public void testCorruptValue() throws IOException {
+		write("EMP=2015\novcs.count=1\n");
+		assertNull(new WatermarkStore(file).load());
+	}
+
+	@Test
+	public void testMissing() {
+		assertNull(new WatermarkStore(file).load());
+	}
+
+	@Test
+	public void testStoringAndRetrieving() throws IOException {
+		final Map<String, String> watermarks = new HashMap<>();
+		watermarks.put("EMP", "20150102030405");
+		watermarks.put("DEPT_PKG", "20150607080910");
+		new WatermarkStore(file).store(watermarks);
+		assertEquals(watermarks, new WatermarkStore(file).load());
+	}
+
+	@Test
+	public void testTruncated() throws IOException {
+		write("EMP=20150102030405\novcs.count=2\n");
+		assertNull(new WatermarkStore(file).load());
+	}
+
+	private void write(final String contents) throws IOException {
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+			writer.write(contents);
+		}
+	}
+
+}
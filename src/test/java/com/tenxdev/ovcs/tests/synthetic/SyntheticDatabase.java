@@ -0,0 +1,669 @@
+/*
+ * Copyright 2015 Abed Tony BenBrahim <tony.benbrahim@10xdev.com> This file is
+ * part of OVCS.
+ *
+ * OVCS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OVCS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OVCS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tenxdev.ovcs.tests.synthetic;
+
+import java.io.StringReader;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Timestamp;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.tenxdev.ovcs.tests.synthetic.SyntheticSchema.LockedObject;
+import com.tenxdev.ovcs.tests.synthetic.SyntheticSchema.SchemaObject;
+
+/**
+ * Serves synthetic schemas through JDBC, answering the queries and PL/SQL
+ * blocks run by ovcs as an Oracle database with the ovcs packages installed
+ * would. Used by the stand-in oracle.jdbc.driver.OracleDriver of the tests.
+ * <p>
+ * Every statement execution is a round trip. Rows are returned in round trips
+ * of defaultRowPrefetch rows, and a CLOB longer than
+ * oracle.jdbc.defaultLobPrefetchSize characters takes an additional round
+ * trip, as with the Oracle thin driver.
+ *
+ * @author Tony BenBrahim <tony.benbrahim@10xdev.com>
+ *
+ */
+public final class SyntheticDatabase {
+
+	/**
+	 * A JDBC connection to a synthetic schema
+	 */
+	private static final class ConnectionHandler implements InvocationHandler {
+
+		private final SyntheticSchema schema;
+
+		private final int rowPrefetch;
+
+		private final int lobPrefetchSize;
+
+		private boolean closed;
+
+		private long roundTrips = 1;
+
+		private long lobReads;
+
+		ConnectionHandler(final SyntheticSchema schema, final Properties info) {
+			this.schema = schema;
+			rowPrefetch = Integer.parseInt(info.getProperty("defaultRowPrefetch", "10"));
+			lobPrefetchSize = Integer.parseInt(info.getProperty("oracle.jdbc.defaultLobPrefetchSize", "-1"));
+		}
+
+		@Override
+		public Object invoke(final Object proxy, final Method method, final Object[] args) throws SQLException {
+			switch (method.getName()) {
+			case "prepareStatement":
+			case "prepareCall":
+				checkOpen();
+				return Proxy.newProxyInstance(SyntheticDatabase.class.getClassLoader(),
+						new Class<?>[] { CallableStatement.class }, new StatementHandler(this, (String) args[0]));
+			case "close":
+				closed = true;
+				return null;
+			case "isClosed":
+				return closed;
+			case "isValid":
+				return !closed;
+			case "getAutoCommit":
+				return Boolean.FALSE;
+			case "setAutoCommit":
+			case "commit":
+			case "rollback":
+			case "clearWarnings":
+				checkOpen();
+				return null;
+			case "getWarnings":
+				return null;
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "equals":
+				return proxy == args[0];
+			case "toString":
+				return "synthetic connection";
+			default:
+				throw new SQLFeatureNotSupportedException(method.getName());
+			}
+		}
+
+		void roundTrip() {
+			roundTrips++;
+			schema.roundTrip();
+		}
+
+		void checkOpen() throws SQLException {
+			if (closed) {
+				throw new SQLException("Closed Connection", "08003", 17008);
+			}
+		}
+	}
+
+	/**
+	 * A prepared statement or PL/SQL block run on a synthetic schema
+	 */
+	private static final class StatementHandler implements InvocationHandler {
+
+		private final ConnectionHandler connection;
+
+		private final String sql;
+
+		private final Map<Integer, Object> parameters = new HashMap<>();
+
+		private final Map<Integer, Object> outParameters = new HashMap<>();
+
+		StatementHandler(final ConnectionHandler connection, final String sql) {
+			this.connection = connection;
+			this.sql = sql;
+		}
+
+		@Override
+		public Object invoke(final Object proxy, final Method method, final Object[] args) throws SQLException {
+			switch (method.getName()) {
+			case "setString":
+			case "setInt":
+			case "setLong":
+				parameters.put((Integer) args[0], args[1]);
+				return null;
+			case "registerOutParameter":
+			case "close":
+			case "clearParameters":
+				return null;
+			case "executeQuery":
+				connection.checkOpen();
+				connection.roundTrip();
+				return query(connection, sql, parameters);
+			case "execute":
+				connection.checkOpen();
+				connection.roundTrip();
+				call(connection, sql, parameters, outParameters);
+				return Boolean.FALSE;
+			case "getString":
+			case "getClob":
+				return outParameters.get(args[0]);
+			case "getLong":
+				final Object value = outParameters.get(args[0]);
+				return value == null ? 0L : ((Number) value).longValue();
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "equals":
+				return proxy == args[0];
+			case "toString":
+				return sql;
+			default:
+				throw new SQLFeatureNotSupportedException(method.getName());
+			}
+		}
+	}
+
+	/**
+	 * The rows returned by a query, fetched in round trips of
+	 * defaultRowPrefetch rows
+	 */
+	private static final class ResultSetHandler implements InvocationHandler {
+
+		private final ConnectionHandler connection;
+
+		private final List<Map<String, Object>> rows;
+
+		private int position = -1;
+
+		private boolean wasNull;
+
+		ResultSetHandler(final ConnectionHandler connection, final List<Map<String, Object>> rows) {
+			this.connection = connection;
+			this.rows = rows;
+		}
+
+		@Override
+		public Object invoke(final Object proxy, final Method method, final Object[] args) throws SQLException {
+			switch (method.getName()) {
+			case "next":
+				position++;
+				if (position > 0 && position % Math.max(1, connection.rowPrefetch) == 0) {
+					connection.roundTrip();
+				}
+				return position < rows.size();
+			case "getString":
+			case "getTimestamp":
+			case "getObject":
+				return getValue(args[0]);
+			case "getLong":
+				final Number number = (Number) getValue(args[0]);
+				return number == null ? 0L : number.longValue();
+			case "getCharacterStream":
+				final Clob clob = (Clob) getValue(args[0]);
+				return clob == null ? null : clob.getCharacterStream();
+			case "getClob":
+				return getValue(args[0]);
+			case "wasNull":
+				return wasNull;
+			case "close":
+				return null;
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "equals":
+				return proxy == args[0];
+			default:
+				throw new SQLFeatureNotSupportedException(method.getName());
+			}
+		}
+
+		private Object getValue(final Object column) throws SQLException {
+			if (position < 0 || position >= rows.size()) {
+				throw new SQLException("Exhausted Resultset", "99999", 17011);
+			}
+			if (!(column instanceof String)) {
+				throw new SQLFeatureNotSupportedException("columns must be accessed by name");
+			}
+			final Map<String, Object> row = rows.get(position);
+			final String name = ((String) column).toLowerCase(Locale.ENGLISH);
+			if (!row.containsKey(name)) {
+				throw new SQLException("Invalid column name " + column, "99999", 17006);
+			}
+			final Object value = row.get(name);
+			wasNull = value == null;
+			return value;
+		}
+	}
+
+	/**
+	 * A CLOB, taking an additional round trip when read if it is longer than
+	 * the LOB prefetch size
+	 */
+	private static final class ClobHandler implements InvocationHandler {
+
+		private final ConnectionHandler connection;
+
+		private final String value;
+
+		ClobHandler(final ConnectionHandler connection, final String value) {
+			this.connection = connection;
+			this.value = value;
+		}
+
+		@Override
+		public Object invoke(final Object proxy, final Method method, final Object[] args) throws SQLException {
+			switch (method.getName()) {
+			case "getCharacterStream":
+				if (value.length() > connection.lobPrefetchSize) {
+					connection.lobReads++;
+					connection.roundTrip();
+				}
+				return new StringReader(value);
+			case "length":
+				return (long) value.length();
+			case "getSubString":
+				final long start = (Long) args[0] - 1;
+				return value.substring((int) start, (int) Math.min(value.length(), start + (Integer) args[1]));
+			case "free":
+				return null;
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "equals":
+				return proxy == args[0];
+			default:
+				throw new SQLFeatureNotSupportedException(method.getName());
+			}
+		}
+	}
+
+	/**
+	 * A row of user_objects. A package has a second row, for its body, under
+	 * the same name.
+	 */
+	private static final class UserObject {
+
+		private final String type;
+
+		private final SchemaObject object;
+
+		UserObject(final String type, final SchemaObject object) {
+			this.type = type;
+			this.object = object;
+		}
+
+		String getDdl() {
+			return SyntheticSchema.PACKAGE_BODY.equals(type) ? SyntheticSchema.getBodyDdl(object)
+					: SyntheticSchema.getDdl(object);
+		}
+	}
+
+	/**
+	 * An open DBMS_METADATA handle
+	 */
+	private static final class MetadataHandle {
+
+		private final Iterator<SchemaObject> objects;
+
+		MetadataHandle(final Iterator<SchemaObject> objects) {
+			this.objects = objects;
+		}
+	}
+
+	/**
+	 * the prefix of connection URLs
+	 */
+	private static final String URL_PREFIX = "jdbc:oracle:thin:";
+
+	/**
+	 * the error code of ORA-31600, raised by DBMS_METADATA for unsupported
+	 * object types
+	 */
+	private static final int INVALID_INPUT_VALUE = 31600;
+
+	/**
+	 * the object types returned by DBMS_METADATA, by metadata type name
+	 */
+	private static final Map<String, String> METADATA_TYPES = new HashMap<>();
+
+	static {
+		for (final String type : new String[] { "TABLE", "INDEX", "VIEW", "PACKAGE", "PROCEDURE", "FUNCTION",
+				"SEQUENCE", "TRIGGER", "TYPE" }) {
+			METADATA_TYPES.put(type, type);
+		}
+	}
+
+	/**
+	 * the condition of ovcs queries excluding bodies from user_objects, in
+	 * lower case
+	 */
+	private static final String NO_BODIES = "object_type not like '% body'";
+
+	/**
+	 * the names in a DBMS_METADATA name filter such as IN ('A','B')
+	 */
+	private static final Pattern FILTER_NAME_PATTERN = Pattern.compile("'((?:[^']|'')*)'");
+
+	/**
+	 * the registered schemas, by user name in upper case
+	 */
+	private static final Map<String, SyntheticSchema> SCHEMAS = new ConcurrentHashMap<>();
+
+	/**
+	 * the open DBMS_METADATA handles, by handle number
+	 */
+	private static final Map<Long, MetadataHandle> HANDLES = new ConcurrentHashMap<>();
+
+	/**
+	 * the number of the last DBMS_METADATA handle opened
+	 */
+	private static final AtomicLong LAST_HANDLE = new AtomicLong();
+
+	/**
+	 * registers a schema, so that connections as its user are served from it
+	 *
+	 * @param user
+	 *            the user name of the schema
+	 * @param schema
+	 *            the schema
+	 */
+	public static void register(final String user, final SyntheticSchema schema) {
+		SCHEMAS.put(user.toUpperCase(Locale.ENGLISH), schema);
+	}
+
+	/**
+	 * unregisters a schema
+	 *
+	 * @param user
+	 *            the user name of the schema
+	 */
+	public static void unregister(final String user) {
+		SCHEMAS.remove(user.toUpperCase(Locale.ENGLISH));
+	}
+
+	/**
+	 * determines if a URL is a thin driver URL
+	 *
+	 * @param url
+	 *            the JDBC URL
+	 * @return true for jdbc:oracle:thin: URLs
+	 */
+	public static boolean acceptsURL(final String url) {
+		return url != null && url.startsWith(URL_PREFIX);
+	}
+
+	/**
+	 * connects to a registered schema
+	 *
+	 * @param url
+	 *            the JDBC URL, in format
+	 *            jdbc:oracle:thin:user/password@host:port:sid
+	 * @param info
+	 *            the connection properties
+	 * @return a connection, or null if the URL is not a thin driver URL
+	 * @throws SQLException
+	 *             if no schema is registered for the user
+	 */
+	public static Connection connect(final String url, final Properties info) throws SQLException {
+		if (!acceptsURL(url)) {
+			return null;
+		}
+		final String connectionString = url.substring(URL_PREFIX.length());
+		final int separator = connectionString.indexOf('/');
+		final String user = (separator < 0 ? connectionString : connectionString.substring(0, separator))
+				.toUpperCase(Locale.ENGLISH);
+		final SyntheticSchema schema = SCHEMAS.get(user);
+		if (schema == null) {
+			throw new SQLException("ORA-01017: invalid username/password; logon denied\n", "72000", 1017);
+		}
+		schema.roundTrip();
+		return (Connection) Proxy.newProxyInstance(SyntheticDatabase.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, new ConnectionHandler(schema, info));
+	}
+
+	private static ResultSet query(final ConnectionHandler connection, final String sql,
+			final Map<Integer, Object> parameters) throws SQLException {
+		final String text = sql.replaceAll("\\s+", " ").toLowerCase(Locale.ENGLISH);
+		final SyntheticSchema schema = connection.schema;
+		final List<Map<String, Object>> rows = new ArrayList<>();
+		if (text.contains("from v$mystat")) {
+			final Map<String, Long> statistics = new LinkedHashMap<>();
+			statistics.put("SQL*Net roundtrips to/from client", connection.roundTrips);
+			statistics.put("lob reads", connection.lobReads);
+			for (final Map.Entry<String, Long> statistic : statistics.entrySet()) {
+				final Map<String, Object> row = row("name", statistic.getKey());
+				row.put("value", statistic.getValue());
+				rows.add(row);
+			}
+		} else if (text.contains("ovcs.locked_objects")) {
+			final boolean locked = text.contains("last_ddl_time");
+			final String single = text.startsWith("select * from (") ? (String) parameters.get(1) : null;
+			for (final LockedObject lockedObject : schema.getLockedObjects()) {
+				if (single != null && !single.equals(lockedObject.name)) {
+					continue;
+				}
+				final SchemaObject object = schema.getObject(lockedObject.name);
+				if (object == null) {
+					rows.add(lockedRow(connection, lockedObject, null, locked));
+					continue;
+				}
+				// locked objects are joined with user_objects by name only
+				for (final UserObject userObject : userObjects(Collections.singletonList(object), text)) {
+					rows.add(lockedRow(connection, lockedObject, userObject, locked));
+				}
+			}
+		} else if (text.contains("from dual")) {
+			final SchemaObject object = schema.getObject((String) parameters.get(2));
+			final List<UserObject> userObjects = object == null ? Collections.<UserObject> emptyList()
+					: userObjects(Collections.singletonList(object), text);
+			UserObject selected = null;
+			for (final UserObject userObject : userObjects) {
+				if (userObject.type.equals(parameters.get(1))) {
+					selected = userObject;
+				}
+			}
+			if (selected == null) {
+				throw new SQLException(String.format("ORA-31603: object \"%s\" of type %s not found in schema\n",
+						parameters.get(2), parameters.get(1)), "99999", 31603);
+			}
+			rows.add(row("current_source", toClob(connection, selected.getDdl())));
+		} else if (text.contains("group by object_name")) {
+			final SimpleDateFormat format = new SimpleDateFormat("yyyyMMddHHmmss", Locale.ENGLISH);
+			format.setTimeZone(TimeZone.getTimeZone("UTC"));
+			for (final SchemaObject object : schema.getObjects()) {
+				final Map<String, Object> row = row("object_name", object.name);
+				row.put("last_ddl_time", format.format(new Date(object.lastDdlTime)));
+				rows.add(row);
+			}
+		} else if (text.contains("order by object_type")) {
+			final Map<String, List<String>> namesByType = new TreeMap<>();
+			for (final UserObject userObject : userObjects(schema.getObjects(), text)) {
+				List<String> names = namesByType.get(userObject.type);
+				if (names == null) {
+					names = new ArrayList<>();
+					namesByType.put(userObject.type, names);
+				}
+				names.add(userObject.object.name);
+			}
+			for (final Map.Entry<String, List<String>> entry : namesByType.entrySet()) {
+				for (final String name : entry.getValue()) {
+					final Map<String, Object> row = row("object_type", entry.getKey());
+					row.put("object_name", name);
+					rows.add(row);
+				}
+			}
+		} else if (text.contains("from user_objects")
+				&& (text.contains(" src ") || text.contains("dbms_crypto.hash"))) {
+			final boolean hash = text.contains("dbms_crypto.hash");
+			for (final UserObject userObject : selectObjects(schema, text, parameters)) {
+				final Map<String, Object> row = row("object_name", userObject.object.name);
+				if (hash) {
+					row.put("ddl_hash", SyntheticSchema.hash(userObject.getDdl()));
+				} else {
+					row.put("object_type", userObject.type);
+					row.put("src", toClob(connection, userObject.getDdl()));
+				}
+				rows.add(row);
+			}
+		} else {
+			throw new SQLException("ORA-00900: invalid SQL statement\n", "42000", 900);
+		}
+		return (ResultSet) Proxy.newProxyInstance(SyntheticDatabase.class.getClassLoader(),
+				new Class<?>[] { ResultSet.class }, new ResultSetHandler(connection, rows));
+	}
+
+	/**
+	 * selects the objects matching the partition, type and name clauses
+	 * appended by ovcs to its user_objects queries, whose parameters are bound
+	 * in that order
+	 */
+	private static List<UserObject> selectObjects(final SyntheticSchema schema, final String text,
+			final Map<Integer, Object> parameters) {
+		int parameter = 1;
+		int partitions = 1;
+		int partition = 0;
+		if (text.contains("ora_hash(object_name)")) {
+			partitions = ((Number) parameters.get(parameter++)).intValue();
+			partition = ((Number) parameters.get(parameter++)).intValue();
+		}
+		final String type = text.contains("and object_type = ?") ? (String) parameters.get(parameter++) : null;
+		final String name = text.contains("and object_name = ?") ? (String) parameters.get(parameter++) : null;
+		final List<UserObject> selected = new ArrayList<>();
+		for (final UserObject userObject : userObjects(schema.getObjects(), text)) {
+			final String objectName = userObject.object.name;
+			if ((objectName.hashCode() & Integer.MAX_VALUE) % partitions == partition
+					&& (type == null || type.equals(userObject.type)) && (name == null || name.equals(objectName))) {
+				selected.add(userObject);
+			}
+		}
+		return selected;
+	}
+
+	/**
+	 * lists the rows of user_objects for objects, with a row for the body of
+	 * each package unless the query excludes bodies
+	 */
+	private static List<UserObject> userObjects(final List<SchemaObject> objects, final String text) {
+		final boolean bodies = !text.contains(NO_BODIES);
+		final List<UserObject> userObjects = new ArrayList<>();
+		for (final SchemaObject object : objects) {
+			userObjects.add(new UserObject(object.type, object));
+			if (bodies && object.hasBody()) {
+				userObjects.add(new UserObject(SyntheticSchema.PACKAGE_BODY, object));
+			}
+		}
+		return userObjects;
+	}
+
+	/**
+	 * builds a row of a query on ovcs.locked_objects, with the last DDL time
+	 * of the object when locked is true, or its current source otherwise
+	 */
+	private static Map<String, Object> lockedRow(final ConnectionHandler connection,
+			final LockedObject lockedObject, final UserObject userObject, final boolean locked) {
+		final Map<String, Object> row = new HashMap<>();
+		row.put("object_name", lockedObject.name);
+		row.put("action", lockedObject.action);
+		row.put("original_source", toClob(connection, lockedObject.originalSource));
+		if (locked) {
+			row.put("object_type", userObject == null ? null : userObject.type);
+			row.put("last_ddl_time", userObject == null ? null : new Timestamp(userObject.object.lastDdlTime));
+		} else {
+			row.put("current_source", userObject == null ? null : toClob(connection, userObject.getDdl()));
+		}
+		return row;
+	}
+
+	private static void call(final ConnectionHandler connection, final String sql,
+			final Map<Integer, Object> parameters, final Map<Integer, Object> outParameters) throws SQLException {
+		final String text = sql.toLowerCase(Locale.ENGLISH);
+		final SyntheticSchema schema = connection.schema;
+		if (text.contains("ovcs.handler.end_session")) {
+			schema.endSession();
+		} else if (text.contains("dbms_metadata.open")) {
+			final String type = METADATA_TYPES.get(parameters.get(1));
+			if (type == null) {
+				throw new SQLException("ORA-31600: invalid input value " + parameters.get(1)
+						+ " for parameter OBJECT_TYPE in function OPEN\n", "99999", INVALID_INPUT_VALUE);
+			}
+			final String filter = (String) parameters.get(2);
+			final List<String> names = new ArrayList<>();
+			final Matcher matcher = FILTER_NAME_PATTERN.matcher(filter);
+			while (matcher.find()) {
+				names.add(matcher.group(1).replace("''", "'"));
+			}
+			final boolean exclude = filter.startsWith("!=");
+			final List<SchemaObject> selected = new ArrayList<>();
+			for (final SchemaObject object : schema.getObjects()) {
+				if (type.equals(object.type) && exclude != names.contains(object.name)) {
+					selected.add(object);
+				}
+			}
+			final long handle = LAST_HANDLE.incrementAndGet();
+			HANDLES.put(handle, new MetadataHandle(selected.iterator()));
+			outParameters.put(3, handle);
+		} else if (text.contains("dbms_metadata.fetch_ddl")) {
+			final MetadataHandle handle = HANDLES.get(((Number) parameters.get(2)).longValue());
+			if (handle == null) {
+				throw new SQLException("ORA-31623: a job is not attached to this session via the specified handle\n",
+						"99999", 31623);
+			}
+			final int batchSize = ((Number) parameters.get(1)).intValue();
+			final StringBuilder names = new StringBuilder();
+			final StringBuilder docs = new StringBuilder();
+			for (int i = 0; i < batchSize && handle.objects.hasNext(); i++) {
+				final SchemaObject object = handle.objects.next();
+				final String ddl = SyntheticSchema.getDdl(object);
+				names.append(names.length() == 0 ? "" : "\n").append(ddl.length()).append(':').append(object.name);
+				docs.append(ddl);
+			}
+			outParameters.put(3, names.length() == 0 ? null : names.toString());
+			outParameters.put(4, toClob(connection, docs.toString()));
+		} else if (text.contains("dbms_metadata.close")) {
+			HANDLES.remove(((Number) parameters.get(1)).longValue());
+		} else if (!text.contains("dbms_metadata.set_transform_param") && !text.contains("ovcs.handler.start_session")
+				&& !text.contains("dbms_session.reset_package")) {
+			throw new SQLException("ORA-06550: unsupported PL/SQL block\n", "65000", 6550);
+		}
+	}
+
+	private static Map<String, Object> row(final String column, final Object value) {
+		final Map<String, Object> row = new HashMap<>();
+		row.put(column, value);
+		return row;
+	}
+
+	private static Clob toClob(final ConnectionHandler connection, final String value) {
+		return value == null ? null : (Clob) Proxy.newProxyInstance(SyntheticDatabase.class.getClassLoader(),
+				new Class<?>[] { Clob.class }, new ClobHandler(connection, value));
+	}
+
+	private SyntheticDatabase() {
+	}
+}
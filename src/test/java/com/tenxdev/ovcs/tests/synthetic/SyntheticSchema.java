@@ -0,0 +1,532 @@
+/*
+ * Copyright 2015 Abed Tony BenBrahim <tony.benbrahim@10xdev.com> This file is
+ * part of OVCS.
+ *
+ * OVCS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OVCS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OVCS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.tenxdev.ovcs.tests.synthetic;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A generated schema served by the stand-in Oracle driver of the tests, and
+ * written to local repositories by the benchmarks. The number of objects, the
+ * distribution of their DDL sizes, the share of objects changed by each round
+ * of changes, and the latency of each round trip are configurable. The same
+ * settings always generate the same schema and the same changes. Packages have
+ * a body, listed in user_objects under the name of the package.
+ *
+ * @author Tony BenBrahim <tony.benbrahim@10xdev.com>
+ *
+ */
+public class SyntheticSchema {
+
+	/**
+	 * An object of the schema
+	 */
+	static final class SchemaObject {
+
+		/**
+		 * the object type, as in user_objects
+		 */
+		final String type;
+		/**
+		 * the object name
+		 */
+		final String name;
+		/**
+		 * the approximate size of the DDL, in characters
+		 */
+		final int ddlSize;
+		/**
+		 * the number of times the object was changed
+		 */
+		int revision;
+		/**
+		 * the last DDL time, in milliseconds since the epoch
+		 */
+		long lastDdlTime;
+
+		SchemaObject(final String type, final String name, final int ddlSize, final long lastDdlTime) {
+			this.type = type;
+			this.name = name;
+			this.ddlSize = ddlSize;
+			this.lastDdlTime = lastDdlTime;
+		}
+
+		/**
+		 * determines if the object has a body
+		 *
+		 * @return true for packages
+		 */
+		boolean hasBody() {
+			return "PACKAGE".equals(type);
+		}
+	}
+
+	/**
+	 * An object changed since the start of the ovcs session, as in
+	 * ovcs.locked_objects
+	 */
+	static final class LockedObject {
+
+		/**
+		 * the name of the object
+		 */
+		final String name;
+		/**
+		 * CREATE, ALTER or DROP
+		 */
+		String action;
+		/**
+		 * the DDL of the object before the first change, null if the object
+		 * was created during the session
+		 */
+		final String originalSource;
+
+		LockedObject(final String name, final String action, final String originalSource) {
+			this.name = name;
+			this.action = action;
+			this.originalSource = originalSource;
+		}
+	}
+
+	/**
+	 * prefix of the system properties configuring
+	 * {@link #fromSystemProperties()}
+	 */
+	public static final String PROPERTY_PREFIX = "ovcs.synthetic.";
+
+	/**
+	 * the object type of package bodies, as in user_objects
+	 */
+	static final String PACKAGE_BODY = "PACKAGE BODY";
+
+	/**
+	 * the object types generated, in rotation
+	 */
+	private static final String[] OBJECT_TYPES = { "TABLE", "INDEX", "VIEW", "PACKAGE", "PROCEDURE", "FUNCTION",
+			"SEQUENCE", "TRIGGER", "TYPE" };
+
+	/**
+	 * the column types used in generated DDL
+	 */
+	private static final String[] COLUMN_TYPES = { "NUMBER(10,0)", "VARCHAR2(200 BYTE)", "DATE", "TIMESTAMP (6)",
+			"CLOB" };
+
+	/**
+	 * the last DDL time of generated objects, 2015-01-01T00:00:00Z
+	 */
+	private static final long INITIAL_DDL_TIME = 1420070400000L;
+
+	/**
+	 * the share of changes that create an object
+	 */
+	private static final double CREATE_SHARE = 0.05;
+
+	/**
+	 * the share of changes that drop an object
+	 */
+	private static final double DROP_SHARE = 0.05;
+
+	/**
+	 * the objects, by name
+	 */
+	private final Map<String, SchemaObject> objects = new TreeMap<>();
+
+	/**
+	 * the objects changed since the start of the ovcs session, by name
+	 */
+	private final Map<String, LockedObject> lockedObjects = new LinkedHashMap<>();
+
+	/**
+	 * the number of round trips served
+	 */
+	private final AtomicLong roundTrips = new AtomicLong();
+
+	/**
+	 * generates object sizes and changes
+	 */
+	private final Random random;
+
+	/**
+	 * the median DDL size, in characters
+	 */
+	private final int medianDdlSize;
+
+	/**
+	 * the standard deviation of the natural logarithm of DDL sizes, 0 for
+	 * objects of the median size only
+	 */
+	private final double ddlSizeSpread;
+
+	/**
+	 * the share of objects changed by {@link #applyChanges()}
+	 */
+	private double changeRate = 0.01;
+
+	/**
+	 * the latency added to each round trip, in microseconds
+	 */
+	private long roundTripLatency;
+
+	/**
+	 * the index of the next object created
+	 */
+	private int nextIndex;
+
+	/**
+	 * the last DDL time of the latest change, in milliseconds since the epoch
+	 */
+	private long clock = INITIAL_DDL_TIME;
+
+	/**
+	 * constructor
+	 *
+	 * @param objectCount
+	 *            the number of objects generated
+	 * @param medianDdlSize
+	 *            the median DDL size, in characters
+	 * @param ddlSizeSpread
+	 *            the standard deviation of the natural logarithm of DDL
+	 *            sizes, 0 for objects of the median size only. 1 gives sizes
+	 *            mostly between a third and three times the median.
+	 * @param seed
+	 *            the seed of the generator
+	 */
+	public SyntheticSchema(final int objectCount, final int medianDdlSize, final double ddlSizeSpread,
+			final long seed) {
+		this.medianDdlSize = medianDdlSize;
+		this.ddlSizeSpread = ddlSizeSpread;
+		random = new Random(seed);
+		for (int i = 0; i < objectCount; i++) {
+			createObject(INITIAL_DDL_TIME);
+		}
+	}
+
+	/**
+	 * creates a schema configured by the ovcs.synthetic.objects,
+	 * ovcs.synthetic.ddl-size, ovcs.synthetic.ddl-spread, ovcs.synthetic.seed,
+	 * ovcs.synthetic.change-rate and ovcs.synthetic.latency system properties,
+	 * so that the tests can be run as load tests
+	 *
+	 * @param defaultObjectCount
+	 *            the number of objects, unless configured
+	 * @return the schema
+	 */
+	public static SyntheticSchema fromSystemProperties(final int defaultObjectCount) {
+		final SyntheticSchema schema = new SyntheticSchema(Integer.getInteger(PROPERTY_PREFIX + "objects",
+				defaultObjectCount), Integer.getInteger(PROPERTY_PREFIX + "ddl-size", 4096), Double.parseDouble(System
+				.getProperty(PROPERTY_PREFIX + "ddl-spread", "1")), Long.getLong(PROPERTY_PREFIX + "seed", 0));
+		schema.setChangeRate(Double.parseDouble(System.getProperty(PROPERTY_PREFIX + "change-rate", "0.01")));
+		schema.setRoundTripLatency(Long.getLong(PROPERTY_PREFIX + "latency", 0), TimeUnit.MICROSECONDS);
+		return schema;
+	}
+
+	/**
+	 * sets the share of objects changed by {@link #applyChanges()}
+	 *
+	 * @param changeRate
+	 *            the share of objects, between 0 and 1
+	 */
+	public synchronized void setChangeRate(final double changeRate) {
+		this.changeRate = changeRate;
+	}
+
+	/**
+	 * sets the latency added to each round trip to the database
+	 *
+	 * @param latency
+	 *            the latency
+	 * @param unit
+	 *            the unit of the latency
+	 */
+	public synchronized void setRoundTripLatency(final long latency, final TimeUnit unit) {
+		roundTripLatency = unit.toMicros(latency);
+	}
+
+	/**
+	 * applies a round of changes to the share of objects given by the change
+	 * rate, as a developer would during an ovcs session. Most changes alter an
+	 * existing object, some create or drop an object.
+	 *
+	 * @return the number of changes
+	 */
+	public synchronized int applyChanges() {
+		final int count = Math.max(1, (int) Math.round(objects.size() * changeRate));
+		for (int i = 0; i < count; i++) {
+			clock += 1000;
+			final double kind = random.nextDouble();
+			if (kind < CREATE_SHARE) {
+				final SchemaObject object = createObject(clock);
+				lock(object.name, "CREATE", null);
+			} else {
+				final SchemaObject object = pickObject();
+				if (kind < CREATE_SHARE + DROP_SHARE) {
+					drop(object);
+				} else {
+					alter(object);
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * alters an object, as a developer would during an ovcs session
+	 *
+	 * @param name
+	 *            the name of the object
+	 */
+	public synchronized void alterObject(final String name) {
+		final SchemaObject object = objects.get(name);
+		if (object != null) {
+			clock += 1000;
+			alter(object);
+		}
+	}
+
+	/**
+	 * drops an object, as a developer would during an ovcs session
+	 *
+	 * @param name
+	 *            the name of the object
+	 */
+	public synchronized void dropObject(final String name) {
+		final SchemaObject object = objects.get(name);
+		if (object != null) {
+			clock += 1000;
+			drop(object);
+		}
+	}
+
+	/**
+	 * gets the number of objects
+	 *
+	 * @return the number of objects
+	 */
+	public synchronized int getObjectCount() {
+		return objects.size();
+	}
+
+	/**
+	 * gets the names of all objects
+	 *
+	 * @return the object names, in name order
+	 */
+	public synchronized List<String> getObjectNames() {
+		return new ArrayList<>(objects.keySet());
+	}
+
+	/**
+	 * gets the current DDL of an object
+	 *
+	 * @param name
+	 *            the object name
+	 * @return the DDL, or null if the object does not exist
+	 */
+	public synchronized String getDdl(final String name) {
+		final SchemaObject object = objects.get(name);
+		return object == null ? null : getDdl(object);
+	}
+
+	/**
+	 * gets the number of round trips served since the schema was created
+	 *
+	 * @return the number of round trips
+	 */
+	public long getRoundTrips() {
+		return roundTrips.get();
+	}
+
+	/**
+	 * counts a round trip to the database, waiting for the configured latency
+	 */
+	void roundTrip() {
+		roundTrips.incrementAndGet();
+		final long latency;
+		synchronized (this) {
+			latency = roundTripLatency;
+		}
+		if (latency > 0) {
+			try {
+				TimeUnit.MICROSECONDS.sleep(latency);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * gets a copy of all objects
+	 *
+	 * @return the objects, in name order
+	 */
+	synchronized List<SchemaObject> getObjects() {
+		final List<SchemaObject> copies = new ArrayList<>(objects.size());
+		for (final SchemaObject object : objects.values()) {
+			final SchemaObject copy = new SchemaObject(object.type, object.name, object.ddlSize, object.lastDdlTime);
+			copy.revision = object.revision;
+			copies.add(copy);
+		}
+		return copies;
+	}
+
+	/**
+	 * gets a copy of an object
+	 *
+	 * @param name
+	 *            the object name
+	 * @return the object, or null if it does not exist
+	 */
+	synchronized SchemaObject getObject(final String name) {
+		final SchemaObject object = objects.get(name);
+		if (object == null) {
+			return null;
+		}
+		final SchemaObject copy = new SchemaObject(object.type, object.name, object.ddlSize, object.lastDdlTime);
+		copy.revision = object.revision;
+		return copy;
+	}
+
+	/**
+	 * gets the objects changed since the start of the ovcs session
+	 *
+	 * @return the changed objects
+	 */
+	synchronized List<LockedObject> getLockedObjects() {
+		return new ArrayList<>(lockedObjects.values());
+	}
+
+	/**
+	 * ends the ovcs session, forgetting the changed objects
+	 */
+	synchronized void endSession() {
+		lockedObjects.clear();
+	}
+
+	/**
+	 * generates the DDL of an object, in the format returned by
+	 * dbms_metadata.get_ddl. The DDL of a package includes its body.
+	 *
+	 * @param object
+	 *            the object
+	 * @return the DDL
+	 */
+	static String getDdl(final SchemaObject object) {
+		if (!object.hasBody()) {
+			return generateDdl(object, object.type, object.ddlSize);
+		}
+		return generateDdl(object, object.type, object.ddlSize / 2) + getBodyDdl(object);
+	}
+
+	/**
+	 * generates the DDL of the body of a package, in the format returned by
+	 * dbms_metadata.get_ddl for a PACKAGE BODY
+	 *
+	 * @param object
+	 *            the package
+	 * @return the DDL of the body
+	 */
+	static String getBodyDdl(final SchemaObject object) {
+		return generateDdl(object, PACKAGE_BODY, object.ddlSize - object.ddlSize / 2);
+	}
+
+	/**
+	 * computes the hash of a DDL, as returned by
+	 * lower(rawtohex(dbms_crypto.hash(ddl, 3)))
+	 *
+	 * @param ddl
+	 *            the DDL
+	 * @return the SHA-1 of the DDL encoded in UTF-8, in lower case hexadecimal
+	 */
+	static String hash(final String ddl) {
+		try {
+			final StringBuilder hash = new StringBuilder();
+			for (final byte value : MessageDigest.getInstance("SHA-1").digest(ddl.getBytes(StandardCharsets.UTF_8))) {
+				hash.append(String.format("%02x", value));
+			}
+			return hash.toString();
+		} catch (final NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-1 is not available", e);
+		}
+	}
+
+	private static String generateDdl(final SchemaObject object, final String type, final int size) {
+		final Random generator = new Random((object.name.hashCode() * 31L + object.revision) * 31L
+				+ type.hashCode());
+		final StringBuilder ddl = new StringBuilder(size + 128);
+		ddl.append("\n  CREATE OR REPLACE ").append(type).append(" \"SCOTT\".\"").append(object.name)
+				.append("\" \n   (");
+		int line = 0;
+		while (ddl.length() < size) {
+			ddl.append(line == 0 ? "\t" : ",\n\t").append("\"COL_").append(line++).append('_')
+					.append(Integer.toHexString(generator.nextInt())).append("\" ")
+					.append(COLUMN_TYPES[generator.nextInt(COLUMN_TYPES.length)]);
+		}
+		return ddl.append("\n   ) ;\n").toString();
+	}
+
+	private SchemaObject createObject(final long lastDdlTime) {
+		final int index = nextIndex++;
+		final String type = OBJECT_TYPES[index % OBJECT_TYPES.length];
+		final String name = String.format(Locale.ENGLISH, "%s_%07d", type.substring(0, 3), index);
+		final int ddlSize = (int) Math.max(64, Math.min(64L * 1024 * 1024,
+				Math.round(medianDdlSize * Math.exp(random.nextGaussian() * ddlSizeSpread))));
+		final SchemaObject object = new SchemaObject(type, name, ddlSize, lastDdlTime);
+		objects.put(name, object);
+		return object;
+	}
+
+	private SchemaObject pickObject() {
+		final int target = random.nextInt(objects.size());
+		int index = 0;
+		for (final SchemaObject object : objects.values()) {
+			if (index++ == target) {
+				return object;
+			}
+		}
+		throw new IllegalStateException("The schema is empty");
+	}
+
+	private void alter(final SchemaObject object) {
+		lock(object.name, "ALTER", getDdl(object));
+		object.revision++;
+		object.lastDdlTime = clock;
+	}
+
+	private void drop(final SchemaObject object) {
+		lock(object.name, "DROP", getDdl(object));
+		objects.remove(object.name);
+	}
+
+	private void lock(final String name, final String action, final String originalSource) {
+		final LockedObject locked = lockedObjects.get(name);
+		if (locked == null) {
+			lockedObjects.put(name, new LockedObject(name, action, originalSource));
+		} else if ("DROP".equals(action) || !"CREATE".equals(locked.action)) {
+			locked.action = action;
+		}
+	}
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2015 Abed Tony BenBrahim <tony.benbrahim@10xdev.com> This file is
+ * part of OVCS.
+ *
+ * OVCS is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OVCS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * OVCS. If not, see <http://www.gnu.org/licenses/>.
+ */
+package oracle.jdbc.driver;
+
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import com.tenxdev.ovcs.tests.synthetic.SyntheticDatabase;
+
+/**
+ * Stand-in for the Oracle thin driver, serving the synthetic schemas
+ * registered with {@link SyntheticDatabase}, so that ovcs commands can be run
+ * by the tests without an Oracle database. ovcs loads the driver through a
+ * class loader delegating to the test class path, so the oracle-driver setting
+ * only needs to name an existing file.
+ *
+ * @author Tony BenBrahim <tony.benbrahim@10xdev.com>
+ *
+ */
+public class OracleDriver implements Driver {
+
+	@Override
+	public boolean acceptsURL(final String url) {
+		return SyntheticDatabase.acceptsURL(url);
+	}
+
+	@Override
+	public Connection connect(final String url, final Properties info) throws SQLException {
+		return SyntheticDatabase.connect(url, info == null ? new Properties() : info);
+	}
+
+	@Override
+	public int getMajorVersion() {
+		return 11;
+	}
+
+	@Override
+	public int getMinorVersion() {
+		return 2;
+	}
+
+	@Override
+	public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		throw new SQLFeatureNotSupportedException();
+	}
+
+	@Override
+	public DriverPropertyInfo[] getPropertyInfo(final String url, final Properties info) {
+		return new DriverPropertyInfo[0];
+	}
+
+	@Override
+	public boolean jdbcCompliant() {
+		return false;
+	}
+}